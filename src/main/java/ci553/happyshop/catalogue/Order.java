@@ -12,6 +12,9 @@ import java.util.ArrayList;
  * - sotres information about an order, including order ID, current order state, timestamps, and the list of products.
  * - Provides getter methods for order attributes and allows updating the order state.
  * - Formats the full order details for writing to a file, including timestamps and item list.
+ *   OrderCodec stores the same order as compact bytes, and orderDetails() renders the text from it on demand.
+ *   The state and the Progressing/Collected times are padded to a fixed width (STATE_WIDTH, DATE_TIME_WIDTH),
+ *   so OrderFileManager can change them in place in an order file.
  *
  * An order file example:
  * Order ID: 10
@@ -37,6 +40,10 @@ public class Order {
     private String progressingDateTime="";
     private String collectedDateTime="";
     private ArrayList<Product> productList = new ArrayList<>(); //Trolley
+    private boolean express = false; // express orders can be picked first, see DispatchPolicy
+
+    public static final int STATE_WIDTH = 11;     // "Progressing", the longest state
+    public static final int DATE_TIME_WIDTH = 19; // "yyyy-MM-dd HH:mm:ss"
 
     // Constructor used by OrderHub to create a new order for a customer.
     // Initializes the order with an ID, state, order date/time, and a list of ordered products.
@@ -51,11 +58,26 @@ public class Order {
     public int getOrderId() { return orderId;}
     public OrderState getState() { return state; }
     public String getOrderedDateTime(){ return orderedDateTime; }
+    public String getProgressingDateTime(){ return progressingDateTime; }
+    public String getCollectedDateTime(){ return collectedDateTime; }
     public ArrayList<Product> getProductList() {
         return productList;
     }
+    public boolean isExpress() { return express; }
+
+    // The number of items in the order, i.e. the sum of the ordered quantities
+    public int getItemCount() {
+        int itemCount = 0;
+        for (Product product : productList) {
+            itemCount += product.getOrderedQuantity();
+        }
+        return itemCount;
+    }
 
     public void setState(OrderState state) { this.state = state; }
+    public void setExpress(boolean express) { this.express = express; }
+    public void setProgressingDateTime(String progressingDateTime) { this.progressingDateTime = progressingDateTime; }
+    public void setCollectedDateTime(String collectedDateTime) { this.collectedDateTime = collectedDateTime; }
 
     /**
      * order details written to file, used by OrderHub
@@ -64,10 +86,10 @@ public class Order {
      */
     public String orderDetails() {
         return String.format("Order ID: %s \n" +
-                        "State: %s \n" +
+                        "State: %-" + STATE_WIDTH + "s \n" +
                         "OrderedDateTime: %s \n" +
-                        "ProgressingDateTime: %s \n" +
-                        "CollectedDateTime: %s\n" +
+                        "ProgressingDateTime: %-" + DATE_TIME_WIDTH + "s \n" +
+                        "CollectedDateTime: %-" + DATE_TIME_WIDTH + "s\n" +
                         "Items:\n%s",
                 orderId,
                 state,
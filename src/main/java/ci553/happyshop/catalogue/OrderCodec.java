@@ -0,0 +1,197 @@
+package ci553.happyshop.catalogue;
+
+import ci553.happyshop.orderManagement.OrderState;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+
+/**
+ * OrderCodec writes an Order and its products as compact bytes, and reads them back.
+ * It is the storage format of the order journal (JournalOrderStore); the text of Order.orderDetails()
+ * is rendered from the decoded order when the picker or a receipt needs it.
+ *
+ * Format, version 1:
+ *  <pre>
+ *  fixed header, 4 bytes:
+ *    byte   marker         0, so the bytes are never mistaken for order text (which starts with "Order ID")
+ *    byte   version        1
+ *    byte   state          OrderState ordinal
+ *    byte   flags          bit 0: express
+ *  varint   orderId
+ *  varlong  orderedTime, progressingTime, collectedTime   seconds since 1970-01-01 00:00:00 of the
+ *                                                         local date-time in the order, 0 if empty
+ *  varint   number of products, then for each product:
+ *    varlong  product ID   (digits << 4 | number of digits), so "0001" is 1 byte;
+ *                          0 if the ID is not all digits, followed by the ID as a string
+ *    string   description
+ *    string   image name   empty if it is the usual "<product ID>.jpg"
+ *    varlong  unit price in pence
+ *    varint   ordered quantity
+ *  </pre>
+ * A varint uses 7 bits per byte, the high bit telling whether another byte follows.
+ * A string is a varint byte length followed by UTF-8.
+ *
+ * A typical order of three products takes about 80 bytes instead of about 350 as text,
+ * and is read back without parsing lines or numbers from text.
+ */
+
+public class OrderCodec {
+    public static final int VERSION = 1;
+    private static final byte MARKER = 0;
+    private static final int FLAG_EXPRESS = 1;
+    private static final DateTimeFormatter DATE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    // Tells encoded order bytes apart from order text
+    public static boolean isEncoded(byte[] bytes) {
+        return bytes.length >= 4 && bytes[0] == MARKER;
+    }
+
+    public static byte[] encode(Order order) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 + order.getProductList().size() * 32);
+        out.write(MARKER);
+        out.write(VERSION);
+        out.write(order.getState().ordinal());
+        out.write(order.isExpress() ? FLAG_EXPRESS : 0);
+        writeVarLong(out, order.getOrderId());
+        writeVarLong(out, toSeconds(order.getOrderedDateTime()));
+        writeVarLong(out, toSeconds(order.getProgressingDateTime()));
+        writeVarLong(out, toSeconds(order.getCollectedDateTime()));
+        writeVarLong(out, order.getProductList().size());
+        for (Product product : order.getProductList()) {
+            String productId = product.getProductId();
+            if (isDigits(productId)) {
+                writeVarLong(out, Long.parseLong(productId) << 4 | productId.length());
+            } else {
+                writeVarLong(out, 0);
+                writeString(out, productId);
+            }
+            writeString(out, product.getProductDescription());
+            String imageName = product.getProductImageName();
+            writeString(out, (productId + ".jpg").equals(imageName) ? "" : imageName == null ? "" : imageName);
+            writeVarLong(out, Math.round(product.getUnitPrice() * 100));
+            writeVarLong(out, product.getOrderedQuantity());
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Reads an order written by encode().
+     * @throws IOException if the bytes are not an encoded order, or of an unknown version
+     */
+    public static Order decode(byte[] bytes) throws IOException {
+        if (!isEncoded(bytes)) {
+            throw new IOException("Not an encoded order");
+        }
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        in.get(); // marker
+        int version = in.get();
+        if (version != VERSION) {
+            throw new IOException("Unknown order encoding version: " + version);
+        }
+        try {
+            OrderState state = OrderState.values()[in.get()];
+            int flags = in.get();
+            int orderId = (int) readVarLong(in);
+            String orderedDateTime = fromSeconds(readVarLong(in));
+            String progressingDateTime = fromSeconds(readVarLong(in));
+            String collectedDateTime = fromSeconds(readVarLong(in));
+            int productCount = (int) readVarLong(in);
+            ArrayList<Product> products = new ArrayList<>(productCount);
+            for (int i = 0; i < productCount; i++) {
+                long packedId = readVarLong(in);
+                String productId = packedId == 0 ? readString(in) : zeroPadded(packedId >>> 4, (int) (packedId & 0xF));
+                String description = readString(in);
+                String imageName = readString(in);
+                double unitPrice = readVarLong(in) / 100.0;
+                Product product = new Product(productId, description,
+                        imageName.isEmpty() ? productId + ".jpg" : imageName, unitPrice, 0);
+                product.setOrderedQuantity((int) readVarLong(in));
+                products.add(product);
+            }
+            Order order = new Order(orderId, state, orderedDateTime, products);
+            order.setProgressingDateTime(progressingDateTime);
+            order.setCollectedDateTime(collectedDateTime);
+            order.setExpress((flags & FLAG_EXPRESS) != 0);
+            return order;
+        } catch (BufferUnderflowException | ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Encoded order is cut short or corrupt", e);
+        }
+    }
+
+    private static boolean isDigits(String text) {
+        if (text == null || text.isEmpty() || text.length() > 15) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) < '0' || text.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String zeroPadded(long value, int digits) {
+        String text = Long.toString(value);
+        return text.length() >= digits ? text : "0".repeat(digits - text.length()) + text;
+    }
+
+    // "2025-03-11 19:53:45" -> seconds, read as UTC so the local date-time comes back unchanged; 0 if empty
+    private static long toSeconds(String dateTime) {
+        if (dateTime == null || dateTime.isBlank()) {
+            return 0;
+        }
+        try {
+            return LocalDateTime.parse(dateTime.trim(), DATE_TIME_FORMAT).toEpochSecond(ZoneOffset.UTC);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Not an order date-time: " + dateTime, e);
+        }
+    }
+
+    private static String fromSeconds(long seconds) {
+        return seconds == 0 ? "" : LocalDateTime.ofEpochSecond(seconds, 0, ZoneOffset.UTC).format(DATE_TIME_FORMAT);
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(ByteBuffer in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in encoded order");
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static String readString(ByteBuffer in) throws IOException {
+        int length = (int) readVarLong(in);
+        if (length < 0 || length > in.remaining()) {
+            throw new IOException("Encoded order is cut short or corrupt");
+        }
+        String text = new String(in.array(), in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return text;
+    }
+}
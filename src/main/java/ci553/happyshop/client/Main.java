@@ -78,7 +78,7 @@ public class Main extends Application {
         cusView.cusController = cusController;
         cusController.cusModel = cusModel;
         cusModel.cusView = cusView;
-        cusModel.databaseRW = databaseRW;
+        cusModel.asyncDatabaseRW = DatabaseRWFactory.createAsyncDatabaseRW(databaseRW);
         cusView.start(new Stage());
 
         //RemoveProductNotifier removeProductNotifier = new RemoveProductNotifier();
@@ -138,7 +138,7 @@ public class Main extends Application {
         view.controller = controller;
         controller.model = model;
         model.view = view;
-        model.databaseRW = databaseRW;
+        model.asyncDatabaseRW = DatabaseRWFactory.createAsyncDatabaseRW(databaseRW);
         view.start(new Stage());
 
         //create dependent views that need window info
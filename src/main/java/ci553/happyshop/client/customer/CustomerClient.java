@@ -34,7 +34,7 @@ public class CustomerClient extends Application {
         cusView.cusController = cusController;
         cusController.cusModel = cusModel;
         cusModel.cusView = cusView;
-        cusModel.databaseRW = databaseRW;
+        cusModel.asyncDatabaseRW = DatabaseRWFactory.createAsyncDatabaseRW(databaseRW);
         cusView.start(window);
         //RemoveProductNotifier removeProductNotifier = new RemoveProductNotifier();
         //removeProductNotifier.cusView = cusView;
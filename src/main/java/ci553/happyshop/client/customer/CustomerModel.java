@@ -3,10 +3,12 @@ package ci553.happyshop.client.customer;
 import ci553.happyshop.catalogue.ExcessiveOrderQuantityException;
 import ci553.happyshop.catalogue.Order;
 import ci553.happyshop.catalogue.Product;
-import ci553.happyshop.storageAccess.DatabaseRW;
+import ci553.happyshop.storageAccess.AsyncDatabaseRW;
 import ci553.happyshop.orderManagement.OrderHub;
+import ci553.happyshop.utility.Log;
 import ci553.happyshop.utility.StorageLocation;
 import ci553.happyshop.utility.ProductListFormatter;
+import javafx.application.Platform;
 
 import java.io.IOException;
 import java.nio.file.Path;
@@ -17,6 +19,10 @@ import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * TODO
@@ -25,8 +31,9 @@ import java.util.Map;
  */
 public class CustomerModel {
     public CustomerView cusView;
-    public DatabaseRW databaseRW; //Interface type, not specific implementation
-                                  //Benefits: Flexibility: Easily change the database implementation.
+    public AsyncDatabaseRW asyncDatabaseRW; //Interface type, not specific implementation
+                                            //Benefits: Flexibility: Easily change the database implementation.
+                                            //Every call returns at once, results come back on the JavaFX thread.
 
     private Product theProduct =null; // product found from search
     private ArrayList<Product> trolley =  new ArrayList<>(); // a list of products in trolley
@@ -39,39 +46,60 @@ public class CustomerModel {
 
     private ArrayList<Product> productList = new ArrayList<>(); // store search results
     private Product selectedProduct; // store selected product from results
+    private boolean checkOutInProgress = false; // true while the database is checking out the trolley
+
+    // The products read before a checkout, the lines that could not be bought, and the order made (null if none)
+    private record CheckOutResult(Map<String, Product> currentProducts, ArrayList<Product> insufficientProducts, Order order) {}
+
+    // Orders are made here, off the JavaFX thread, so concurrent checkouts share the order store's disk flushes
+    private static final ExecutorService orderExecutor = Executors.newVirtualThreadPerTaskExecutor();
 
     /**
      * Searches the database for products that match the keyword typed by the customer.
      * Get products Ids or names that match the keyword entered in the search box.
      * Display results in the productList
-     * @throws SQLException if an error happens while accessing the database
+     * The search runs in the background, the results are shown when it completes.
      * This method used the same search logic used in the warehouse.
      */
-    void doSearch() throws SQLException {
+    void doSearch() {
         String keyword = cusView.tfId.getText().trim();
 
         if (!keyword.isEmpty()) {
-            productList.clear();
-            productList.addAll(databaseRW.searchProduct(keyword)); // same as Warehouse
-            cusView.obrLvProducts.getItems().setAll(productList);  // update customer list view
-            System.out.println(productList.size() + " products found for: " + keyword);
-            /*
-            If productList is still empty after search,
-            it shows the message "No products found!"
-
-            If not, don't show message
-             */
-            if  (productList.isEmpty()) {
-                cusView.noResults.setText("No products found!");
-                cusView.noResults.setVisible(true);
-                cusView.tfId.clear();
-            }else  {
-                cusView.noResults.setVisible(false);
-            }
+            asyncDatabaseRW.searchProduct(keyword) // same as Warehouse
+                    .whenComplete((found, error) -> Platform.runLater(() -> {
+                        if (error != null) {
+                            Log.error("Search failed for: " + keyword, error);
+                            cusView.noResults.setText("Search failed, please try again");
+                            cusView.noResults.setVisible(true);
+                        } else {
+                            showSearchResult(keyword, found);
+                        }
+                    }));
         }
         else {
             cusView.obrLvProducts.getItems().clear();
-            System.out.println("Please type product ID or name to search");
+            Log.debug("Please type product ID or name to search");
+        }
+    }
+
+    // Shows the products found by doSearch(), called on the JavaFX application thread
+    private void showSearchResult(String keyword, ArrayList<Product> found) {
+        productList.clear();
+        productList.addAll(found);
+        cusView.obrLvProducts.getItems().setAll(productList);  // update customer list view
+        Log.debug(() -> productList.size() + " products found for: " + keyword);
+        /*
+        If productList is still empty after search,
+        it shows the message "No products found!"
+
+        If not, don't show message
+         */
+        if  (productList.isEmpty()) {
+            cusView.noResults.setText("No products found!");
+            cusView.noResults.setVisible(true);
+            cusView.tfId.clear();
+        }else  {
+            cusView.noResults.setVisible(false);
         }
     }
 
@@ -83,7 +111,10 @@ public class CustomerModel {
      */
 
     void addToTrolley(){
-        System.out.println("addToTrolley gets called in model");
+        Log.debug("addToTrolley gets called in model");
+        if (refuseWhileCheckingOut()) {
+            return;
+        }
         Product selectedProduct = cusView.obrLvProducts.getSelectionModel().getSelectedItem(); // get selected product from list
         if(selectedProduct != null){
 
@@ -101,7 +132,7 @@ public class CustomerModel {
         }
         else{
             displayLaSearchResult = "Please search for an available product before adding it to the trolley";
-            System.out.println("must search and get an available product before add to trolley");
+            Log.debug("must search and get an available product before add to trolley");
 
             /*
              Show the message "No products selected!",
@@ -152,7 +183,19 @@ public class CustomerModel {
         }
     }
 
-    void checkOut() throws IOException, SQLException {
+    /**
+     * Checks out the trolley.
+     * The stock check, the purchase and the new order run in the background (see AsyncDatabaseRW), so the
+     * window stays responsive and checkouts from many windows are saved together; the receipt is shown on
+     * the JavaFX thread once the order is made.
+     * Pressing Check Out again while a checkout is running has no effect, and the trolley can not be
+     * changed or cancelled until it has finished (see refuseWhileCheckingOut()).
+     */
+    void checkOut() {
+        if (checkOutInProgress) {
+            Log.debug("checkout is already in progress");
+            return;
+        }
         if(!trolley.isEmpty()){
             try {
                 // Group the products in the trolley by productId to optimize stock checking
@@ -162,47 +205,27 @@ public class CustomerModel {
                 // Note: If the trolley is already organized (merged and sorted), grouping is unnecessary.
                 validateOrderedQuantity(trolley);
                 ArrayList<Product> groupedTrolley = groupProductsById(trolley);
-                ArrayList<Product> insufficientProducts = databaseRW.purchaseStocks(groupedTrolley);
-
-                if (insufficientProducts.isEmpty()) { // If stock is sufficient for all products
-                    //get OrderHub and tell it to make a new Order
-                    OrderHub orderHub = OrderHub.getOrderHub();
-                    Order theOrder = orderHub.newOrder(trolley);
-                    trolley.clear();
-                    displayTaTrolley = "";
-                    //Reset product image
-                    theProduct = null;
-                    imageName = "imageHolder.jpg";
-                    displayTaReceipt = String.format(
-                            "Order_ID: %s\nOrdered_Date_Time: %s\n%s",
-                            theOrder.getOrderId(),
-                            theOrder.getOrderedDateTime(),
-                            ProductListFormatter.buildString(theOrder.getProductList())
-                    );
-                    System.out.println(displayTaReceipt);
-
-                    // Clear search box and search results list
-                    cusView.tfId.clear();
-                    cusView.obrLvProducts.getItems().clear();
-                } else { // Some products have insufficient stock — build an error message to inform the customer
-                    StringBuilder errorMsg = new StringBuilder();
-                    for (Product p : insufficientProducts) {
-                        errorMsg.append("\u2022 " + p.getProductId()).append(", ")
-                                .append(p.getProductDescription()).append(" (Only ")
-                                .append(p.getStockQuantity()).append(" available, ")
-                                .append(p.getOrderedQuantity()).append(" requested)\n");
-                    }
-                    theProduct = null;
-
-                    //TODO
-                    // Add the following logic here:
-                    // 1. Remove products with insufficient stock from the trolley.
-                    // 2. Trigger a message window to notify the customer about the insufficient stock, rather than directly changing displayLaSearchResult.
-                    //You can use the provided RemoveProductNotifier class and its showRemovalMsg method for this purpose.
-                    //remember close the message window where appropriate (using method closeNotifierWindow() of RemoveProductNotifier class)
-                    displayLaSearchResult = "Checkout failed due to insufficient stock for the following products:\n" + errorMsg.toString();
-                    System.out.println("stock is not enough");
-                }
+                ArrayList<Product> orderedTrolley = copyLines(trolley); // what is being bought, unaffected by later edits
+
+                // Revalidate the whole trolley against the database with one bulk lookup (not one query per line).
+                // Lines that are already known to be short are reported without attempting the purchase.
+                checkOutInProgress = true;
+                asyncDatabaseRW.searchByProductIds(productIdsOf(groupedTrolley))
+                        .thenCompose(currentProducts -> {
+                            ArrayList<Product> insufficientProducts = findInsufficientProducts(groupedTrolley, currentProducts);
+                            if (!insufficientProducts.isEmpty()) {
+                                return CompletableFuture.completedFuture(new CheckOutResult(currentProducts, insufficientProducts, null));
+                            }
+                            return asyncDatabaseRW.purchaseStocks(groupedTrolley)
+                                    .thenApplyAsync(insufficient -> new CheckOutResult(currentProducts, insufficient,
+                                            insufficient.isEmpty() ? placeOrder(orderedTrolley, currentProducts) : null),
+                                            orderExecutor);
+                        })
+                        .whenComplete((result, error) -> Platform.runLater(() -> {
+                            checkOutInProgress = false;
+                            finishCheckOut(result, error);
+                        }));
+                return; // the view is updated by finishCheckOut()
             }
             catch (ExcessiveOrderQuantityException e) {
                 cusView.noResults.setText(e.getMessage());
@@ -211,11 +234,101 @@ public class CustomerModel {
         }
         else{
             displayTaTrolley = "Your trolley is empty";
-            System.out.println("Your trolley is empty");
+            Log.debug("Your trolley is empty");
         }
         updateView();
     }
 
+    /**
+     * Gets OrderHub to make a new Order once the stock is bought; runs on orderExecutor, not the JavaFX thread.
+     * The order and the receipt are built from the current product details fetched before the purchase.
+     */
+    private static Order placeOrder(ArrayList<Product> orderedTrolley, Map<String, Product> currentProducts) {
+        try {
+            return OrderHub.getOrderHub().newOrder(refreshProductDetails(orderedTrolley, currentProducts));
+        } catch (IOException | SQLException e) {
+            Log.error("Failed to create the order file", e);
+            throw new CompletionException(e); // finishCheckOut() reports the failure
+        }
+    }
+
+    // Completes a checkout once the database has answered and the order is made, called on the JavaFX application thread
+    private void finishCheckOut(CheckOutResult result, Throwable error) {
+        if (error != null) {
+            Log.error("Checkout failed", error);
+            displayLaSearchResult = "Checkout failed, please try again";
+            updateView();
+            return;
+        }
+        Map<String, Product> currentProducts = result.currentProducts();
+        ArrayList<Product> insufficientProducts = result.insufficientProducts();
+        if (insufficientProducts.isEmpty()) { // If stock is sufficient for all products
+            Order theOrder = result.order(); // made by placeOrder()
+            trolley.clear();
+            displayTaTrolley = "";
+            //Reset product image
+            theProduct = null;
+            imageName = "imageHolder.jpg";
+            displayTaReceipt = String.format(
+                    "Order_ID: %s\nOrdered_Date_Time: %s\n%s",
+                    theOrder.getOrderId(),
+                    theOrder.getOrderedDateTime(),
+                    ProductListFormatter.buildString(theOrder.getProductList())
+            );
+            Log.debug(() -> displayTaReceipt);
+
+            // Clear search box and search results list
+            cusView.tfId.clear();
+            cusView.obrLvProducts.getItems().clear();
+        } else { // Some products have insufficient stock — build an error message to inform the customer
+            StringBuilder errorMsg = new StringBuilder();
+            for (Product p : insufficientProducts) {
+                errorMsg.append("\u2022 " + p.getProductId()).append(", ")
+                        .append(p.getProductDescription()).append(" (Only ")
+                        .append(availableStock(p, currentProducts)).append(" available, ")
+                        .append(p.getOrderedQuantity()).append(" requested)\n");
+            }
+            theProduct = null;
+
+            //TODO
+            // Add the following logic here:
+            // 1. Remove products with insufficient stock from the trolley.
+            // 2. Trigger a message window to notify the customer about the insufficient stock, rather than directly changing displayLaSearchResult.
+            //You can use the provided RemoveProductNotifier class and its showRemovalMsg method for this purpose.
+            //remember close the message window where appropriate (using method closeNotifierWindow() of RemoveProductNotifier class)
+            displayLaSearchResult = "Checkout failed due to insufficient stock for the following products:\n" + errorMsg.toString();
+            Log.debug("stock is not enough");
+        }
+        updateView();
+    }
+
+    /**
+     * The trolley is not changed while a checkout is running: the order is made from the lines read when the
+     * checkout started, and the trolley is emptied afterwards, which would drop anything added in between.
+     * @return true if a checkout is running, after telling the customer to wait
+     */
+    private boolean refuseWhileCheckingOut() {
+        if (!checkOutInProgress) {
+            return false;
+        }
+        Log.debug("trolley is locked while checking out");
+        cusView.noResults.setText("Please wait, your order is being checked out");
+        cusView.noResults.setVisible(true);
+        return true;
+    }
+
+    // Copies every line of the trolley, so the copy keeps its quantities whatever happens to the trolley
+    private static ArrayList<Product> copyLines(ArrayList<Product> proList) {
+        ArrayList<Product> copy = new ArrayList<>(proList.size());
+        for (Product p : proList) {
+            Product line = new Product(p.getProductId(), p.getProductDescription(), p.getProductImageName(),
+                    p.getUnitPrice(), p.getStockQuantity());
+            line.setOrderedQuantity(p.getOrderedQuantity());
+            copy.add(line);
+        }
+        return copy;
+    }
+
     /**
      * Groups products by their productId to optimize database queries and updates.
      * By grouping products, we can check the stock for a given `productId` once, rather than repeatedly
@@ -243,7 +356,55 @@ public class CustomerModel {
         return new ArrayList<>(grouped.values());
     }
 
+    // Returns the IDs of the products in a list, used for the bulk lookup of the trolley
+    private static ArrayList<String> productIdsOf(ArrayList<Product> proList) {
+        ArrayList<String> ids = new ArrayList<>();
+        for (Product p : proList) {
+            ids.add(p.getProductId());
+        }
+        return ids;
+    }
+
+    /**
+     * Finds the trolley lines that can not be fulfilled according to the current products:
+     * the product was removed from the database, or its stock is lower than the ordered quantity.
+     */
+    private ArrayList<Product> findInsufficientProducts(ArrayList<Product> groupedTrolley, Map<String, Product> currentProducts) {
+        ArrayList<Product> insufficientProducts = new ArrayList<>();
+        for (Product p : groupedTrolley) {
+            if (p.getOrderedQuantity() > availableStock(p, currentProducts)) {
+                insufficientProducts.add(p);
+            }
+        }
+        return insufficientProducts;
+    }
+
+    // The current stock of a product, 0 if it no longer exists
+    private static int availableStock(Product p, Map<String, Product> currentProducts) {
+        Product current = currentProducts.get(p.getProductId());
+        return current == null ? 0 : current.getStockQuantity();
+    }
+
+    /**
+     * Copies the trolley with the current description and price of each product,
+     * so the order and receipt show what the customer is actually charged.
+     */
+    private static ArrayList<Product> refreshProductDetails(ArrayList<Product> proList, Map<String, Product> currentProducts) {
+        ArrayList<Product> refreshed = new ArrayList<>();
+        for (Product p : proList) {
+            Product current = currentProducts.getOrDefault(p.getProductId(), p);
+            Product line = new Product(p.getProductId(), current.getProductDescription(), current.getProductImageName(),
+                    current.getUnitPrice(), current.getStockQuantity());
+            line.setOrderedQuantity(p.getOrderedQuantity());
+            refreshed.add(line);
+        }
+        return refreshed;
+    }
+
     void cancel(){
+        if (refuseWhileCheckingOut()) {
+            return;
+        }
         trolley.clear();
         displayTaTrolley="";
         // Clear search box and search results list when cancelled.
@@ -266,7 +427,7 @@ public class CustomerModel {
             // Get the full absolute path to the image
             Path imageFullPath = Paths.get(relativeImageUrl).toAbsolutePath();
             imageName = imageFullPath.toUri().toString(); //get the image full Uri then convert to String
-            System.out.println("Image absolute path: " + imageFullPath); // Debugging to ensure path is correct
+            Log.debug(() -> "Image absolute path: " + imageFullPath); // Debugging to ensure path is correct
         }
         else{
             imageName = "imageHolder.jpg";
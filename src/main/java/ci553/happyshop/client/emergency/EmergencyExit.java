@@ -1,5 +1,7 @@
 package ci553.happyshop.client.emergency;
 
+import ci553.happyshop.storageAccess.DatabaseRWFactory;
+import ci553.happyshop.storageAccess.OrderStoreFactory;
 import ci553.happyshop.utility.UIStyle;
 import ci553.happyshop.utility.WinPosManager;
 import javafx.application.Platform;
@@ -36,6 +38,8 @@ public class EmergencyExit {
         Button btnExit = new Button();
         btnExit.setGraphic(ivExit);
         btnExit.setOnAction(event -> {
+            DatabaseRWFactory.shutdown(); // report pool statistics and close pooled connections
+            OrderStoreFactory.shutdown(); // checkpoint and close the order store
             Platform.exit(); // Gracefully exit JavaFX
             System.exit(0);//forcefully shut down JVM (in case there are non-JavaFX threads)
         });
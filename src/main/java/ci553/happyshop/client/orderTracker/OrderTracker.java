@@ -1,9 +1,14 @@
 package ci553.happyshop.client.orderTracker;
 
+import ci553.happyshop.orderManagement.CoalescingOrderDispatcher;
+import ci553.happyshop.orderManagement.OrderEvent;
+import ci553.happyshop.orderManagement.OrderEventListener;
 import ci553.happyshop.orderManagement.OrderHub;
+import ci553.happyshop.orderManagement.OrderMapReplica;
 import ci553.happyshop.orderManagement.OrderState;
 import ci553.happyshop.utility.UIStyle;
 import ci553.happyshop.utility.WinPosManager;
+import javafx.application.Platform;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
 import javafx.scene.control.Label;
@@ -11,21 +16,22 @@ import javafx.scene.control.TextArea;
 import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
 
+import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
 
 /**
  * OrderTracker class is for tracking orders and their states.
  * It displays an ordersMap(a list of orders with their associated states) in a TextArea.
- * The ordersMap data is received from the OrderHub.
+ * The ordersMap data is received from the OrderHub: a snapshot when subscribing, then only the changed orders.
  */
 
-public class OrderTracker {
+public class OrderTracker implements OrderEventListener {
     private final int WIDTH = UIStyle.trackerWinWidth;
     private final int HEIGHT = UIStyle.trackerWinHeight;
 
-    // TreeMap (orderID,state) holding order IDs and their corresponding states.
-    private static final TreeMap<Integer, OrderState> ordersMap = new TreeMap<>();
+    // this tracker's copy of the hub's orderMap (orderID,state), kept up to date by OrderEvents
+    private final OrderMapReplica ordersMap = new OrderMapReplica();
+    private CoalescingOrderDispatcher dispatcher; // collects order events between renders
     private final TextArea taDisplay; //area to show all orderId and their state on the GUI
 
      //Constructor initializes the UI, a title Label, and a TextArea for displaying the order details.
@@ -57,24 +63,31 @@ public class OrderTracker {
      */
     public void registerWithOrderHub(){
         OrderHub orderHub = OrderHub.getOrderHub();
-        orderHub.registerOrderTracker(this);
+        dispatcher = new CoalescingOrderDispatcher(this, Platform::runLater); // at most one render per frame, on the FX thread
+        orderHub.subscribe(dispatcher);
+    }
+
+    // e.g. "CoalescingOrderDispatcher[target=OrderTracker, eventsReceived=1000, renders=42]"
+    public String getDispatchStats() {
+        return dispatcher == null ? "not registered" : dispatcher.getStats();
     }
 
     /**
-     * Sets the order map with new data and refreshes the display.
-     * This method is called by OrderHub when order states are updated.
+     * Applies changed orders and refreshes the display.
+     * This method is called on the FX thread by the dispatcher, with the changes since the last render.
      */
-    public void setOrderMap(TreeMap<Integer, OrderState> om) {
-        ordersMap.clear(); // Clears the current map to replace it with the new data.
-        ordersMap.putAll(om);// Adds all new order data to the map.
-        displayOrderMap();// Updates the display with the new order map.
+    @Override
+    public synchronized void onOrderEvents(List<OrderEvent> events) {
+        if (ordersMap.apply(events)) {
+            displayOrderMap();// Updates the display with the new order map.
+        }
     }
 
      //Displays the current order map in the TextArea.
      //Iterates over the ordersMap and formats each order ID and state for display.
     private void displayOrderMap() {
         StringBuilder sb = new StringBuilder();
-        for(Map.Entry<Integer, OrderState> entry : ordersMap.entrySet()) {
+        for(Map.Entry<Integer, OrderState> entry : ordersMap.orders().entrySet()) {
             int orderId = entry.getKey();
             OrderState orderState = entry.getValue();
             sb.append(orderId).append(" ".repeat(5)).append(orderState).append("\n");
@@ -1,12 +1,17 @@
 package ci553.happyshop.client.picker;
 
+import ci553.happyshop.orderManagement.CoalescingOrderDispatcher;
+import ci553.happyshop.orderManagement.OrderClaim;
+import ci553.happyshop.orderManagement.OrderEvent;
+import ci553.happyshop.orderManagement.OrderEventListener;
 import ci553.happyshop.orderManagement.OrderHub;
+import ci553.happyshop.orderManagement.OrderMapReplica;
 import ci553.happyshop.orderManagement.OrderState;
+import javafx.application.Platform;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
-import java.util.TreeSet;
 
 /**
  * PickerModel represents the logic order picker.
@@ -15,16 +20,16 @@ import java.util.TreeSet;
  * 2. Notifying PickerView to Updates user interface.
  *
  * 1. Observing OrderHub.
- * PickerModel is an observer of  OrderHub, receiving orderMap from OrderHub.
+ * PickerModel is an observer of  OrderHub, receiving a snapshot of the orderMap and then the changed orders.
  * When a picker claims a task, PickerModel:
- * - Retrieves the first unlocked order from the orderMap.
- * - Locks the selected order to prevent other pickers from accessing it.
- * - Notifies OrderHub to update the orderMap, and begin preparation of the order.
+ * - Asks OrderHub to claim the oldest waiting order. OrderHub takes it from its ready queue atomically,
+ *   so no other picker can get the same order, and changes it to Progressing.
+ * - Shows the order details to begin preparation of the order.
  *
  * Once the order is collected by the customer, PickerModel:
- * - Unlocks the order.
- * - Notifies OrderHub to update the orderMap.
+ * - Asks OrderHub to complete the claim, which changes the order to Collected.
  * - Begins the next task if available.
+ * A claim that is not completed within OrderHub.pickLeaseMillis expires and the order goes back to the queue.
  *
  * All changes in order state are centralized through OrderHub to ensure synchronization.
  * No picker directly changes the display before OrderHub updates the shared orderMap;
@@ -39,7 +44,7 @@ import java.util.TreeSet;
  * in response to centralized changes made by the OrderHub.
  */
 
-public class PickerModel {
+public class PickerModel implements OrderEventListener {
     public PickerView pickerView;
     private OrderHub orderHub = OrderHub.getOrderHub();
 
@@ -47,98 +52,78 @@ public class PickerModel {
     private String displayTaOrderMap="";
     private String displayTaOrderDetail ="";
 
-    // TreeMap (orderID,state) holding order IDs and their corresponding states.
-    private static TreeMap<Integer, OrderState> orderMap = new TreeMap<>();
-    private static TreeSet<Integer> lockedOrderIds = new TreeSet<>(); // Track locked orders by orderId
-
-    private int theOrderId=0; //Order ID assigned to a picker;
-                              // 0 means no order is currently assigned.
-    private OrderState theOrderState;
+    // this picker's copy of the hub's orderMap (orderID,state), kept up to date by OrderEvents
+    private final OrderMapReplica orderMap = new OrderMapReplica();
+    private CoalescingOrderDispatcher dispatcher; // collects order events between renders
+    private OrderClaim theClaim = null; //the order assigned to this picker;
+                                        // null means no order is currently assigned.
 
     /**
-     * Attempts to find an unlocked order for this picker and mark it as progressing.
-     * The order will be locked to prevent other pickers from accessing it.
-     * Only the first unlocked order found will be processed.
+     * Claims the oldest waiting order for this picker; OrderHub marks it as progressing.
+     * A picker works on one order at a time, so nothing happens while it still holds one.
      */
-    public void doProgressing() throws IOException {
-        for (Map.Entry<Integer, OrderState> entry : orderMap.entrySet()) {
-            int orderId = entry.getKey();
-            if (!isOrderLocked(orderId)) { // Find the first unlocked order
-                lockOrder(orderId);// Lock the order to prevent other pickers from taking it
-                theOrderId = orderId; // Save the assigned orderId to this picker and update its state
-                theOrderState = OrderState.Progressing;
-                notifyOrderHub();// Notify the OrderHub about the state change
-                updatePickerView(); // Refresh picker view
-                return; // Exit after handling one order
-            }
+    public synchronized void doProgressing() throws IOException {
+        if (theClaim != null) {
+            return;
         }
-    }
-
-    // Lock an order
-    private boolean lockOrder(int orderId) {
-        if (lockedOrderIds.contains(orderId)) {
-            return false; // Order is already locked
-        } else {
-            lockedOrderIds.add(orderId);
-            return true; // Successfully locked the order
+        OrderClaim claim = orderHub.claimNextOrder();
+        if (claim == null) {
+            return; // no order is waiting
         }
+        theClaim = claim;
+        // Read order file, ie. order details
+        displayTaOrderDetail = orderHub.getOrderDetailForPicker(claim.orderId());
+        updatePickerView(); // Refresh picker view
     }
 
-    // Unlock an order
-    private void unlockOrder(int orderId) {
-        lockedOrderIds.remove(orderId);
-    }
-
-    // Check if an order is locked
-    private boolean isOrderLocked(int orderId) {
-        return lockedOrderIds.contains(orderId);
-    }
-
-    public void doCollected() throws IOException {
-        if(theOrderId!=0 && isOrderLocked(theOrderId)){
-            theOrderState = OrderState.Collected;
-            notifyOrderHub(); // Notify the OrderHub about the state change
+    public synchronized void doCollected() throws IOException {
+        if (theClaim == null) {
+            return;
+        }
+        OrderClaim claim = theClaim;
+        theClaim = null; //reset to no order is with the picker
+        if (orderHub.completeOrder(claim)) {
             displayTaOrderDetail = "";
-            updatePickerView(); // update picker view
-            theOrderId=0;  //reset to no order is with the picker
-            unlockOrder(theOrderId);//remove the order from locked orderId set
+        } else {
+            displayTaOrderDetail = "Order " + claim.orderId() + " was not collected in time,\n"
+                    + "it has gone back to the queue.";
         }
+        updatePickerView(); // update picker view
     }
 
     // Registers this PickerModel instance with the OrderHub
     //so it can receive updates about orderMap changes.
     public void registerWithOrderHub(){
         OrderHub orderHub = OrderHub.getOrderHub();
-        orderHub.registerPickerModel(this);
+        dispatcher = new CoalescingOrderDispatcher(this, Platform::runLater); // at most one render per frame, on the FX thread
+        orderHub.subscribe(dispatcher);
     }
 
-    //Notifies the OrderHub of a change in the order state.
-    //If the order is moving to the 'Progressing' state, asks OrderHub to read the order detail
-    // from the file system for displaying in the pickerView.
-    private void notifyOrderHub() throws IOException {
-        orderHub.changeOrderStateMoveFile(theOrderId, theOrderState);
-        if (theOrderState == OrderState.Progressing) {
-            // Read order file, ie. order details
-            displayTaOrderDetail = orderHub.getOrderDetailForPicker(theOrderId);
-        }
+    // e.g. "CoalescingOrderDispatcher[target=PickerModel, eventsReceived=1000, renders=42]"
+    public String getDispatchStats() {
+        return dispatcher == null ? "not registered" : dispatcher.getStats();
     }
 
-    // Sets the order map with new data and refreshes the display.
-    // This method is called by OrderHub to set orderMap for picker.
-    public void setOrderMap(TreeMap<Integer,OrderState> om) {
-        orderMap.clear();
-        orderMap.putAll(om);
-        displayTaOrderMap= buildOrderMapString();
-        updatePickerView();
+    // Applies changed orders and refreshes the display.
+    // This method is called on the FX thread by the dispatcher, with the changes since the last render.
+    @Override
+    public synchronized void onOrderEvents(List<OrderEvent> events) {
+        if (orderMap.apply(events)) {
+            displayTaOrderMap= buildOrderMapString();
+            updatePickerView();
+        }
     }
 
-    //Builds a formatted string representing the current order map.
+    //Builds a formatted string representing the current order map (only ordered and progressing orders).
     //Each line contains the order ID followed by its state, aligned with spacing.
     private String buildOrderMapString() {
         StringBuilder sb = new StringBuilder();
-        for(Map.Entry<Integer, OrderState> entry : orderMap.entrySet()) {
+        for(Map.Entry<Integer, OrderState> entry : orderMap.orders().entrySet()) {
             int orderId = entry.getKey();
             OrderState orderState = entry.getValue();
+            if (orderState == OrderState.Collected) {
+                continue; // pickers are done with collected orders
+            }
             sb.append(orderId).append(" ".repeat(8)).append(orderState).append("\n");
         }
         return sb.toString();
@@ -35,7 +35,7 @@ public class WarehouseClient extends Application {
         view.controller = controller;
         controller.model = model;
         model.view = view;
-        model.databaseRW = databaseRW;
+        model.asyncDatabaseRW = DatabaseRWFactory.createAsyncDatabaseRW(databaseRW);
         view.start(window);
 
         HistoryWindow historyWindow = new HistoryWindow();
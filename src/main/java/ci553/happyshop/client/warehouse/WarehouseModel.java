@@ -1,23 +1,24 @@
 package ci553.happyshop.client.warehouse;
 
 import ci553.happyshop.catalogue.Product;
-import ci553.happyshop.storageAccess.DatabaseRW;
-import ci553.happyshop.storageAccess.DerbyRW;
+import ci553.happyshop.storageAccess.AsyncDatabaseRW;
 import ci553.happyshop.storageAccess.ImageFileManager;
+import ci553.happyshop.utility.Log;
 import ci553.happyshop.utility.StorageLocation;
+import javafx.application.Platform;
 
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.sql.SQLException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 
 public class WarehouseModel {
     public WarehouseView view;
-    public DatabaseRW databaseRW; //Interface type, not specific implementation
+    public AsyncDatabaseRW asyncDatabaseRW; //Interface type, not specific implementation
                          //Benefits: Flexibility: Easily change the database implementation.
+                         //Every call returns at once, results come back on the JavaFX thread.
 
     private ArrayList<Product> productList = new ArrayList<>(); // search results fetched from the database
     private Product theSelectedPro; // the product selected from the ListView before the user edits or deletes
@@ -60,42 +61,60 @@ public class WarehouseModel {
         ShowInputErrorMsg
     }
 
-    void doSearch() throws SQLException {
+    // The search runs in the background, the list is updated when it completes
+    void doSearch() {
         String keyword = view.tfSearchKeyword.getText().trim();
         if (!keyword.equals("")) {
-            productList = databaseRW.searchProduct(keyword);
+            asyncDatabaseRW.searchProduct(keyword)
+                    .whenComplete((found, error) -> Platform.runLater(() -> {
+                        if (error != null) {
+                            showDatabaseError("Search failed for: " + keyword, error);
+                        } else {
+                            productList = found;
+                            updateView(UpdateForAction.BtnSearch);
+                        }
+                    }));
         }
         else{
             productList.clear();
-            System.out.println("please type product ID or name to search");
+            Log.debug("please type product ID or name to search");
+            updateView(UpdateForAction.BtnSearch);
         }
-        updateView(UpdateForAction.BtnSearch);
     }
 
-    void doDelete() throws SQLException, IOException {
-        System.out.println("delete gets called in model");
+    void doDelete() {
+        Log.debug("delete gets called in model");
         Product pro  = view.obrLvProducts.getSelectionModel().getSelectedItem();
         if (pro != null ) {
-            theSelectedPro = pro;
-            productList.remove(theSelectedPro); //remove the product from product List
-
-            //update databse: delete the product from database
-            databaseRW.deleteProduct(theSelectedPro.getProductId());
-
-            //delete the image from imageFolder "images/"
-            String imageName = theSelectedPro.getProductImageName(); //eg 0011.jpg;
-            ImageFileManager.deleteImageFile(StorageLocation.imageFolder, imageName);
-
-            updateView(UpdateForAction.BtnDelete);
-            theSelectedPro = null;
+            //update databse: delete the product from database, in the background
+            asyncDatabaseRW.deleteProduct(pro.getProductId())
+                    .whenComplete((done, error) -> Platform.runLater(() -> {
+                        if (error != null) {
+                            showDatabaseError("Failed to delete product " + pro.getProductId(), error);
+                            return;
+                        }
+                        theSelectedPro = pro;
+                        productList.remove(theSelectedPro); //remove the product from product List
+
+                        //delete the image from imageFolder "images/"
+                        String imageName = theSelectedPro.getProductImageName(); //eg 0011.jpg;
+                        try {
+                            ImageFileManager.deleteImageFile(StorageLocation.imageFolder, imageName);
+                        } catch (IOException e) {
+                            Log.error("Failed to delete image " + imageName, e);
+                        }
+
+                        updateView(UpdateForAction.BtnDelete);
+                        theSelectedPro = null;
+                    }));
         }
         else{
-            System.out.println("No product was selected");
+            Log.debug("No product was selected");
         }
     }
 
     void doEdit() {
-        System.out.println("Edit gets called in model");
+        Log.debug("Edit gets called in model");
         Product pro = view.obrLvProducts.getSelectionModel().getSelectedItem();
         if (pro != null) {
             theSelectedPro = pro;
@@ -108,11 +127,11 @@ public class WarehouseModel {
             Path imageFullPath = Paths.get(relativeImageUri).toAbsolutePath();
             displayImageUrlEdit = imageFullPath.toUri().toString();//build the full path Uri
 
-            System.out.println("get new pro image name: " + displayImageUrlEdit);
+            Log.debug(() -> "get new pro image name: " + displayImageUrlEdit);
             updateView(UpdateForAction.BtnEdit);
         }
         else{
-            System.out.println("No product was selected");
+            Log.debug("No product was selected");
         }
 
     }
@@ -127,7 +146,7 @@ public class WarehouseModel {
            theNewProId = null;
        }
     }
-    void doSummit() throws SQLException, IOException {
+    void doSummit() throws IOException {
         if(view.theProFormMode.equals("EDIT")){
             doSubmitEdit();
         }
@@ -136,11 +155,12 @@ public class WarehouseModel {
         }
     }
 
-    private void doSubmitEdit() throws IOException, SQLException {
-        System.out.println("ok edit is called");
+    private void doSubmitEdit() throws IOException {
+        Log.debug("ok edit is called");
         if(theSelectedPro!=null) {
+            Product pro = theSelectedPro;
             String id=theSelectedPro.getProductId();
-            System.out.println("theSelectedPro " + id); //debug purpose
+            Log.debug(() -> "theSelectedPro " + id); //debug purpose
             String imageName = theSelectedPro.getProductImageName();
 
             String textPrice =view.tfPriceEdit.getText().trim();
@@ -161,19 +181,25 @@ public class WarehouseModel {
             else{
                 double price = Double.parseDouble(textPrice);
                 int stock= Integer.parseInt(textStock);
-                //update datbase
-                databaseRW.updateProduct(id,description,price,imageName,stock);
-
-                updateView(UpdateForAction.BtnSummitEdit);
-                theSelectedPro=null;
+                //update datbase, in the background
+                asyncDatabaseRW.updateProduct(id,description,price,imageName,stock)
+                        .whenComplete((done, error) -> Platform.runLater(() -> {
+                            if (error != null) {
+                                showDatabaseError("Failed to update product " + id, error);
+                                return;
+                            }
+                            theSelectedPro = pro;
+                            updateView(UpdateForAction.BtnSummitEdit);
+                            theSelectedPro=null;
+                        }));
             }
         }
         else{
-            System.out.println("No Product Selected");
+            Log.debug("No Product Selected");
         }
     }
 
-    void doChangeStockBy(String addOrSub) throws SQLException {
+    void doChangeStockBy(String addOrSub) {
         int oldStock = Integer.parseInt(view.tfStockEdit.getText().trim());
         int newStock =oldStock;
         String TextChangeBy = view.tfChangeByEdit.getText().trim();
@@ -196,7 +222,7 @@ public class WarehouseModel {
         }
     }
 
-    private  boolean validateInputChangeStockBy(String txChangeBy) throws SQLException {
+    private  boolean validateInputChangeStockBy(String txChangeBy) {
         StringBuilder errorMessage = new StringBuilder();
         // Validate Stock changBy Quantity (must be an integer)
         try {
@@ -212,36 +238,70 @@ public class WarehouseModel {
         return true;
     }
 
-    private void doSubmitNew() throws SQLException, IOException {
-        System.out.println("Adding new Pro in model");
+    // Checks in the background that the ID is free, then validates the form and adds the product
+    private void doSubmitNew() {
+        Log.debug("Adding new Pro in model");
 
         //all info(input from user) about the new product
-        theNewProId = view.tfIdNewPro.getText().trim();
+        String newProId = view.tfIdNewPro.getText().trim();
         String textPrice = view.tfPriceNewPro.getText().trim();
         String textStock = view.tfStockNewPro.getText().trim();
         String description = view.taDescriptionNewPro.getText().trim();
         String iPath = view.imageUriNewPro; //image Path from the imageChooser in View class
 
+        asyncDatabaseRW.isProIdAvailable(newProId)
+                .whenComplete((idAvailable, error) -> Platform.runLater(() -> {
+                    if (error != null) {
+                        showDatabaseError("Failed to check product ID " + newProId, error);
+                    } else {
+                        submitNew(newProId, textPrice, textStock, description, iPath, idAvailable);
+                    }
+                }));
+    }
+
+    // Second half of doSubmitNew(), called on the JavaFX application thread
+    private void submitNew(String newProId, String textPrice, String textStock, String description,
+                           String iPath, boolean idAvailable) {
         //validate input
-        if (validateInputNewProChild(theNewProId, textPrice, textStock, description, iPath) ==false) {
+        if (validateInputNewProChild(newProId, idAvailable, textPrice, textStock, description, iPath) ==false) {
             updateView(UpdateForAction.ShowInputErrorMsg);
-        } else {
-            //copy the user selected image to project image folder and using productId as image name
-            //and get the image extension from the source image, we write this name to database
-            String imageNameWithExtension = ImageFileManager.copyFileToDestination(view.imageUriNewPro, StorageLocation.imageFolder,theNewProId);
-            double price = Double.parseDouble(textPrice);
-            int stock = Integer.parseInt(textStock);
-
-            //insertNewProduct to databse (String id, String des,double price,String image,int stock)
-            //a record in databse looks like ('0001', '40 inch TV', 269.00,'0001TV.jpg',100)"
-            databaseRW.insertNewProduct(theNewProId,description,price,imageNameWithExtension,stock);
-            updateView(UpdateForAction.BtnSummitNew);
-            theNewProId = null;
+            return;
+        }
+        //copy the user selected image to project image folder and using productId as image name
+        //and get the image extension from the source image, we write this name to database
+        String imageNameWithExtension;
+        try {
+            imageNameWithExtension = ImageFileManager.copyFileToDestination(iPath, StorageLocation.imageFolder, newProId);
+        } catch (IOException e) {
+            showDatabaseError("Failed to copy the image of product " + newProId, e);
+            return;
         }
+        double price = Double.parseDouble(textPrice);
+        int stock = Integer.parseInt(textStock);
+
+        //insertNewProduct to databse (String id, String des,double price,String image,int stock)
+        //a record in databse looks like ('0001', '40 inch TV', 269.00,'0001TV.jpg',100)"
+        asyncDatabaseRW.insertNewProduct(newProId,description,price,imageNameWithExtension,stock)
+                .whenComplete((done, error) -> Platform.runLater(() -> {
+                    if (error != null) {
+                        showDatabaseError("Failed to add product " + newProId, error);
+                        return;
+                    }
+                    theNewProId = newProId;
+                    updateView(UpdateForAction.BtnSummitNew);
+                    theNewProId = null;
+                }));
+    }
+
+    // Logs a failed background operation and tells the user in the alertSimulator
+    private void showDatabaseError(String message, Throwable error) {
+        Log.error(message, error);
+        displayInputErrorMsg = "\u2022 " + message + ", please try again.";
+        updateView(UpdateForAction.ShowInputErrorMsg);
     }
 
     private  boolean validateInputEditChild(String txPrice, String txStock,
-                                         String description) throws SQLException {
+                                         String description) {
 
         StringBuilder errorMessage = new StringBuilder();
 
@@ -289,16 +349,16 @@ public class WarehouseModel {
         return true;
     }
 
-    private  boolean validateInputNewProChild(String id, String txPrice, String txStock,
-                                   String description, String imageUri) throws SQLException {
+    private  boolean validateInputNewProChild(String id, boolean idAvailable, String txPrice, String txStock,
+                                   String description, String imageUri) {
 
         StringBuilder errorMessage = new StringBuilder();
         // Validate Id (must be exactly 4 digits)
         if (id == null || !id.matches("\\d{4}"))
             errorMessage.append("\u2022 Product ID must be exactly 4 digits.\n");
 
-        //check Id is unique
-        if(!databaseRW.isProIdAvailable(id))
+        //check Id is unique, idAvailable comes from asyncDatabaseRW.isProIdAvailable()
+        if(!idAvailable)
             errorMessage.append("\u2022 Product ID " + id + " is not available.\n");
 
         // Validate Price (must be a positive number, and two digitals )
@@ -0,0 +1,125 @@
+package ci553.happyshop.orderManagement;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * CoalescingOrderDispatcher sits between OrderHub and a UI observer such as OrderTracker or PickerModel,
+ * so a burst of orders causes a few re-renders instead of one per order.
+ *
+ * How it works:
+ * - It is subscribed to OrderHub in place of the observer and collects the events in a pending map,
+ *   one entry per order: a newer event of the same order replaces the pending one (keeping its old state).
+ * - The first event after a delivery schedules the next delivery, at most once per frame
+ *   (1 / framesPerSecond, 60 Hz by default). Events arriving until then only join the pending map.
+ * - The delivery runs on the uiExecutor (Platform::runLater for JavaFX observers), hands all pending
+ *   events to the observer in one call, so the observer renders once per frame at most.
+ * - While a delivery is waiting for the UI thread no other one is queued, so a busy UI thread
+ *   never builds up a backlog of re-renders.
+ *
+ * getEventsReceived() and getRenders() count the events that came in and the deliveries that went out.
+ *
+ * Example Usage:
+ *     orderHub.subscribe(new CoalescingOrderDispatcher(orderTracker, Platform::runLater));
+ */
+
+public class CoalescingOrderDispatcher implements OrderEventListener {
+
+    public static int framesPerSecond = 60; // change before creating dispatchers
+
+    // one timer thread for all dispatchers, it only hands deliveries to the uiExecutor
+    private static final ScheduledExecutorService pulse = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "OrderEvent-pulse");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final OrderEventListener target;
+    private final Executor uiExecutor;
+    private final long frameNanos;
+
+    private final Object lock = new Object();
+    private final LinkedHashMap<Integer, OrderEvent> pending = new LinkedHashMap<>(); // guarded by lock
+    private boolean deliveryScheduled = false; // guarded by lock
+    private long lastDeliveryNanos;            // guarded by lock
+
+    private final LongAdder eventsReceived = new LongAdder();
+    private final LongAdder renders = new LongAdder();
+
+    public CoalescingOrderDispatcher(OrderEventListener target, Executor uiExecutor) {
+        this(target, uiExecutor, TimeUnit.SECONDS.toNanos(1) / Math.max(1, framesPerSecond));
+    }
+
+    CoalescingOrderDispatcher(OrderEventListener target, Executor uiExecutor, long frameNanos) {
+        this.target = target;
+        this.uiExecutor = uiExecutor;
+        this.frameNanos = frameNanos;
+        this.lastDeliveryNanos = System.nanoTime() - frameNanos; // the first delivery need not wait
+    }
+
+    @Override
+    public void onOrderEvents(List<OrderEvent> events) {
+        eventsReceived.add(events.size());
+        if (events.isEmpty()) {
+            return;
+        }
+        long delayNanos;
+        synchronized (lock) {
+            for (OrderEvent event : events) {
+                merge(event);
+            }
+            if (deliveryScheduled) {
+                return; // the scheduled delivery will take these events too
+            }
+            deliveryScheduled = true;
+            delayNanos = Math.max(0, lastDeliveryNanos + frameNanos - System.nanoTime());
+        }
+        pulse.schedule(() -> uiExecutor.execute(this::deliver), delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    // Keeps one event per order: the newest state and version, with the old state of the first pending event.
+    // An event older than the pending one adds nothing and is dropped. Caller holds the lock.
+    private void merge(OrderEvent event) {
+        OrderEvent previous = pending.get(event.orderId());
+        if (previous == null) {
+            pending.put(event.orderId(), event);
+        } else if (event.version() > previous.version()) {
+            pending.put(event.orderId(),
+                    new OrderEvent(event.orderId(), previous.oldState(), event.newState(), event.version()));
+        }
+    }
+
+    // Runs on the uiExecutor
+    private void deliver() {
+        List<OrderEvent> batch;
+        synchronized (lock) {
+            batch = new ArrayList<>(pending.values());
+            pending.clear();
+            deliveryScheduled = false;
+            lastDeliveryNanos = System.nanoTime();
+        }
+        if (!batch.isEmpty()) {
+            renders.increment();
+            target.onOrderEvents(batch);
+        }
+    }
+
+    public long getEventsReceived() {
+        return eventsReceived.sum();
+    }
+
+    public long getRenders() {
+        return renders.sum();
+    }
+
+    public String getStats() {
+        return String.format("CoalescingOrderDispatcher[target=%s, eventsReceived=%d, renders=%d]",
+                target.getClass().getSimpleName(), getEventsReceived(), getRenders());
+    }
+}
@@ -0,0 +1,224 @@
+package ci553.happyshop.orderManagement;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * DispatchEngine is the ReadyQueue for the AGE, SIZE and EXPRESS dispatch policies.
+ *
+ * The waiting orders are kept in an indexed binary min-heap: an array ordered by the policy, plus each
+ * entry's position in that array (found through a HashMap by order ID). So:
+ * - poll() takes the best order from the top in O(log n),
+ * - remove() and a change of priority find the entry directly and sift it up or down in O(log n),
+ *   instead of rebuilding or scanning the queue.
+ *
+ * Priorities change as orders age: each order has a service level deadline,
+ * OrderedDateTime + expressSlaMillis (express) or + standardSlaMillis (standard).
+ * The deadlines are kept in a TimingWheel; refresh(), called on every hub tick, marks the orders whose deadline
+ * has passed as overdue and sifts each of them up. Overdue orders come before all others, earliest deadline first.
+ *
+ * One ReentrantLock guards the heap. Each operation holds it for O(log n) steps.
+ */
+
+public class DispatchEngine implements ReadyQueue {
+
+    // service levels, change before the OrderHub is created
+    public static long expressSlaMillis = 10 * 60_000;
+    public static long standardSlaMillis = 30 * 60_000;
+
+    // One waiting order and its place in the heap
+    private static final class Entry {
+        final ReadyOrder order;
+        final long deadline;
+        boolean overdue;
+        int heapIndex;
+
+        Entry(ReadyOrder order, long deadline) {
+            this.order = order;
+            this.deadline = deadline;
+        }
+    }
+
+    private final DispatchPolicy policy;
+    private final long expressSla = expressSlaMillis;
+    private final long standardSla = standardSlaMillis;
+    private final Comparator<Entry> priority;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private Entry[] heap = new Entry[64];                            // guarded by lock
+    private int size = 0;                                            // guarded by lock
+    private final HashMap<Integer, Entry> entries = new HashMap<>(); // order ID -> entry, guarded by lock
+    private final TimingWheel deadlines;                             // orders that are not overdue yet
+
+    DispatchEngine(DispatchPolicy policy) {
+        this(policy, System.currentTimeMillis());
+    }
+
+    DispatchEngine(DispatchPolicy policy, long startMillis) {
+        this.policy = policy;
+        this.priority = overdueFirst().thenComparing(policyOrder(policy))
+                .thenComparingInt(entry -> entry.order.orderId());
+        this.deadlines = new TimingWheel(1000, 64, 3, startMillis);
+    }
+
+    // Overdue orders first, the most late of them first
+    private static Comparator<Entry> overdueFirst() {
+        return (a, b) -> {
+            if (a.overdue != b.overdue) {
+                return a.overdue ? -1 : 1;
+            }
+            return a.overdue ? Long.compare(a.deadline, b.deadline) : 0;
+        };
+    }
+
+    private static Comparator<Entry> policyOrder(DispatchPolicy policy) {
+        Comparator<Entry> oldestFirst = Comparator.comparingLong(entry -> entry.order.orderedTime());
+        switch (policy) {
+            case SIZE:
+                return Comparator.<Entry>comparingInt(entry -> entry.order.itemCount()).thenComparing(oldestFirst);
+            case EXPRESS:
+                return Comparator.<Entry, Boolean>comparing(entry -> !entry.order.express()).thenComparing(oldestFirst);
+            default:
+                return oldestFirst;
+        }
+    }
+
+    public DispatchPolicy getPolicy() {
+        return policy;
+    }
+
+    public void offer(ReadyOrder order) {
+        offer(order, System.currentTimeMillis());
+    }
+
+    void offer(ReadyOrder order, long nowMillis) {
+        lock.lock();
+        try {
+            if (entries.containsKey(order.orderId())) {
+                return;
+            }
+            Entry entry = new Entry(order, order.orderedTime() + (order.express() ? expressSla : standardSla));
+            entry.overdue = entry.deadline <= nowMillis;
+            if (!entry.overdue) {
+                deadlines.add(order.orderId(), entry.deadline);
+            }
+            entries.put(order.orderId(), entry);
+            if (size == heap.length) {
+                heap = Arrays.copyOf(heap, size * 2);
+            }
+            entry.heapIndex = size;
+            heap[size++] = entry;
+            siftUp(entry.heapIndex);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public ReadyOrder poll() {
+        lock.lock();
+        try {
+            if (size == 0) {
+                return null;
+            }
+            Entry top = heap[0];
+            removeAt(0);
+            entries.remove(top.order.orderId());
+            return top.order;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void remove(int orderId) {
+        lock.lock();
+        try {
+            Entry entry = entries.remove(orderId);
+            if (entry != null) {
+                removeAt(entry.heapIndex);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Marks the orders whose deadline has passed as overdue, each one moves up in O(log n)
+    @Override
+    public void refresh(long nowMillis) {
+        lock.lock();
+        try {
+            for (int orderId : deadlines.advance(nowMillis)) {
+                Entry entry = entries.get(orderId);
+                if (entry != null && !entry.overdue && entry.deadline <= nowMillis) {
+                    entry.overdue = true;
+                    siftUp(entry.heapIndex); // a higher priority only moves up
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Caller holds the lock
+    private void removeAt(int index) {
+        size--;
+        Entry last = heap[size];
+        heap[size] = null;
+        if (index == size) {
+            return;
+        }
+        heap[index] = last;
+        last.heapIndex = index;
+        siftDown(index);
+        if (heap[index] == last) {
+            siftUp(index);
+        }
+    }
+
+    // Caller holds the lock
+    private void siftUp(int index) {
+        Entry entry = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (priority.compare(entry, heap[parent]) >= 0) {
+                break;
+            }
+            heap[index] = heap[parent];
+            heap[index].heapIndex = index;
+            index = parent;
+        }
+        heap[index] = entry;
+        entry.heapIndex = index;
+    }
+
+    // Caller holds the lock
+    private void siftDown(int index) {
+        Entry entry = heap[index];
+        int half = size >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            int right = child + 1;
+            if (right < size && priority.compare(heap[right], heap[child]) < 0) {
+                child = right;
+            }
+            if (priority.compare(entry, heap[child]) <= 0) {
+                break;
+            }
+            heap[index] = heap[child];
+            heap[index].heapIndex = index;
+            index = child;
+        }
+        heap[index] = entry;
+        entry.heapIndex = index;
+    }
+}
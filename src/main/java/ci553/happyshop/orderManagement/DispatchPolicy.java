@@ -0,0 +1,22 @@
+package ci553.happyshop.orderManagement;
+
+/**
+ * The order in which OrderHub hands out waiting orders to pickers (OrderHub.dispatchPolicy).
+ *
+ * - FIFO:    lowest order ID first, from a lock-free queue; the default.
+ * - AGE:     oldest OrderedDateTime first.
+ * - SIZE:    fewest items first, so small orders leave quickly; ties go to the oldest.
+ * - EXPRESS: express orders first, then the oldest.
+ *
+ * AGE, SIZE and EXPRESS use a DispatchEngine. With these three policies, an order that has waited longer than
+ * its service level (DispatchEngine.expressSlaMillis or standardSlaMillis) becomes overdue and is picked before
+ * all orders that are not, so a big or standard order cannot wait forever. FIFO has no service level: it always
+ * hands out the lowest order ID waiting.
+ *
+ * Orders loaded at startup are ranked by the ordered time their OrderStore saved. Their item count and express
+ * flag are not in the stores' indexes, so after a restart they rank as standard orders of unknown size.
+ */
+
+public enum DispatchPolicy {
+    FIFO, AGE, SIZE, EXPRESS
+}
@@ -0,0 +1,30 @@
+package ci553.happyshop.orderManagement;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * The default ReadyQueue: orders sorted by ID, so the oldest comes first.
+ * poll() is one atomic pollFirstEntry() on a ConcurrentSkipListMap, so pickers claim in parallel without a lock.
+ */
+
+class FifoReadyQueue implements ReadyQueue {
+    private final ConcurrentSkipListMap<Integer, ReadyOrder> orders = new ConcurrentSkipListMap<>();
+
+    public void offer(ReadyOrder order) {
+        orders.putIfAbsent(order.orderId(), order);
+    }
+
+    public ReadyOrder poll() {
+        Map.Entry<Integer, ReadyOrder> first = orders.pollFirstEntry();
+        return first == null ? null : first.getValue();
+    }
+
+    public void remove(int orderId) {
+        orders.remove(orderId);
+    }
+
+    public int size() {
+        return orders.size();
+    }
+}
@@ -0,0 +1,11 @@
+package ci553.happyshop.orderManagement;
+
+/**
+ * A picker's claim on an order, returned by OrderHub.claimNextOrder().
+ *
+ * The claim holds a lease: if the order is not collected (or the lease renewed) within
+ * OrderHub.pickLeaseMillis, the hub gives the order back to the ready queue and the claim is no longer valid.
+ * leaseId tells this claim apart from a later claim of the same order by another picker.
+ */
+
+public record OrderClaim(int orderId, long leaseId) {}
@@ -0,0 +1,22 @@
+package ci553.happyshop.orderManagement;
+
+/**
+ * OrderEvent describes one change of one order, published by OrderHub to its OrderEventListeners.
+ *
+ * - A new order (or an order in a subscription snapshot) has oldState == null.
+ * - A removed order (collected and no longer tracked) has newState == null.
+ * - version is taken from one counter in OrderHub and increases with every change. Changes of the same order
+ *   always get increasing versions, so an observer can ignore an event older than what it already shows,
+ *   whatever thread delivered it.
+ */
+
+public record OrderEvent(int orderId, OrderState oldState, OrderState newState, long version) {
+
+    public boolean isNewOrder() {
+        return oldState == null;
+    }
+
+    public boolean isRemoval() {
+        return newState == null;
+    }
+}
@@ -0,0 +1,17 @@
+package ci553.happyshop.orderManagement;
+
+import java.util.List;
+
+/**
+ * An observer of order changes, subscribed with OrderHub.subscribe().
+ *
+ * The first call after subscribing carries a snapshot: one event with oldState == null for every order
+ * the hub holds at that moment. Every later call carries only the changed orders (deltas).
+ * Calls can come from any thread (a customer, a picker or the hub's scheduler), and a delta may overtake
+ * the snapshot, so an observer should compare versions, e.g. by applying the events to an OrderMapReplica.
+ */
+
+@FunctionalInterface
+public interface OrderEventListener {
+    void onOrderEvents(List<OrderEvent> events);
+}
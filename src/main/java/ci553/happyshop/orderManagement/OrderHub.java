@@ -2,25 +2,30 @@ package ci553.happyshop.orderManagement;
 
 import ci553.happyshop.catalogue.Order;
 import ci553.happyshop.catalogue.Product;
-import ci553.happyshop.client.orderTracker.OrderTracker;
-import ci553.happyshop.client.picker.PickerModel;
-import ci553.happyshop.storageAccess.OrderFileManager;
-import ci553.happyshop.utility.StorageLocation;
+import ci553.happyshop.storageAccess.OrderStore;
+import ci553.happyshop.storageAccess.OrderStoreFactory;
+import ci553.happyshop.utility.Log;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.sql.SQLException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Stream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * <p>{@code OrderHub} serves as the heart of the ordering system.
@@ -30,214 +35,532 @@ import java.util.stream.Stream;
  * <p> It is the central coordinator responsible for managing all orders. It handles:
  *   Creating and tracking orders
  *   Maintaining and updating the internal order map, <OrderId, OrderState>
- *   Delegating file-related operations (e.g., updating state and moving files) to OrderFileManager class
+ *   Delegating storage operations (e.g., saving orders and their state changes) to the OrderStore
+ *   chosen by OrderStoreFactory (order files in folders, or the order journal)
  *   Loading orders in the "ordered" and "progressing" states from storage during system startup
  *
- * <p> OrderHub also follows the Observer pattern: it notifies registered observers such as OrderTracker
- * and PickerModel whenever the order data changes, keeping the UI and business logic in sync.</p>
+ * <p> OrderHub also follows the Observer pattern: observers such as OrderTracker and PickerModel subscribe
+ * as OrderEventListeners. A new subscriber first receives a snapshot of all orders, and after that one
+ * OrderEvent (order ID, old state, new state, version) per change, so a change costs one small event per
+ * observer instead of a copy of the whole orderMap.</p>
  *
  * <p>As the heart of the ordering system, OrderHub connects customers, pickers, and tracker,
  * managementing logic into a unified workflow.</p>
+ *
+ * <p>Thread safety: customer, picker and scheduler threads all use the hub at the same time,
+ * without a global lock.
+ *   The orderMap is a ConcurrentSkipListMap, so reads never see a half-done update and stay sorted by ID.
+ *   Only Ordered -> Progressing -> Collected is allowed. A change claims the order in a concurrent set,
+ *   saves it, and publishes it with orderMap.replace(id, expectedStatus, newStatus). When two pickers change
+ *   the same order at once, exactly one wins; only the winner saves the change and publishes the event.
+ *   Listeners are kept in a CopyOnWriteArrayList.
+ *   Orders waiting for a picker are kept in a ReadyQueue chosen by dispatchPolicy: by default sorted by ID
+ *   (oldest first), where claimNextOrder() takes the oldest one with a single atomic pollFirst(), or a
+ *   DispatchEngine ranking them by age, size or express flag. Pickers never scan or lock the orderMap,
+ *   and each order goes to exactly one picker. The time each order waited is recorded (getPickWaitStats()).
+ *   An OrderQueryService (getQueryService()) keeps indexes by state, time and product, updated with
+ *   every new order and state change, to search orders without reading their files. At startup it is
+ *   filled from the OrderStore with the uncollected orders and those collected within queryRetentionMillis;
+ *   the products of those orders are read from the store the first time a query asks for a product.
+ *   The singleton is created by a holder class, which the JVM initializes once and publishes safely.</p>
  */
 
-public class OrderHub  {
-    private static OrderHub orderHub; //singleton instance
+public class OrderHub implements AutoCloseable {
+
+    // Read from system properties (e.g. -Dhappyshop.pickLeaseMillis=600000) when the class is loaded;
+    // tests may change them before creating a hub, a hub keeps the values it was created with.
+
+    // How long collected orders stay on the trackers, and how often they are swept
+    public static long collectedRetentionMillis = readMillisProperty("happyshop.collectedRetentionMillis", 10_000);
+    public static long expiryTickMillis = readMillisProperty("happyshop.expiryTickMillis", 100);
+    // How long a picker may hold a claimed order before it goes back to the ready queue
+    public static long pickLeaseMillis = readMillisProperty("happyshop.pickLeaseMillis", 15 * 60_000);
+    // The order in which pickers get waiting orders, e.g. -Dhappyshop.dispatch=express
+    public static DispatchPolicy dispatchPolicy = readDispatchPolicyProperty();
+    // How long collected orders stay searchable through the query service
+    public static long queryRetentionMillis = readMillisProperty("happyshop.queryRetentionMillis", 7 * 24 * 60 * 60_000L);
+
+    // The state of an order and the version of the event that set it
+    private record OrderStatus(OrderState state, long version) {}
 
-    private final Path orderedPath = StorageLocation.orderedPath;
-    private final Path progressingPath = StorageLocation.progressingPath;
-    private final Path collectedPath = StorageLocation.collectedPath;
+    // A picker's hold on a Progressing order
+    private record Lease(long leaseId, long expiresAt) {}
 
-    private TreeMap<Integer,OrderState> orderMap = new TreeMap<>();
-    private TreeMap<Integer,OrderState> OrderedOrderMap = new TreeMap<>();
-    private TreeMap<Integer,OrderState> progressingOrderMap = new TreeMap<>();
+    private final OrderStore orderStore;
+    private final OrderIdAllocator idAllocator; // null: OrderCounter generates the IDs
+
+    private final ConcurrentSkipListMap<Integer,OrderStatus> orderMap = new ConcurrentSkipListMap<>();
+    private final Set<Integer> ordersInTransition = ConcurrentHashMap.newKeySet(); // orders whose change is being saved
+    private final AtomicLong version = new AtomicLong(); // the version of the latest event
+
+    private final ReadyQueue readyQueue = ReadyQueue.create(dispatchPolicy); // Ordered orders waiting for a picker
+    private final ConcurrentHashMap<Integer, ReadyOrder> dispatchInfo = new ConcurrentHashMap<>(); // ranking data of uncollected orders
+    private final WaitTimeHistogram pickWaitTimes = new WaitTimeHistogram(); // time from ready to claimed
+    private final ConcurrentHashMap<Integer, Lease> leases = new ConcurrentHashMap<>();     // claimed orders
+    private final AtomicLong leaseIds = new AtomicLong();
 
     /**
-     * Two Lists to hold all registered OrderTracker and PickerModel observers.
-     * These observers are notified whenever the orderMap is updated,
-     * but each observer is only notified of the parts of the orderMap that are relevant to them.
-     * - OrderTrackers will be notified of the full orderMap, including all orders (ordered, progressing, collected),
-     *   but collected orders are shown for a limited time (10 seconds).
-     * - PickerModels will be notified only of orders in the "ordered" or "progressing" states, filtering out collected orders.
+     * The subscribed observers, e.g. OrderTrackers and PickerModels.
+     * Each observer receives every event and picks what is relevant to it:
+     * - OrderTrackers show all orders (ordered, progressing, collected),
+     *   but collected orders are removed after a limited time (collectedRetentionMillis).
+     * - PickerModels only show orders in the "ordered" or "progressing" states.
+     * Subscribing is rare and publishing is frequent, so a copy-on-write list is iterated without locking.
      */
-    private ArrayList<OrderTracker> orderTrackerList = new ArrayList<>();
-    private ArrayList<PickerModel> pickerModelList = new ArrayList<>();
+    private final List<OrderEventListener> listeners = new CopyOnWriteArrayList<>();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "OrderHub-scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
 
-    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+    // collected orders waiting for removal and claims waiting to expire, swept once per tick by the scheduler
+    private final long retentionMillis = collectedRetentionMillis;
+    private final long leaseMillis = pickLeaseMillis;
+    private final long queryRetention = queryRetentionMillis;
+
+    private final OrderQueryService queries; // secondary indexes for searching orders
+    private final TimingWheel collectedExpiry = new TimingWheel(expiryTickMillis, 64, 3, System.currentTimeMillis());
+    private final TimingWheel leaseExpiry = new TimingWheel(expiryTickMillis, 64, 3, System.currentTimeMillis());
+
+    //Singleton pattern, the holder class is only initialized by the first getOrderHub() call
+    private static class Holder {
+        private static final OrderHub INSTANCE = new OrderHub(OrderStoreFactory.getOrderStore(), null);
+    }
+
+    OrderHub(OrderStore orderStore, OrderIdAllocator idAllocator) {
+        this.orderStore = orderStore;
+        this.idAllocator = idAllocator;
+        this.queries = new OrderQueryService(orderStore::readProductIds);
+        scheduler.scheduleAtFixedRate(() -> {
+            try {
+                removeExpiredCollectedOrders();
+                returnExpiredClaims();
+                readyQueue.refresh(System.currentTimeMillis());
+                queries.removeCollectedBefore(System.currentTimeMillis() - queryRetention);
+            } catch (RuntimeException e) {
+                Log.error("Failed to sweep expired orders", e); // keep ticking, a thrown exception would stop the task
+            }
+        }, expiryTickMillis, expiryTickMillis, TimeUnit.MILLISECONDS);
+    }
 
-    //Singleton pattern
-    private OrderHub() {}
     public static OrderHub getOrderHub() {
-        if (orderHub == null)
-            orderHub = new OrderHub();
-            return orderHub;
+        return Holder.INSTANCE;
+    }
+
+    // Stops the scheduler, so no more sweeps run against the order store; the store itself is closed by its owner
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    private static DispatchPolicy readDispatchPolicyProperty() {
+        String value = System.getProperty("happyshop.dispatch", "FIFO");
+        try {
+            return DispatchPolicy.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            Log.warn(() -> "Unknown dispatch policy " + value + ", using FIFO");
+            return DispatchPolicy.FIFO;
+        }
+    }
+
+    // A positive number of milliseconds from a system property, or the default if it is missing or not valid
+    private static long readMillisProperty(String name, long defaultMillis) {
+        String value = System.getProperty(name);
+        if (value == null) {
+            return defaultMillis;
+        }
+        try {
+            long millis = Long.parseLong(value.trim());
+            if (millis > 0) {
+                return millis;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        Log.warn(() -> "Invalid " + name + " " + value + ", using " + defaultMillis);
+        return defaultMillis;
     }
 
     //Creates a new order using the provided list of products.
     //and also notify picker and orderTracker
     public Order newOrder(ArrayList<Product> trolley) throws IOException, SQLException {
-        int orderId = OrderCounter.generateOrderId(); //get unique orderId
+        return newOrder(trolley, false);
+    }
+
+    // Creates a new order, an express order may be picked first (see DispatchPolicy)
+    public Order newOrder(ArrayList<Product> trolley, boolean express) throws IOException, SQLException {
+        int orderId = idAllocator != null ? idAllocator.nextId() : OrderCounter.generateOrderId(); //get unique orderId
         String orderedDateTime = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
         //make an Order Object: id, Ordered_state, orderedDateTime, and productsList(trolley)
         Order theOrder = new Order(orderId,OrderState.Ordered,orderedDateTime,trolley);
+        theOrder.setExpress(express);
+
+        //save order details in the order store (eg. orders/ordered/12.txt, or a journal record)
+        orderStore.createOrder(theOrder);
 
-        //write order details to file for the orderId in orderedPath (ie. orders/ordered)
-        String orderDetail = theOrder.orderDetails();
-        Path path = orderedPath;
-        OrderFileManager.createOrderFile(path, orderId, orderDetail);
+        // indexed for queries before a picker can see it, so a state change always finds the order's summary
+        long now = System.currentTimeMillis();
+        List<String> productIds = new ArrayList<>();
+        for (Product product : trolley) {
+            productIds.add(product.getProductId());
+        }
+        queries.orderCreated(orderId, now, productIds);
+
+        //add the order to orderMap, state is Ordered initially, and notify observers
+        long newVersion = version.incrementAndGet();
+        orderMap.put(orderId, new OrderStatus(theOrder.getState(), newVersion));
+        ReadyOrder ready = new ReadyOrder(orderId, now, theOrder.getItemCount(), express, now);
+        dispatchInfo.put(orderId, ready);
+        readyQueue.offer(ready); // ready for a picker
+        publish(List.of(new OrderEvent(orderId, null, theOrder.getState(), newVersion)));
 
-        orderMap.put(orderId, theOrder.getState()); //add the order to orderMap,state is Ordered initially
-        notifyOrderTrackers(); //notify OrderTrackers
-        notifyPickerModels();//notify pickers
-        
         return theOrder;
     }
 
-    //Registers an OrderTracker to receive updates about changes.
-    public void registerOrderTracker(OrderTracker orderTracker){
-        orderTrackerList.add(orderTracker);
+    /**
+     * Subscribes an observer. It first receives a snapshot (one event per order the hub holds,
+     * with oldState == null, even if there are none), then one event per change.
+     * The listener is added before the snapshot is taken, so no change is missed; a change made while
+     * the snapshot is taken may arrive twice or before the snapshot, and is sorted out by its version.
+     */
+    public void subscribe(OrderEventListener listener) {
+        listeners.add(listener);
+        List<OrderEvent> snapshot = new ArrayList<>();
+        for (Map.Entry<Integer, OrderStatus> entry : orderMap.entrySet()) {
+            OrderStatus status = entry.getValue();
+            snapshot.add(new OrderEvent(entry.getKey(), null, status.state(), status.version()));
+        }
+        deliver(listener, snapshot);
     }
-     //Notifies all registered observer_OrderTrackers to update and display the latest orderMap.
-    public void notifyOrderTrackers(){
-        for(OrderTracker orderTracker : orderTrackerList){
-            orderTracker.setOrderMap(orderMap);
+
+    public void unsubscribe(OrderEventListener listener) {
+        listeners.remove(listener);
+    }
+
+    // Delivers events to every listener, O(listeners) per change
+    private void publish(List<OrderEvent> events) {
+        for (OrderEventListener listener : listeners) {
+            deliver(listener, events);
         }
     }
 
-    //Registers a PickerModel to receive updates about changes.
-    public void registerPickerModel(PickerModel pickerModel){
-        pickerModelList.add(pickerModel);
+    // A failing observer must not stop the others or undo a saved change
+    private static void deliver(OrderEventListener listener, List<OrderEvent> events) {
+        try {
+            listener.onOrderEvents(events);
+        } catch (RuntimeException e) {
+            Log.error("Order event listener failed: " + listener, e);
+        }
     }
 
-    //notify all pickers to show orderMap (only ordered and progressing states orders)
-    public void notifyPickerModels(){
-        TreeMap<Integer,OrderState> orderMapForPicker = new TreeMap<>();
-        progressingOrderMap = filterOrdersByState(OrderState.Progressing);
-        OrderedOrderMap = filterOrdersByState(OrderState.Ordered);
-        orderMapForPicker.putAll(progressingOrderMap);
-        orderMapForPicker.putAll(OrderedOrderMap);
-        for(PickerModel pickerModel : pickerModelList){
-            pickerModel.setOrderMap(orderMapForPicker);
+    // The state an order must be in before it can change to newState, null if no change leads to it
+    static OrderState previousState(OrderState newState) {
+        switch (newState) {
+            case Progressing: return OrderState.Ordered;
+            case Collected: return OrderState.Progressing;
+            default: return null;
         }
     }
 
-    // Filters orderMap that match the specified state, a helper class used by notifyPickerModel()
-    private TreeMap<Integer, OrderState> filterOrdersByState(OrderState state) {
-        TreeMap<Integer, OrderState> filteredOrderMap = new TreeMap<>(); // New map to hold filtered orders
-        // Loop through the orderMap and add matching orders to filteredOrders
-        for (Map.Entry<Integer, OrderState> entry : orderMap.entrySet()) {
-            if (entry.getValue() == state) {
-                filteredOrderMap.put(entry.getKey(), entry.getValue());
+    /**
+     * Changes the state of the specified order and saves the change in the order store
+     * (the folder store updates the file and moves it to the appropriate folder).
+     * Triggered by PickerModel.
+     *
+     * Only the state before newState can change to it (Ordered before Progressing, Progressing before Collected).
+     * The order is first claimed in ordersInTransition, so one change per order is saved at a time and
+     * the store sees the changes in the same order as the orderMap. The new state is saved and then
+     * published with a compare-and-set; other threads see either the old or the saved new state.
+     *
+     * @return true if this call changed the state, false if the order was not in the expected state,
+     *         another thread was changing it at the same time, or the store could not find the order
+     */
+    public boolean changeOrderStateMoveFile(int orderId, OrderState newState) throws IOException {
+        return transition(orderId, previousState(newState), newState);
+    }
+
+    // Changes an order from expectedState to newState, see changeOrderStateMoveFile()
+    private boolean transition(int orderId, OrderState expectedState, OrderState newState) throws IOException {
+        if (expectedState == null || getOrderState(orderId) != expectedState) {
+            return false;
+        }
+        if (!ordersInTransition.add(orderId)) {
+            return false; // another thread is changing this order
+        }
+        try {
+            OrderStatus current = orderMap.get(orderId);
+            if (current == null || current.state() != expectedState) {
+                return false; // changed between the first check and the claim
+            }
+            //save the new state in the order store; nothing is published if the store could not save it
+            if (!orderStore.changeOrderState(orderId, newState)) {
+                Log.warn(() -> "Order store could not change order " + orderId + " to " + newState);
+                return false;
             }
+            if (newState == OrderState.Ordered) {
+                // given back by a picker; queued before the state shows, so an order seen as Ordered can be claimed.
+                // A picker that takes it in between finds it busy and puts it back.
+                readyQueue.offer(readyOrder(orderId).requeued(System.currentTimeMillis()));
+            }
+            long newVersion = version.incrementAndGet();
+            orderMap.replace(orderId, current, new OrderStatus(newState, newVersion)); // cannot fail, the claim keeps other changes out
+            queries.stateChanged(orderId, newState, System.currentTimeMillis());
+            if (newState != OrderState.Ordered) {
+                readyQueue.remove(orderId); // already gone if it was claimed with claimNextOrder()
+            }
+            // published while the order is claimed, so the events of one order leave the hub in order
+            publish(List.of(new OrderEvent(orderId, expectedState, newState, newVersion)));
+        } finally {
+            ordersInTransition.remove(orderId);
+        }
+        if (newState == OrderState.Collected) {
+            leases.remove(orderId);
+            dispatchInfo.remove(orderId);
+            removeCollectedOrder(orderId); //Scheduled removal
         }
-        return filteredOrderMap;
-    }
-
-    //Changes the state of the specified order, updates its file, and moves it to the appropriate folder.
-    //trigger by PickerModel
-    public void changeOrderStateMoveFile(int orderId, OrderState newState) throws IOException {
-        if(orderMap.containsKey(orderId) && !orderMap.get(orderId).equals(newState))
-        {
-            //change orderState in OrderMap, notify OrderTrackers and pickers
-            orderMap.put(orderId, newState);
-            notifyOrderTrackers();
-            notifyPickerModels();
-
-            //change orderState in order file and move the file to new state folder
-            switch(newState){
-                case OrderState.Progressing:
-                    OrderFileManager.updateAndMoveOrderFile(orderId, newState,orderedPath,progressingPath);
-                    break;
-                case OrderState.Collected:
-                    OrderFileManager.updateAndMoveOrderFile(orderId, newState,progressingPath,collectedPath);
-                    removeCollectedOrder(orderId); //Scheduled removal
-                    break;
+        return true;
+    }
+
+    /**
+     * Claims the next Ordered order for a picker (the oldest, or as ranked by dispatchPolicy)
+     * and changes it to Progressing. The order is taken from the ready queue in one atomic step,
+     * so two pickers never get the same order. The time it waited in the queue is recorded.
+     * The claim holds a lease of pickLeaseMillis; see completeOrder(), renewLease() and releaseOrder().
+     *
+     * @return the claim, or null if no order is waiting
+     */
+    public OrderClaim claimNextOrder() throws IOException {
+        List<ReadyOrder> busy = new ArrayList<>();
+        try {
+            ReadyOrder ready;
+            while ((ready = readyQueue.poll()) != null) {
+                int orderId = ready.orderId();
+                Lease lease = new Lease(leaseIds.incrementAndGet(), System.currentTimeMillis() + leaseMillis);
+                leases.put(orderId, lease); // before the state change, so the new claim is valid as soon as it is seen
+                boolean claimed;
+                try {
+                    claimed = transition(orderId, OrderState.Ordered, OrderState.Progressing);
+                } catch (IOException | RuntimeException e) {
+                    leases.remove(orderId, lease);
+                    readyQueue.offer(ready);
+                    throw e;
+                }
+                if (claimed) {
+                    leaseExpiry.add(orderId, lease.expiresAt());
+                    pickWaitTimes.record(System.currentTimeMillis() - ready.readySince());
+                    return new OrderClaim(orderId, lease.leaseId());
+                }
+                leases.remove(orderId, lease);
+                if (getOrderState(orderId) == OrderState.Ordered || ordersInTransition.contains(orderId)) {
+                    busy.add(ready); // another thread was changing it, keep it for later
+                }
+            }
+            return null;
+        } finally {
+            for (ReadyOrder waiting : busy) {
+                readyQueue.offer(waiting);
+            }
+        }
+    }
+
+    // The ranking data of an order; an order whose ordered time is unknown (0) ranks as the oldest
+    private ReadyOrder readyOrder(int orderId) {
+        return dispatchInfo.computeIfAbsent(orderId,
+                id -> new ReadyOrder(id, 0, 0, false, System.currentTimeMillis()));
+    }
+
+    // Searches orders by state, time and product, eg. getQueryService().stream(OrderQuery.all().containing("0007"), 50)
+    public OrderQueryService getQueryService() {
+        return queries;
+    }
+
+    // e.g. "count=1000, p50=12 ms, p99=840 ms, max=1200 ms": how long orders waited before a picker claimed them
+    public String getPickWaitStats() {
+        return pickWaitTimes.getStats();
+    }
+
+    WaitTimeHistogram getPickWaitTimes() {
+        return pickWaitTimes;
+    }
+
+    /**
+     * Completes a claimed order: Progressing -> Collected.
+     * @return false if the lease has expired (the order went back to the queue) or the order was not Progressing
+     */
+    public boolean completeOrder(OrderClaim claim) throws IOException {
+        if (!holdsLease(claim)) {
+            return false;
+        }
+        return transition(claim.orderId(), OrderState.Progressing, OrderState.Collected);
+    }
+
+    // Extends the lease of a claim by another pickLeaseMillis, false if it has already expired
+    public boolean renewLease(OrderClaim claim) {
+        Lease lease = leases.get(claim.orderId());
+        if (lease == null || lease.leaseId() != claim.leaseId()) {
+            return false;
+        }
+        Lease renewed = new Lease(lease.leaseId(), System.currentTimeMillis() + leaseMillis);
+        if (!leases.replace(claim.orderId(), lease, renewed)) {
+            return false;
+        }
+        leaseExpiry.add(claim.orderId(), renewed.expiresAt()); // the old wheel entry finds the newer lease and is ignored
+        return true;
+    }
+
+    // Gives a claimed order back to the ready queue: Progressing -> Ordered
+    public boolean releaseOrder(OrderClaim claim) throws IOException {
+        Lease lease = leases.get(claim.orderId());
+        if (lease == null || lease.leaseId() != claim.leaseId() || !leases.remove(claim.orderId(), lease)) {
+            return false;
+        }
+        boolean released = false;
+        try {
+            released = transition(claim.orderId(), OrderState.Progressing, OrderState.Ordered);
+            return released;
+        } finally {
+            if (!released) {
+                leases.putIfAbsent(claim.orderId(), lease); // still Progressing, keep the claim
+            }
+        }
+    }
+
+    private boolean holdsLease(OrderClaim claim) {
+        Lease lease = leases.get(claim.orderId());
+        return lease != null && lease.leaseId() == claim.leaseId();
+    }
+
+    // Runs once per tick on the scheduler: gives orders whose lease has expired back to the ready queue
+    void returnExpiredClaims() {
+        long now = System.currentTimeMillis();
+        for (int orderId : leaseExpiry.advance(now)) {
+            Lease lease = leases.get(orderId);
+            if (lease == null || lease.expiresAt() > now || !leases.remove(orderId, lease)) {
+                continue; // completed, released or renewed
+            }
+            boolean returned = false;
+            try {
+                returned = transition(orderId, OrderState.Progressing, OrderState.Ordered);
+                if (returned) {
+                    Log.info(() -> "Claim on order " + orderId + " expired, the order is back in the queue.");
+                }
+            } catch (IOException e) {
+                Log.error("Failed to return order " + orderId + " to the queue, retrying after the next lease period", e);
+            }
+            if (!returned && getOrderState(orderId) == OrderState.Progressing) {
+                // not saved, eg. the store could not find it: keep it claimed and try again after the next lease period
+                Lease retry = new Lease(lease.leaseId(), now + leaseMillis);
+                leases.put(orderId, retry);
+                leaseExpiry.add(orderId, retry.expiresAt());
             }
         }
     }
 
     /**
-     * Removes collected orders from the system after they have been collected for 10 seconds.
+     * Removes collected orders from the system after they have been collected for a while
+     * (collectedRetentionMillis, 10 seconds by default).
      *
      * This ensures that collected orders are cleared from the active order pool and are no longer displayed
      * by the OrderTracker after the brief period. This keeps the system focused on orders in the
      * "ordered" and "progressing" states.
-     * The 10-second delay gives enough time for any final updates, and providing a short window for review of completed orders.
+     * The delay gives enough time for any final updates, and providing a short window for review of completed orders.
+     *
+     * The order is only added to a timing wheel here; removeExpiredCollectedOrders() removes it later.
      */
     private void removeCollectedOrder(int orderId) {
-        if (orderMap.containsKey(orderId)) {
-            // Schedule removal after a few seconds
-            scheduler.schedule(() -> {
-                orderMap.remove(orderId); //remove collected order
-                System.out.println("Order " + orderId + " removed from tracker and OrdersMap.");
-                notifyOrderTrackers();
-            }, 10, TimeUnit.SECONDS );
+        collectedExpiry.add(orderId, System.currentTimeMillis() + retentionMillis);
+    }
+
+    // Runs once per tick on the scheduler: removes every collected order whose retention has passed,
+    // and notifies the observers once for all of them
+    void removeExpiredCollectedOrders() {
+        List<Integer> expired = collectedExpiry.advance(System.currentTimeMillis());
+        if (expired.isEmpty()) {
+            return;
+        }
+        List<OrderEvent> events = new ArrayList<>(expired.size());
+        for (int orderId : expired) {
+            OrderStatus current = orderMap.get(orderId);
+            if (current != null && current.state() == OrderState.Collected
+                    && orderMap.remove(orderId, current)) { //remove collected order
+                events.add(new OrderEvent(orderId, OrderState.Collected, null, version.incrementAndGet()));
+            }
         }
+        Log.debug(() -> events.size() + " collected orders removed from tracker and OrdersMap.");
+        publish(events);
     }
 
     // Reads details of an order for display in the picker once they started preparing the order.
     public String  getOrderDetailForPicker(int orderId) throws IOException {
-        OrderState state = orderMap.get(orderId);
-        if(state.equals(OrderState.Progressing)) {
-            return OrderFileManager.readOrderFile(progressingPath,orderId);
+        if(getOrderState(orderId) == OrderState.Progressing) {
+            return orderStore.readOrder(orderId);
         }else{
             return "the fuction is only for picker";
         }
     }
 
-    //Initializes the internal order map by loading the uncollected orders from the file system.
+    // Returns the current state of an order, null if the hub does not hold it
+    public OrderState getOrderState(int orderId) {
+        OrderStatus status = orderMap.get(orderId);
+        return status == null ? null : status.state();
+    }
+
+    // A copy of the orderMap, used by tests
+    TreeMap<Integer, OrderState> orderMapSnapshot() {
+        TreeMap<Integer, OrderState> snapshot = new TreeMap<>();
+        for (Map.Entry<Integer, OrderStatus> entry : orderMap.entrySet()) {
+            snapshot.put(entry.getKey(), entry.getValue().state());
+        }
+        return snapshot;
+    }
+
+    //Initializes the internal order map by loading the uncollected orders from the order store.
     // Called during system startup by the Main class.
+    // The store hands the orders over one by one, possibly from several threads (eg. FolderOrderStore in recovery mode),
+    // and each goes straight into the orderMap and the ready queue.
     public void initializeOrderMap(){
-        ArrayList<Integer> orderedIds = orderIdsLoader(orderedPath);
-        ArrayList<Integer> progressingIds = orderIdsLoader(progressingPath);
-        if(orderedIds.size()>0){
-            for(Integer orderId : orderedIds){
-                orderMap.put(orderId, OrderState.Ordered);
-            }
-        }
-        if(progressingIds.size()>0){
-            for(Integer orderId : progressingIds){
-                orderMap.put(orderId, OrderState.Progressing);
-            }
-        }
-        notifyOrderTrackers();
-        notifyPickerModels();
-        System.out.println("orderMap initilized. "+ orderMap.size() + " orders in total, including:");
-        System.out.println( orderedIds.size() + " Ordered orders, " +progressingIds.size() + " Progressing orders " );
-    }
-
-    // Loads a list of order IDs from the specified directory.
-    // Used internally by initializeOrderMap().
-    private ArrayList<Integer> orderIdsLoader(Path dir) {
-        ArrayList<Integer> orderIds = new ArrayList<>();
-
-        if (Files.exists(dir) && Files.isDirectory(dir)) {
-            try (Stream<Path> fileStream = Files.list(dir)) {
-                // Process the stream without checking it separately
-                List<Path> files = fileStream.filter(Files::isRegularFile).toList();
-
-                if (files.isEmpty()) {
-                    System.out.println(dir + " is empty");
-                } else {
-                    for (Path file : files) {
-                        String fileName = file.getFileName().toString();
-                        if (fileName.endsWith(".txt")) { // Ensure it's a .txt file
-                            try {
-                                int orderId = Integer.parseInt(fileName.substring(0, fileName.lastIndexOf('.')));
-                                orderIds.add(orderId);
-                                System.out.println(orderId);
-                            } catch (NumberFormatException e) {
-                                System.out.println("Invalid file name: " + fileName);
-                            }
-                        }
-                    }
+        long start = System.nanoTime();
+        ConcurrentLinkedQueue<OrderEvent> loaded = new ConcurrentLinkedQueue<>();
+        LongAdder orderedCount = new LongAdder();
+        LongAdder progressingCount = new LongAdder();
+        try {
+            orderStore.forEachActiveOrder((orderId, state) -> {
+                long newVersion = version.incrementAndGet();
+                if (orderMap.putIfAbsent(orderId, new OrderStatus(state, newVersion)) != null) {
+                    return;
                 }
-            } catch (IOException e) {
-                System.out.println("Error reading " + dir + ", " + e.getMessage());
+                loaded.add(new OrderEvent(orderId, null, state, newVersion));
+                // indexed and ranked by the times saved by the store, so an order does not lose its age with a restart
+                OrderSummary stored = orderStore.getOrderSummary(orderId);
+                queries.orderLoaded(stored == null ? new OrderSummary(orderId, state, 0, 0, 0)
+                        : new OrderSummary(orderId, state, stored.orderedTime(), stored.progressingTime(), 0));
+                dispatchInfo.putIfAbsent(orderId, new ReadyOrder(orderId, stored == null ? 0 : stored.orderedTime(),
+                        0, false, System.currentTimeMillis()));
+                if (state == OrderState.Ordered) {
+                    orderedCount.increment();
+                    readyQueue.offer(readyOrder(orderId));
+                } else if (state == OrderState.Progressing) {
+                    progressingCount.increment();
+                    // claimed before the restart, nobody holds the claim now: back to the queue after one lease period
+                    Lease lease = new Lease(leaseIds.incrementAndGet(), System.currentTimeMillis() + leaseMillis);
+                    leases.put(orderId, lease);
+                    leaseExpiry.add(orderId, lease.expiresAt());
+                }
+            });
+            // the collected orders stay searchable after a restart until queryRetention has passed
+            for (OrderSummary summary : orderStore.loadOrderSummaries(System.currentTimeMillis() - queryRetention)) {
+                queries.orderLoaded(summary);
             }
-        } else {
-            System.out.println(dir + " does not exist.");
+        } catch (IOException e) {
+            Log.error("Failed to load orders from the order store", e);
         }
-        return orderIds;
+        List<OrderEvent> events = new ArrayList<>(loaded);
+        events.sort(Comparator.comparingInt(OrderEvent::orderId));
+        publish(events); // one combined notification for all loaded orders
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        Log.info(() -> "orderMap initilized in " + elapsedMillis + " ms. "+ orderMap.size() + " orders in total, including:");
+        Log.info(() -> orderedCount.sum() + " Ordered orders, " + progressingCount.sum() + " Progressing orders " );
     }
-
 }
@@ -0,0 +1,123 @@
+package ci553.happyshop.orderManagement;
+
+import ci553.happyshop.utility.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * OrderIdAllocator hands out unique order IDs from blocks reserved in the counter file.
+ *
+ * <p>The counter file (orders/orderCounter.txt) holds the highest ID reserved so far.
+ * To reserve a block, the allocator locks the file, reads the number N, writes N + blockSize,
+ * forces the file to disk and releases the lock. The IDs N+1 .. N+blockSize then belong to this
+ * allocator only, and are handed out from memory with an AtomicInteger, without any file access.</p>
+ *
+ * <p>So with a block size of 1000, only one order in 1000 touches the file.</p>
+ *
+ * Safety:
+ * - Between processes: the reservation is done under an exclusive FileLock, so two processes
+ *   always get different blocks.
+ * - After a crash: the reservation is on disk before any ID of the block is used, so a restarted
+ *   process reserves a new block above it and never reuses an ID. The unused rest of the block is lost.
+ * - The file keeps the format of the old counter (the last used ID), so an existing file simply
+ *   continues from its number. An existing file that is empty or does not hold a number is an error,
+ *   since starting again from 0 would hand out IDs that are already used.
+ */
+
+public class OrderIdAllocator {
+
+    // A reserved block: next is the next ID to hand out, last is the last ID of the block
+    private record Block(AtomicInteger next, int last) {}
+
+    // A FileLock is held by the whole JVM, so two allocators in one JVM must not lock the file at the same time
+    // (FileChannel.lock would throw OverlappingFileLockException); reservations are rare, one guard is enough.
+    private static final Object reservationGuard = new Object();
+
+    private final Path counterPath;
+    private final int blockSize;
+    private final AtomicReference<Block> block = new AtomicReference<>(new Block(new AtomicInteger(1), 0)); // empty
+
+    public OrderIdAllocator(Path counterPath, int blockSize) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Block size must be positive: " + blockSize);
+        }
+        this.counterPath = counterPath;
+        this.blockSize = blockSize;
+    }
+
+    // Returns a new unique order ID, reserving a new block when the current one is used up.
+    public int nextId() throws IOException {
+        while (true) {
+            Block current = block.get();
+            int id = current.next().getAndIncrement();
+            if (id <= current.last()) {
+                return id;
+            }
+            synchronized (this) {
+                if (block.get() == current) { // no other thread has refilled it meanwhile
+                    block.set(reserveBlock());
+                }
+            }
+        }
+    }
+
+    // Reserves the next blockSize IDs in the counter file, under an exclusive file lock.
+    private Block reserveBlock() throws IOException {
+        synchronized (reservationGuard) {
+            return reserveBlockLocked();
+        }
+    }
+
+    private Block reserveBlockLocked() throws IOException {
+        boolean newFile = Files.notExists(counterPath);
+        try (FileChannel channel = FileChannel.open(counterPath,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+             FileLock lock = channel.lock()) {
+
+            ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // read the whole file
+            }
+            int reserved = parseCounter(new String(buffer.array(), StandardCharsets.US_ASCII).trim(), newFile);
+            int last = reserved + blockSize;
+
+            // The new number is written over the old one and the file cut to its length afterwards, so a crash
+            // leaves either number in the file, never an empty file. The number only grows, so it covers the old one.
+            byte[] bytes = String.valueOf(last).getBytes(StandardCharsets.US_ASCII);
+            ByteBuffer out = ByteBuffer.wrap(bytes);
+            while (out.hasRemaining()) {
+                channel.write(out, out.position());
+            }
+            channel.truncate(bytes.length);
+            channel.force(true); // the reservation must survive a crash before any ID is used
+
+            Log.debug(() -> "Order IDs " + (reserved + 1) + " to " + last + " reserved");
+            return new Block(new AtomicInteger(reserved + 1), last);
+        }
+    }
+
+    // Only a counter file created just now may be empty; an existing empty or garbled file would restart the IDs at 1
+    private int parseCounter(String content, boolean newFile) throws IOException {
+        if (content.isEmpty() && newFile) {
+            return 0;
+        }
+        try {
+            int reserved = Integer.parseInt(content);
+            if (reserved < 0) {
+                throw new NumberFormatException("negative");
+            }
+            return reserved;
+        } catch (NumberFormatException e) {
+            throw new IOException("Order counter file " + counterPath + " does not hold an order ID: \"" + content + "\"", e);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package ci553.happyshop.orderManagement;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * OrderMapReplica is an observer's own copy of the hub's orderMap, kept up to date by applying OrderEvents.
+ *
+ * Events may arrive out of order (they are delivered by the threads that made the changes), so each order
+ * remembers the version of the event that last changed it and older events are ignored.
+ * Removed orders leave a tombstone with their version, so a late event cannot bring them back.
+ * Only the most recent MAX_TOMBSTONES removals are remembered, which is far more than can be in flight.
+ *
+ * Not thread-safe: the owner applies events and reads the map from one thread, or synchronizes.
+ */
+
+public class OrderMapReplica {
+    private static final int MAX_TOMBSTONES = 4096;
+
+    private final TreeMap<Integer, OrderState> orders = new TreeMap<>();
+    private final Map<Integer, Long> versions = new HashMap<>();
+    private final LinkedHashMap<Integer, Long> tombstones = new LinkedHashMap<>(16, 0.75f, false) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Long> eldest) {
+            return size() > MAX_TOMBSTONES;
+        }
+    };
+
+    /**
+     * Applies the events in the given order.
+     * @return true if at least one event changed the replica
+     */
+    public boolean apply(List<OrderEvent> events) {
+        boolean changed = false;
+        for (OrderEvent event : events) {
+            changed |= apply(event);
+        }
+        return changed;
+    }
+
+    public boolean apply(OrderEvent event) {
+        int orderId = event.orderId();
+        Long known = versions.get(orderId);
+        if (known == null) {
+            known = tombstones.get(orderId);
+        }
+        if (known != null && known >= event.version()) {
+            return false; // stale, the replica already shows a later change
+        }
+        if (event.isRemoval()) {
+            orders.remove(orderId);
+            versions.remove(orderId);
+            tombstones.put(orderId, event.version());
+        } else {
+            orders.put(orderId, event.newState());
+            versions.put(orderId, event.version());
+            tombstones.remove(orderId);
+        }
+        return true;
+    }
+
+    // The orders sorted by ID, a read-only view
+    public SortedMap<Integer, OrderState> orders() {
+        return Collections.unmodifiableSortedMap(orders);
+    }
+
+    public OrderState get(int orderId) {
+        return orders.get(orderId);
+    }
+}
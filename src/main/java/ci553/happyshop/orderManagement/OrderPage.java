@@ -0,0 +1,27 @@
+package ci553.happyshop.orderManagement;
+
+import java.util.List;
+
+/**
+ * One page of query results, in the order of OrderQueryService.page().
+ * The next page is asked for with next(), the cursor of the last order of this one.
+ *
+ * @param hasMore whether more orders match after this page
+ * @param next    where the next page starts, Cursor.START for an empty page
+ */
+
+public record OrderPage(List<OrderSummary> orders, boolean hasMore, Cursor next) {
+
+    /**
+     * The sort key of the last order on a page: its ID, and for a query sorted by a time range
+     * (see OrderQueryService.page()) also its time in that range; the time is 0 otherwise.
+     */
+    public record Cursor(long time, int orderId) {
+        public static final Cursor START = new Cursor(Long.MIN_VALUE, 0);
+    }
+
+    // The ID of the last order on the page, 0 for an empty page
+    public int lastOrderId() {
+        return orders.isEmpty() ? 0 : orders.get(orders.size() - 1).orderId();
+    }
+}
@@ -0,0 +1,94 @@
+package ci553.happyshop.orderManagement;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+
+/**
+ * An OrderQuery describes which orders OrderQueryService should return. It is immutable:
+ * each method returns a new query with one more condition, and all conditions must hold.
+ * Time ranges are epoch milliseconds, from inclusive and to exclusive.
+ *
+ * Example Usage:
+ *     // all orders containing product 0007 collected yesterday
+ *     OrderQuery query = OrderQuery.all().containing("0007").collectedOn(LocalDate.now().minusDays(1));
+ *     orderHub.getQueryService().stream(query, 50).forEach(...);
+ */
+
+public final class OrderQuery {
+    private static final long NONE = Long.MIN_VALUE; // no range on this time
+
+    final OrderState state;   // null for any state
+    final String productId;   // null for any product
+    final long orderedFrom, orderedTo;
+    final long progressingFrom, progressingTo;
+    final long collectedFrom, collectedTo;
+
+    private OrderQuery(OrderState state, String productId, long orderedFrom, long orderedTo,
+                       long progressingFrom, long progressingTo, long collectedFrom, long collectedTo) {
+        this.state = state;
+        this.productId = productId;
+        this.orderedFrom = orderedFrom;
+        this.orderedTo = orderedTo;
+        this.progressingFrom = progressingFrom;
+        this.progressingTo = progressingTo;
+        this.collectedFrom = collectedFrom;
+        this.collectedTo = collectedTo;
+    }
+
+    // Every order known to the service
+    public static OrderQuery all() {
+        return new OrderQuery(null, null, NONE, NONE, NONE, NONE, NONE, NONE);
+    }
+
+    public OrderQuery inState(OrderState state) {
+        return new OrderQuery(state, productId, orderedFrom, orderedTo, progressingFrom, progressingTo, collectedFrom, collectedTo);
+    }
+
+    public OrderQuery containing(String productId) {
+        return new OrderQuery(state, productId, orderedFrom, orderedTo, progressingFrom, progressingTo, collectedFrom, collectedTo);
+    }
+
+    public OrderQuery orderedBetween(long fromMillis, long toMillis) {
+        return new OrderQuery(state, productId, fromMillis, toMillis, progressingFrom, progressingTo, collectedFrom, collectedTo);
+    }
+
+    public OrderQuery progressingBetween(long fromMillis, long toMillis) {
+        return new OrderQuery(state, productId, orderedFrom, orderedTo, fromMillis, toMillis, collectedFrom, collectedTo);
+    }
+
+    public OrderQuery collectedBetween(long fromMillis, long toMillis) {
+        return new OrderQuery(state, productId, orderedFrom, orderedTo, progressingFrom, progressingTo, fromMillis, toMillis);
+    }
+
+    // Collected on a calendar day, in the system time zone
+    public OrderQuery collectedOn(LocalDate day) {
+        ZoneId zone = ZoneId.systemDefault();
+        return collectedBetween(day.atStartOfDay(zone).toInstant().toEpochMilli(),
+                day.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli());
+    }
+
+    boolean hasOrderedRange() { return orderedFrom != NONE; }
+    boolean hasProgressingRange() { return progressingFrom != NONE; }
+    boolean hasCollectedRange() { return collectedFrom != NONE; }
+
+    // Whether an order matches every condition
+    boolean matches(OrderSummary order, boolean hasProduct) {
+        return (state == null || order.state() == state)
+                && (productId == null || hasProduct)
+                && (!hasOrderedRange() || inRange(order.orderedTime(), orderedFrom, orderedTo))
+                && (!hasProgressingRange() || inRange(order.progressingTime(), progressingFrom, progressingTo))
+                && (!hasCollectedRange() || inRange(order.collectedTime(), collectedFrom, collectedTo));
+    }
+
+    private static boolean inRange(long time, long from, long to) {
+        return time != 0 && time >= from && time < to; // 0 means the order has no such time
+    }
+
+    @Override
+    public String toString() {
+        return "OrderQuery[state=" + state + ", product=" + productId
+                + (hasOrderedRange() ? ", ordered " + orderedFrom + ".." + orderedTo : "")
+                + (hasProgressingRange() ? ", progressing " + progressingFrom + ".." + progressingTo : "")
+                + (hasCollectedRange() ? ", collected " + collectedFrom + ".." + collectedTo : "") + "]";
+    }
+}
@@ -0,0 +1,338 @@
+package ci553.happyshop.orderManagement;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+
+/**
+ * OrderQueryService answers questions about many orders, such as "all orders containing 0007 collected yesterday",
+ * from secondary indexes kept in memory, without reading any order file.
+ *
+ * Indexes, all updated by OrderHub as orders are created and change state:
+ * - orders:     order ID -> OrderSummary (state and the three times), sorted by ID
+ * - byState:    state -> IDs of the orders in it
+ * - byProduct:  product ID -> IDs of the orders containing it
+ * - orderedAt, progressingAt, collectedAt: (time, order ID) pairs sorted by time, for time ranges
+ *
+ * A query starts from the index that narrows it most (the product, a time range, then the state) and checks
+ * the other conditions against each order's summary. Results come in pages, in ascending time when read from
+ * a time index and in ascending order ID otherwise; a page is continued from the sort key of the last order
+ * of the one before (keyset paging, see OrderPage.Cursor), so orders changing meanwhile never shift the pages
+ * and no page copies the rest of the range. stream() hands out the pages one after the other as a Stream.
+ *
+ * The indexes are concurrent collections. OrderHub changes one order from one thread at a time,
+ * and readers check every candidate against its current summary, so a result never holds an order
+ * that does not match.
+ *
+ * Orders loaded at startup (the active ones and those collected within OrderHub.queryRetentionMillis) are
+ * indexed with the state and times their OrderStore saved. Their products are only known by reading the
+ * orders, so they are read through the ProductLoader the first time a query asks for a product, and indexed
+ * from then on. An order whose products can not be read fails that query (UncheckedIOException) instead of
+ * being silently left out of its result. Collected orders are kept until removeCollectedBefore() drops them.
+ */
+
+public class OrderQueryService {
+
+    // (time, order ID), sorted by time then ID
+    private record Stamp(long time, int orderId) implements Comparable<Stamp> {
+        public int compareTo(Stamp other) {
+            int byTime = Long.compare(time, other.time);
+            return byTime != 0 ? byTime : Integer.compare(orderId, other.orderId);
+        }
+    }
+
+    /**
+     * Reads the product IDs of an order from where it is stored, eg. OrderStore.readProductIds.
+     */
+    @FunctionalInterface
+    public interface ProductLoader {
+        Collection<String> productIdsOf(int orderId) throws IOException;
+    }
+
+    private final ProductLoader productLoader;
+    private final ConcurrentSkipListSet<Integer> productsUnknown = new ConcurrentSkipListSet<>(); // orders not indexed by product yet
+    private final Object productLoadLock = new Object(); // one thread reads the unknown products at a time
+
+    private final ConcurrentSkipListMap<Integer, OrderSummary> orders = new ConcurrentSkipListMap<>();
+    private final ConcurrentHashMap<Integer, List<String>> productsOfOrder = new ConcurrentHashMap<>();
+    private final Map<OrderState, ConcurrentSkipListSet<Integer>> byState = new EnumMap<>(OrderState.class);
+    private final ConcurrentHashMap<String, ConcurrentSkipListSet<Integer>> byProduct = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<Stamp> orderedAt = new ConcurrentSkipListSet<>();
+    private final ConcurrentSkipListSet<Stamp> progressingAt = new ConcurrentSkipListSet<>();
+    private final ConcurrentSkipListSet<Stamp> collectedAt = new ConcurrentSkipListSet<>();
+
+    // A service that only knows the products of the orders it sees created
+    public OrderQueryService() {
+        this(orderId -> {
+            throw new IOException("The products of order " + orderId + " are unknown");
+        });
+    }
+
+    public OrderQueryService(ProductLoader productLoader) {
+        this.productLoader = productLoader;
+        for (OrderState state : OrderState.values()) {
+            byState.put(state, new ConcurrentSkipListSet<>());
+        }
+    }
+
+    //------------------------------------------------------------------
+    // updates, called by OrderHub
+
+    // A new order, in the Ordered state
+    void orderCreated(int orderId, long orderedTime, Collection<String> productIds) {
+        indexProducts(orderId, productIds);
+        put(new OrderSummary(orderId, OrderState.Ordered, orderedTime, 0, 0));
+    }
+
+    // An order loaded at startup, with the times its store saved (0 where unknown); its products are read on demand
+    void orderLoaded(OrderSummary loaded) {
+        if (!orders.containsKey(loaded.orderId())) {
+            put(loaded);
+            productsUnknown.add(loaded.orderId());
+        }
+    }
+
+    void stateChanged(int orderId, OrderState newState, long time) {
+        OrderSummary old = orders.get(orderId);
+        if (old == null) {
+            old = new OrderSummary(orderId, newState, 0, 0, 0); // an order the service did not see created
+            productsUnknown.add(orderId);
+        }
+        put(old.withState(newState, time));
+    }
+
+    /**
+     * Drops the orders collected before the given time from every index.
+     * @return the number of orders dropped
+     */
+    public int removeCollectedBefore(long timeMillis) {
+        int removed = 0;
+        Iterator<Stamp> expired = collectedAt.headSet(new Stamp(timeMillis, Integer.MIN_VALUE)).iterator();
+        while (expired.hasNext()) {
+            int orderId = expired.next().orderId();
+            OrderSummary summary = orders.remove(orderId);
+            if (summary != null) {
+                unindex(summary);
+                List<String> products = productsOfOrder.remove(orderId);
+                if (products != null) {
+                    for (String productId : products) {
+                        Set<Integer> ids = byProduct.get(productId);
+                        if (ids != null) {
+                            ids.remove(orderId);
+                        }
+                    }
+                }
+                removed++;
+            }
+            productsUnknown.remove(orderId);
+            expired.remove();
+        }
+        return removed;
+    }
+
+    private void indexProducts(int orderId, Collection<String> productIds) {
+        List<String> products = List.copyOf(new TreeSet<>(productIds));
+        productsOfOrder.put(orderId, products);
+        for (String productId : products) {
+            byProduct.computeIfAbsent(productId, id -> new ConcurrentSkipListSet<>()).add(orderId);
+        }
+    }
+
+    // Reads and indexes the products of the orders loaded without them. An order leaves productsUnknown only
+    // once its products are indexed, so a query finding the set empty can rely on byProduct.
+    private void loadUnknownProducts() {
+        if (productsUnknown.isEmpty()) {
+            return;
+        }
+        synchronized (productLoadLock) {
+            for (Integer orderId : productsUnknown) {
+                try {
+                    indexProducts(orderId, productLoader.productIdsOf(orderId));
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Can not read the products of order " + orderId, e);
+                }
+                productsUnknown.remove(orderId);
+            }
+        }
+    }
+
+    // Replaces the summary of an order and moves it in the state and time indexes. The new entries are
+    // added before the old ones are removed, so a reader always finds the order in at least one of them.
+    private void put(OrderSummary summary) {
+        OrderSummary old = orders.put(summary.orderId(), summary);
+        byState.get(summary.state()).add(summary.orderId());
+        addStamp(orderedAt, summary.orderedTime(), summary.orderId());
+        addStamp(progressingAt, summary.progressingTime(), summary.orderId());
+        addStamp(collectedAt, summary.collectedTime(), summary.orderId());
+        if (old != null) {
+            if (old.state() != summary.state()) {
+                byState.get(old.state()).remove(old.orderId());
+            }
+            removeStampIfChanged(orderedAt, old.orderedTime(), summary.orderedTime(), old.orderId());
+            removeStampIfChanged(progressingAt, old.progressingTime(), summary.progressingTime(), old.orderId());
+            removeStampIfChanged(collectedAt, old.collectedTime(), summary.collectedTime(), old.orderId());
+        }
+    }
+
+    private void unindex(OrderSummary summary) {
+        byState.get(summary.state()).remove(summary.orderId());
+        orderedAt.remove(new Stamp(summary.orderedTime(), summary.orderId()));
+        progressingAt.remove(new Stamp(summary.progressingTime(), summary.orderId()));
+        collectedAt.remove(new Stamp(summary.collectedTime(), summary.orderId()));
+    }
+
+    private static void addStamp(ConcurrentSkipListSet<Stamp> index, long time, int orderId) {
+        if (time != 0) {
+            index.add(new Stamp(time, orderId));
+        }
+    }
+
+    private static void removeStampIfChanged(ConcurrentSkipListSet<Stamp> index, long oldTime, long newTime, int orderId) {
+        if (oldTime != 0 && oldTime != newTime) {
+            index.remove(new Stamp(oldTime, orderId));
+        }
+    }
+
+    //------------------------------------------------------------------
+    // queries
+
+    public OrderSummary get(int orderId) {
+        return orders.get(orderId);
+    }
+
+    public int size() {
+        return orders.size();
+    }
+
+    /**
+     * Returns up to pageSize matching orders after the cursor; start with OrderPage.Cursor.START and
+     * continue with OrderPage.next().
+     *
+     * A query with a time range and no product is read from that time index in ascending time, then ID
+     * (the collected range first, then progressing, then ordered, if it has several), walking the index
+     * lazily from the cursor, so each page costs about pageSize index entries however wide the range.
+     * Every other query comes in ascending order ID.
+     * @throws UncheckedIOException if the query asks for a product and the products of a loaded order can not be read
+     */
+    public OrderPage page(OrderQuery query, OrderPage.Cursor after, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+        }
+        if (query.productId != null) {
+            loadUnknownProducts();
+        }
+        TimeRange range = query.productId == null ? timeRangeOf(query) : null;
+        Iterator<Stamp> candidates = range != null ? range.after(after) : idsAfter(query, after.orderId());
+        List<OrderSummary> found = new ArrayList<>(Math.min(pageSize, 1024));
+        Stamp last = null;
+        while (candidates.hasNext()) {
+            Stamp stamp = candidates.next();
+            OrderSummary summary = orders.get(stamp.orderId());
+            if (summary != null && (range == null || range.timeOf(summary) == stamp.time())
+                    && query.matches(summary, hasProduct(summary.orderId(), query.productId))) {
+                if (found.size() == pageSize) {
+                    return new OrderPage(found, true, cursorOf(last));
+                }
+                found.add(summary);
+                last = stamp;
+            }
+        }
+        return new OrderPage(found, false, cursorOf(last));
+    }
+
+    // All matching orders in the order of page(), fetched pageSize at a time as the stream is consumed
+    public Stream<OrderSummary> stream(OrderQuery query, int pageSize) {
+        return Stream.iterate(page(query, OrderPage.Cursor.START, pageSize), Objects::nonNull,
+                        page -> page.hasMore() ? page(query, page.next(), pageSize) : null)
+                .flatMap(page -> page.orders().stream());
+    }
+
+    public long count(OrderQuery query) {
+        return stream(query, 1024).count();
+    }
+
+    private static OrderPage.Cursor cursorOf(Stamp last) {
+        return last == null ? OrderPage.Cursor.START : new OrderPage.Cursor(last.time(), last.orderId());
+    }
+
+    private boolean hasProduct(int orderId, String productId) {
+        if (productId == null) {
+            return true;
+        }
+        List<String> products = productsOfOrder.get(orderId);
+        return products != null && products.contains(productId);
+    }
+
+    // A time range of a query and the index it is read from
+    private record TimeRange(ConcurrentSkipListSet<Stamp> index, long from, long to, ToLongFunction<OrderSummary> time) {
+
+        long timeOf(OrderSummary summary) {
+            return time.applyAsLong(summary);
+        }
+
+        // The stamps in [from, to) after the cursor, read from the index as they are consumed
+        Iterator<Stamp> after(OrderPage.Cursor cursor) {
+            Stamp upper = new Stamp(to, Integer.MIN_VALUE);
+            boolean fromCursor = cursor.time() >= from;
+            Stamp lower = fromCursor ? new Stamp(cursor.time(), cursor.orderId()) : new Stamp(from, Integer.MIN_VALUE);
+            if (from >= to || lower.compareTo(upper) >= 0) {
+                return Collections.emptyIterator();
+            }
+            return index.subSet(lower, !fromCursor, upper, false).iterator();
+        }
+    }
+
+    // The time range that narrows the query most, null if it has none
+    private TimeRange timeRangeOf(OrderQuery query) {
+        if (query.hasCollectedRange()) {
+            return new TimeRange(collectedAt, query.collectedFrom, query.collectedTo, OrderSummary::collectedTime);
+        }
+        if (query.hasProgressingRange()) {
+            return new TimeRange(progressingAt, query.progressingFrom, query.progressingTo, OrderSummary::progressingTime);
+        }
+        if (query.hasOrderedRange()) {
+            return new TimeRange(orderedAt, query.orderedFrom, query.orderedTo, OrderSummary::orderedTime);
+        }
+        return null;
+    }
+
+    // The IDs above afterOrderId from the product, state or order index, in ascending order, as stamps without a time
+    private Iterator<Stamp> idsAfter(OrderQuery query, int afterOrderId) {
+        NavigableSet<Integer> ids;
+        if (query.productId != null) {
+            ids = byProduct.get(query.productId);
+            if (ids == null) {
+                return Collections.emptyIterator();
+            }
+        } else if (query.state != null) {
+            ids = byState.get(query.state);
+        } else {
+            ids = orders.navigableKeySet();
+        }
+        Iterator<Integer> tail = ids.tailSet(afterOrderId, false).iterator();
+        return new Iterator<>() {
+            public boolean hasNext() {
+                return tail.hasNext();
+            }
+
+            public Stamp next() {
+                return new Stamp(0, tail.next());
+            }
+        };
+    }
+}
@@ -0,0 +1,16 @@
+package ci553.happyshop.orderManagement;
+
+/**
+ * One order as returned by OrderQueryService. The times are epoch milliseconds, 0 if the order
+ * has not reached that state (or the time is unknown, eg. for an order loaded from a store that does not save it).
+ */
+
+public record OrderSummary(int orderId, OrderState state, long orderedTime, long progressingTime, long collectedTime) {
+
+    // The same order after a change to newState at the given time; back to Ordered clears the progressing time
+    OrderSummary withState(OrderState newState, long time) {
+        return new OrderSummary(orderId, newState, orderedTime,
+                newState == OrderState.Progressing ? time : newState == OrderState.Ordered ? 0 : progressingTime,
+                newState == OrderState.Collected ? time : collectedTime);
+    }
+}
@@ -0,0 +1,17 @@
+package ci553.happyshop.orderManagement;
+
+/**
+ * An order waiting in the ready queue, with what a DispatchPolicy needs to rank it.
+ *
+ * @param orderedTime epoch milliseconds the order was placed (0 if unknown, e.g. loaded at startup)
+ * @param itemCount   the number of items in the order (0 if unknown)
+ * @param readySince  epoch milliseconds the order entered the ready queue, for the pick wait time
+ */
+
+record ReadyOrder(int orderId, long orderedTime, int itemCount, boolean express, long readySince) {
+
+    // The same order entering the ready queue again, e.g. after an expired claim
+    ReadyOrder requeued(long now) {
+        return new ReadyOrder(orderId, orderedTime, itemCount, express, now);
+    }
+}
@@ -0,0 +1,29 @@
+package ci553.happyshop.orderManagement;
+
+/**
+ * The orders in the Ordered state, waiting for a picker. poll() hands out the next one according
+ * to a DispatchPolicy; each order is handed out once.
+ *
+ * Implementations: FifoReadyQueue (lock-free, lowest ID first) and DispatchEngine (priority policies).
+ */
+
+interface ReadyQueue {
+
+    // Adds or re-adds an order; adding an order that is already waiting has no effect
+    void offer(ReadyOrder order);
+
+    // Removes and returns the next order to pick, null if none is waiting
+    ReadyOrder poll();
+
+    // Removes an order that no longer waits (e.g. changed without a claim)
+    void remove(int orderId);
+
+    int size();
+
+    // Called once per hub tick, lets priorities change as orders age
+    default void refresh(long nowMillis) {}
+
+    static ReadyQueue create(DispatchPolicy policy) {
+        return policy == DispatchPolicy.FIFO ? new FifoReadyQueue() : new DispatchEngine(policy);
+    }
+}
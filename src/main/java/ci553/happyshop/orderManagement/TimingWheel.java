@@ -0,0 +1,122 @@
+package ci553.happyshop.orderManagement;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * TimingWheel keeps order IDs until a deadline and hands out all IDs that are due in one sweep.
+ * OrderHub uses it to remove collected orders after the retention time.
+ *
+ * A ScheduledExecutorService keeps one task per deadline in a heap (O(log n) per order). The wheel instead
+ * puts each ID into a bucket for its tick, in O(1), and one advance() call per tick empties the due buckets.
+ *
+ * It is hierarchical, like the hands of a clock:
+ * - level 0 has wheelSize buckets of one tick each,
+ * - level 1 has wheelSize buckets of wheelSize ticks each, level 2 of wheelSize^2 ticks each, and so on.
+ * A deadline goes into the lowest level that can hold it. Each time a lower level completes a turn,
+ * the next bucket of the level above is emptied and its IDs move down ("cascade") until they reach level 0.
+ * Deadlines beyond the top level are parked in its furthest bucket and placed again when it cascades.
+ *
+ * IDs expire at the first tick at or after their deadline, so at most one tick late and never early.
+ * All methods are synchronized; add() and advance() are short.
+ */
+
+class TimingWheel {
+    private record Entry(int orderId, long deadlineTick) {}
+
+    private final long tickMillis;
+    private final int wheelSize;
+    private final long startMillis;
+    private final List<List<List<Entry>>> levels = new ArrayList<>(); // level -> bucket -> entries
+    private long currentTick = 0; // ticks done since startMillis
+    private int size = 0;
+
+    TimingWheel(long tickMillis, int wheelSize, int levelCount, long startMillis) {
+        if (tickMillis <= 0 || wheelSize < 2 || levelCount < 1) {
+            throw new IllegalArgumentException("Invalid timing wheel: tick " + tickMillis
+                    + " ms, " + wheelSize + " buckets, " + levelCount + " levels");
+        }
+        this.tickMillis = tickMillis;
+        this.wheelSize = wheelSize;
+        this.startMillis = startMillis;
+        for (int level = 0; level < levelCount; level++) {
+            List<List<Entry>> buckets = new ArrayList<>(wheelSize);
+            for (int i = 0; i < wheelSize; i++) {
+                buckets.add(new ArrayList<>());
+            }
+            levels.add(buckets);
+        }
+    }
+
+    // Adds an order ID that is due at deadlineMillis
+    synchronized void add(int orderId, long deadlineMillis) {
+        long deadlineTick = Math.floorDiv(deadlineMillis - startMillis + tickMillis - 1, tickMillis); // rounded up
+        place(new Entry(orderId, deadlineTick), 1); // the bucket of the current tick is already swept
+        size++;
+    }
+
+    /**
+     * Moves the wheel forward to nowMillis, one tick at a time.
+     * @return the IDs whose deadline has passed, in one batch
+     */
+    synchronized List<Integer> advance(long nowMillis) {
+        long targetTick = Math.floorDiv(nowMillis - startMillis, tickMillis);
+        List<Integer> expired = new ArrayList<>();
+        while (currentTick < targetTick) {
+            currentTick++;
+            // levels above 0 cascade when the level below completes a turn, highest first
+            long span = wheelSize;
+            int level = 1;
+            while (level < levels.size() && currentTick % span == 0) {
+                level++;
+                span *= wheelSize;
+            }
+            for (level = level - 1, span /= wheelSize; level >= 1; level--, span /= wheelSize) {
+                for (Entry entry : drain(level, (int) ((currentTick / span) % wheelSize))) {
+                    place(entry, 0); // an entry due now lands in the level 0 bucket swept below
+                }
+            }
+            for (Entry entry : drain(0, (int) (currentTick % wheelSize))) {
+                if (entry.deadlineTick() <= currentTick) {
+                    expired.add(entry.orderId());
+                    size--;
+                } else {
+                    place(entry, 1);
+                }
+            }
+        }
+        return expired;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    // Puts an entry into the lowest level whose range covers its deadline, at least minTicks ahead. Caller holds the lock.
+    private void place(Entry entry, long minTicks) {
+        long delta = Math.max(minTicks, entry.deadlineTick() - currentTick);
+        long tick = currentTick + delta;
+        long span = 1;
+        for (int level = 0; level < levels.size(); level++) {
+            boolean topLevel = level == levels.size() - 1;
+            if (delta < span * wheelSize || topLevel) {
+                if (delta >= span * wheelSize) {
+                    tick = currentTick + span * (wheelSize - 1); // beyond the top level, park in its furthest bucket
+                }
+                levels.get(level).get((int) ((tick / span) % wheelSize)).add(entry);
+                return;
+            }
+            span *= wheelSize;
+        }
+    }
+
+    // Empties a bucket and returns what it held. Caller holds the lock.
+    private List<Entry> drain(int level, int bucket) {
+        List<Entry> entries = levels.get(level).get(bucket);
+        if (entries.isEmpty()) {
+            return entries;
+        }
+        levels.get(level).set(bucket, new ArrayList<>());
+        return entries;
+    }
+}
@@ -0,0 +1,81 @@
+package ci553.happyshop.orderManagement;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * WaitTimeHistogram records durations in milliseconds and reports percentiles such as p50 and p99.
+ * OrderHub uses it for the time an order waits in the ready queue before a picker claims it.
+ *
+ * Values are counted in buckets whose width grows by 5% (1, 2, 3, ... ms, then ~5% steps up to a day),
+ * so recording is a binary search and an atomic increment, memory is fixed (a few hundred counters),
+ * and a reported percentile is at most ~5% above the true value. Thread-safe without locks.
+ */
+
+public class WaitTimeHistogram {
+    private static final long MAX_TRACKED_MILLIS = 24L * 60 * 60 * 1000; // longer waits share the last bucket
+
+    private static final long[] UPPER_BOUNDS = buildBounds(); // bucket i holds values <= UPPER_BOUNDS[i]
+
+    private final AtomicLongArray counts = new AtomicLongArray(UPPER_BOUNDS.length);
+    private final LongAdder count = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    private static long[] buildBounds() {
+        long[] bounds = new long[512];
+        int n = 0;
+        long bound = 0;
+        while (bound < MAX_TRACKED_MILLIS) {
+            bound = Math.max(bound + 1, (long) Math.ceil(bound * 1.05));
+            bounds[n++] = bound;
+        }
+        bounds[n++] = Long.MAX_VALUE;
+        return Arrays.copyOf(bounds, n);
+    }
+
+    public void record(long millis) {
+        long value = Math.max(0, millis);
+        int bucket = Arrays.binarySearch(UPPER_BOUNDS, value);
+        if (bucket < 0) {
+            bucket = -bucket - 1; // the first bound above the value
+        }
+        counts.incrementAndGet(bucket);
+        count.increment();
+        max.accumulate(value);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @param percentile e.g. 50 or 99
+     * @return the upper bound of the bucket holding that percentile, 0 if nothing was recorded
+     */
+    public long getPercentile(double percentile) {
+        long total = getCount();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < UPPER_BOUNDS.length; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(UPPER_BOUNDS[i], getMax());
+            }
+        }
+        return getMax();
+    }
+
+    public String getStats() {
+        return String.format("count=%d, p50=%d ms, p99=%d ms, max=%d ms",
+                getCount(), getPercentile(50), getPercentile(99), getMax());
+    }
+}
@@ -0,0 +1,41 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Product;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The AsyncDatabaseRW interface is the non-blocking counterpart of DatabaseRW.
+ * Every method starts the same database operation in the background and returns immediately
+ * with a CompletableFuture that completes with the result.
+ *
+ * It is used by the client models so the JavaFX application thread never waits for JDBC:
+ * the model starts the operation, and hands the result back to the UI thread with Platform.runLater().
+ *
+ * If the operation fails, the future completes exceptionally with the SQLException
+ * (wrapped in a CompletionException when observed through join()).
+ *
+ * See DatabaseRW for the meaning of each operation.
+ */
+
+public interface AsyncDatabaseRW {
+
+    CompletableFuture<ArrayList<Product>> searchProduct(String keyword);
+
+    CompletableFuture<Product> searchByProductId(String productId);
+
+    CompletableFuture<Map<String, Product>> searchByProductIds(Collection<String> productIds);
+
+    CompletableFuture<ArrayList<Product>> purchaseStocks(ArrayList<Product> proList);
+
+    CompletableFuture<Void> updateProduct(String id, String des, double price, String imageName, int stock);
+
+    CompletableFuture<Void> deleteProduct(String id);
+
+    CompletableFuture<Void> insertNewProduct(String id, String des, double price, String image, int stock);
+
+    CompletableFuture<Boolean> isProIdAvailable(String productId);
+}
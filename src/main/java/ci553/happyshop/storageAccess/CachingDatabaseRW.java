@@ -0,0 +1,143 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Product;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * CachingDatabaseRW is a decorator that adds a read-through product cache in front of
+ * another DatabaseRW (currently DerbyRW).
+ *
+ * Reads:
+ * - searchByProductId() and searches by ID are answered from the ProductCache when possible,
+ *   otherwise they are passed to the wrapped DatabaseRW and the result is cached. A search keyword
+ *   is only looked up in the cache if it can be a product ID (4 digits), so name searches such as
+ *   "tv" do not count as cache misses.
+ * - searchByProductIds() takes what it can from the cache and reads only the missing IDs,
+ *   in one bulk call to the wrapped DatabaseRW.
+ * - Products found by a name search are cached as well, so a following search by ID is a hit.
+ *
+ * Writes:
+ * - updateProduct, insertNewProduct, deleteProduct and purchaseStocks are always passed to the
+ *   wrapped DatabaseRW, then the affected products are invalidated so the next read refreshes them.
+ *
+ * Because it implements the same DatabaseRW interface, the rest of the system does not know
+ * whether it talks to the cache or directly to the database.
+ */
+
+public class CachingDatabaseRW implements DatabaseRW {
+    private final DatabaseRW database; // the wrapped DatabaseRW doing the real work
+    private final ProductCache cache;  // shared by all CachingDatabaseRW instances
+
+    public CachingDatabaseRW(DatabaseRW database, ProductCache cache) {
+        this.database = database;
+        this.cache = cache;
+    }
+
+    public ArrayList<Product> searchProduct(String keyword) throws SQLException {
+        Product cached = isProductId(keyword) ? cache.get(keyword) : null;
+        if (cached != null) {
+            ArrayList<Product> productList = new ArrayList<>();
+            productList.add(cached);
+            return productList;
+        }
+        long readVersion = cache.getWriteVersion();
+        ArrayList<Product> productList = database.searchProduct(keyword);
+        for (Product product : productList) {
+            cache.put(product, readVersion);
+        }
+        return productList;
+    }
+
+    // Product IDs are exactly 4 digits, as the warehouse checks when a product is added
+    private static boolean isProductId(String keyword) {
+        return keyword != null && keyword.matches("\\d{4}");
+    }
+
+    public Product searchByProductId(String productId) throws SQLException {
+        Product cached = cache.get(productId);
+        if (cached != null) {
+            return cached;
+        }
+        long readVersion = cache.getWriteVersion();
+        Product product = database.searchByProductId(productId);
+        cache.put(product, readVersion);
+        return product;
+    }
+
+    public Map<String, Product> searchByProductIds(Collection<String> productIds) throws SQLException {
+        Map<String, Product> productMap = new LinkedHashMap<>();
+        List<String> missingIds = new ArrayList<>();
+        for (String productId : new LinkedHashSet<>(productIds)) {
+            Product cached = cache.get(productId);
+            productMap.put(productId, cached); // keeps the requested order, misses are filled in below
+            if (cached == null) {
+                missingIds.add(productId);
+            }
+        }
+        if (!missingIds.isEmpty()) {
+            long readVersion = cache.getWriteVersion();
+            Map<String, Product> found = database.searchByProductIds(missingIds);
+            for (Product product : found.values()) {
+                cache.put(product, readVersion);
+            }
+            for (String productId : missingIds) {
+                Product product = found.get(productId);
+                if (product != null) {
+                    productMap.put(productId, product);
+                } else {
+                    productMap.remove(productId); // not in the database
+                }
+            }
+        }
+        return productMap;
+    }
+
+    public ArrayList<Product> purchaseStocks(ArrayList<Product> proList) throws SQLException {
+        try {
+            return database.purchaseStocks(proList);
+        } finally {
+            // stock changed on success; on failure the cached stock is known to be out of date
+            for (Product product : proList) {
+                cache.invalidate(product.getProductId());
+            }
+        }
+    }
+
+    public void updateProduct(String id, String des, double price, String imageName, int stock) throws SQLException {
+        try {
+            database.updateProduct(id, des, price, imageName, stock);
+        } finally {
+            cache.invalidate(id);
+        }
+    }
+
+    public void deleteProduct(String id) throws SQLException {
+        try {
+            database.deleteProduct(id);
+        } finally {
+            cache.invalidate(id);
+        }
+    }
+
+    public void insertNewProduct(String id, String des, double price, String image, int stock) throws SQLException {
+        try {
+            database.insertNewProduct(id, des, price, image, stock);
+        } finally {
+            cache.invalidate(id);
+        }
+    }
+
+    public boolean isProIdAvailable(String productId) throws SQLException {
+        if (cache.contains(productId)) {
+            return false; // a cached product certainly exists
+        }
+        return database.isProIdAvailable(productId);
+    }
+}
@@ -0,0 +1,195 @@
+package ci553.happyshop.storageAccess;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ConnectionPool keeps a bounded set of open JDBC connections that are reused by every DatabaseRW
+ * created by the DatabaseRWFactory, so a request no longer pays for DriverManager.getConnection().
+ *
+ * How it works:
+ * - A Semaphore with maxSize permits bounds the number of connections handed out at the same time.
+ * - Returned connections are kept in an idle queue and reused by the next caller.
+ * - New physical connections are only opened when no idle connection is available,
+ *   so the pool grows on demand up to maxSize.
+ * - An idle connection is validated (Connection.isValid) before being handed out again;
+ *   a broken connection is closed and replaced with a fresh one.
+ *
+ * Each physical connection carries its own StatementCache, so PreparedStatements survive
+ * between borrows and are only compiled once per connection.
+ *
+ * The time callers spend waiting for a permit is recorded and can be reported through getStats(),
+ * together with the statement cache hit/miss counters.
+ *
+ * Example Usage:
+ *     try (PooledConnection pc = pool.borrow()) {
+ *         PreparedStatement stmt = pc.prepareStatement(sql); // cached, do not close it
+ *         ...
+ *     } // the connection goes back to the pool here, it is not closed
+ */
+
+public class ConnectionPool {
+    private static final int VALIDATION_TIMEOUT_SECONDS = 1;
+
+    private final String dbURL;
+    private final int maxSize;
+    private final long borrowTimeoutMillis;
+    private final int statementCacheSize;
+
+    private final Semaphore permits;
+    private final BlockingQueue<StatementCache> idleConnections; // a StatementCache holds its physical connection
+
+    // statistics
+    private final AtomicInteger openedConnections = new AtomicInteger();
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong invalidConnections = new AtomicLong();
+    private final AtomicLong statementHits = new AtomicLong();
+    private final AtomicLong statementMisses = new AtomicLong();
+    private final AtomicLong statementEvictions = new AtomicLong();
+
+    /**
+     * @param dbURL               the JDBC URL used to open physical connections
+     * @param maxSize             the maximum number of connections open at the same time
+     * @param borrowTimeoutMillis how long a caller waits for a free connection before giving up
+     * @param statementCacheSize  the maximum number of PreparedStatements cached per connection
+     */
+    public ConnectionPool(String dbURL, int maxSize, long borrowTimeoutMillis, int statementCacheSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Pool size must be positive: " + maxSize);
+        }
+        this.dbURL = dbURL;
+        this.maxSize = maxSize;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+        this.idleConnections = new ArrayBlockingQueue<>(maxSize);
+    }
+
+    /**
+     * Borrows a connection from the pool. Close the returned PooledConnection to give it back.
+     *
+     * @throws SQLException if no connection becomes available in time or a new one cannot be opened
+     */
+    public PooledConnection borrow() throws SQLException {
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Timed out after " + borrowTimeoutMillis + "ms waiting for a pooled connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a pooled connection", e);
+        }
+        recordWait(System.nanoTime() - start);
+
+        try {
+            return new PooledConnection(this, takeValidConnection());
+        } catch (SQLException | RuntimeException e) {
+            permits.release(); // the permit must not leak if opening a connection failed
+            throw e;
+        }
+    }
+
+    // Reuses an idle connection if a valid one is available, otherwise opens a new one.
+    private StatementCache takeValidConnection() throws SQLException {
+        StatementCache cached;
+        while ((cached = idleConnections.poll()) != null) {
+            if (isUsable(cached.getConnection())) {
+                return cached;
+            }
+            invalidConnections.incrementAndGet();
+            cached.close();
+        }
+        Connection conn = DriverManager.getConnection(dbURL);
+        openedConnections.incrementAndGet();
+        return new StatementCache(conn, this, statementCacheSize);
+    }
+
+    private boolean isUsable(Connection conn) {
+        try {
+            return !conn.isClosed() && conn.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Gives a connection back to the pool. Called by PooledConnection.close().
+     * Any unfinished transaction is rolled back and auto-commit is restored,
+     * so the next borrower always gets a connection in its default state.
+     */
+    void release(StatementCache cached) {
+        Connection conn = cached.getConnection();
+        try {
+            if (!conn.isClosed()) {
+                if (!conn.getAutoCommit()) {
+                    conn.rollback();
+                    conn.setAutoCommit(true);
+                }
+                if (!idleConnections.offer(cached)) {
+                    cached.close();
+                }
+            }
+        } catch (SQLException e) {
+            invalidConnections.incrementAndGet();
+            cached.close();
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void recordWait(long waitNanos) {
+        borrowCount.incrementAndGet();
+        totalWaitNanos.addAndGet(waitNanos);
+        maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+    }
+
+    // callbacks used by StatementCache to report its counters
+    void recordStatementHit() { statementHits.incrementAndGet(); }
+    void recordStatementMiss() { statementMisses.incrementAndGet(); }
+    void recordStatementEviction() { statementEvictions.incrementAndGet(); }
+
+    // Closes all idle connections, used when the system shuts down.
+    public void closeIdleConnections() {
+        StatementCache cached;
+        while ((cached = idleConnections.poll()) != null) {
+            cached.close();
+        }
+    }
+
+    //a set of getter methods for pool statistics
+    public int getMaxSize() { return maxSize; }
+    public int getIdleCount() { return idleConnections.size(); }
+    public int getInUseCount() { return maxSize - permits.availablePermits(); }
+    public int getOpenedConnections() { return openedConnections.get(); }
+    public long getBorrowCount() { return borrowCount.get(); }
+    public long getTotalWaitNanos() { return totalWaitNanos.get(); }
+    public long getMaxWaitNanos() { return maxWaitNanos.get(); }
+    public long getInvalidConnections() { return invalidConnections.get(); }
+    public long getStatementHits() { return statementHits.get(); }
+    public long getStatementMisses() { return statementMisses.get(); }
+    public long getStatementEvictions() { return statementEvictions.get(); }
+
+    public double getAverageWaitMillis() {
+        long count = borrowCount.get();
+        return count == 0 ? 0 : totalWaitNanos.get() / 1_000_000.0 / count;
+    }
+
+    // A one-line summary of the pool statistics, e.g. for printing at shutdown
+    public String getStats() {
+        return String.format("ConnectionPool[max=%d, inUse=%d, idle=%d, opened=%d, invalid=%d, borrows=%d, avgWait=%.3fms, maxWait=%.3fms, "
+                        + "statements: hits=%d, misses=%d, evictions=%d]",
+                maxSize, getInUseCount(), getIdleCount(), getOpenedConnections(), getInvalidConnections(),
+                getBorrowCount(), getAverageWaitMillis(), maxWaitNanos.get() / 1_000_000.0,
+                getStatementHits(), getStatementMisses(), getStatementEvictions());
+    }
+}
@@ -4,13 +4,15 @@ import ci553.happyshop.catalogue.Product;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
 
 /**
  * The DatabaseRW interface defines the contract for interacting with the product database.
  * It is currently implemented by the DerbyRW class, which provides the actual functionality.
  *
  * Responsibilities:
- * - Searching for products by keyword or product ID.
+ * - Searching for products by keyword or product ID, or many product IDs at once.
  * - Performing stock updates and validations during purchases.
  * - Updating, deleting, or inserting products.
  * - Checking whether a product ID is available before insertion.
@@ -30,6 +32,7 @@ public interface DatabaseRW {
 
     /**
      * Searches for products by a keyword, which may match the product ID or appear in the description.
+     * In the description every word of the keyword must start a word, eg. "usb dri" finds "USB drive" but "rive" does not.
      *
      * @param keyword the keyword to search for
      * @return a list of products matching the keyword
@@ -44,6 +47,15 @@ public interface DatabaseRW {
      */
     Product searchByProductId(String productId) throws SQLException;
 
+    /**
+     * Searches for many products by their IDs at once, e.g. all products in a trolley.
+     * Implementations read them with as few queries as possible instead of one query per ID.
+     *
+     * @param productIds the product IDs, duplicates are ignored
+     * @return a map of product ID to product, in the order of productIds; IDs that were not found are absent
+     */
+    Map<String, Product> searchByProductIds(Collection<String> productIds) throws SQLException;
+
     /**
      * Attempts to purchase (reduce stocks of) the given list of products.
      * Behavior:
@@ -72,6 +84,7 @@ public interface DatabaseRW {
 
     /**
      * Inserts a new product into the database.
+     * Fails with an SQLException if the ID is already in use; the existing product is left unchanged.
      * @param id      the product ID
      * @param des     the product description
      * @param price   the product price
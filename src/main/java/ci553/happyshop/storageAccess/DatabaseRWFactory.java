@@ -1,12 +1,29 @@
 package ci553.happyshop.storageAccess;
 
+import ci553.happyshop.catalogue.Product;
+import ci553.happyshop.utility.Log;
+import ci553.happyshop.utility.StorageLocation;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 /**
  * The DatabaseRWFactory class centralizes database configuration and object creation.
  * It acts as a factory pattern to provide flexible instantiation of the DatabaseRW interface.
  *
  * Responsibilities:
  * - Holds the database URL used to connect to the database.
- * - Creates instances of DatabaseRW (e.g., DerbyRW, MySQLRW, SQLiteRW).
+ * - Creates instances of DatabaseRW (e.g., DerbyRW, MySQLRW, SQLiteRW),
+ *   or the shared InMemoryRW when databaseType is "memory".
+ * - Owns the ConnectionPool that is shared by all DatabaseRW instances it creates.
+ * - Owns the ProductCache that is shared by all DatabaseRW instances it creates.
+ * - Owns the ProductSearchIndex used by DerbyRW for searching product descriptions.
+ * - Creates AsyncDatabaseRW wrappers that run database calls on virtual threads.
  *
  * Benefits:
  * - Database Abstraction: Keeps the system decoupled from specific database implementations.
@@ -24,11 +41,119 @@ public class DatabaseRWFactory {
 
     public static String dbURL = "jdbc:derby:happyShopDB"; //or other database URL in the future (eg MySQLRW or SQLiteRW)
 
+    // "derby" (default) or "memory" for the InMemoryRW, eg -Dhappyshop.db=memory
+    public static String databaseType = System.getProperty("happyshop.db", "derby");
+    // Snapshot file of the InMemoryRW, loaded on startup and saved on shutdown; null keeps the data in memory only
+    public static Path inMemorySnapshotPath = StorageLocation.productSnapshotPath;
+
+    // Connection pool settings, change them before the first DatabaseRW is used.
+    public static int maxPoolSize = 10;                // maximum number of connections open at the same time
+    public static long poolBorrowTimeoutMillis = 5000; // how long a request waits for a free connection
+    public static int statementCacheSize = 32;         // PreparedStatements cached per pooled connection (LRU)
+
+    // Product cache settings
+    public static boolean productCacheEnabled = true;
+    public static int productCacheSize = 10000; // maximum number of cached products
+
+    private static ConnectionPool connectionPool; // shared by all DatabaseRW instances
+    private static ProductCache productCache;     // shared by all DatabaseRW instances
+    private static final ProductSearchIndex searchIndex = new ProductSearchIndex(); // shared by all DerbyRW instances
+    private static ExecutorService asyncExecutor; // one virtual thread per database call, shared by all AsyncDatabaseRW
+    private static InMemoryRW inMemoryRW;          // the one in-memory store, when databaseType is "memory"
+
+    /**
+     * Returns the connection pool shared by every DatabaseRW created by this factory,
+     * creating it on first use.
+     */
+    public static synchronized ConnectionPool getConnectionPool() {
+        if (connectionPool == null) {
+            connectionPool = new ConnectionPool(dbURL, maxPoolSize, poolBorrowTimeoutMillis, statementCacheSize);
+        }
+        return connectionPool;
+    }
+
+    // Returns the product cache shared by every DatabaseRW created by this factory, creating it on first use.
+    public static synchronized ProductCache getProductCache() {
+        if (productCache == null) {
+            productCache = new ProductCache(productCacheSize);
+        }
+        return productCache;
+    }
+
     /**
      * Creates an instance of DatabaseRW (currently returning DerbyRW, but can be modified to return other implementations).
+     * When the product cache is enabled, the DerbyRW is wrapped in a CachingDatabaseRW.
+     * When databaseType is "memory", the shared InMemoryRW is returned instead (it needs no cache).
      */
     public static DatabaseRW createDatabaseRW() {
-        return new DerbyRW(); // or other database implementations in the future (eg MySQLRW or SQLiteRW)
+        if ("memory".equalsIgnoreCase(databaseType)) {
+            return getInMemoryRW();
+        }
+        DatabaseRW database = new DerbyRW(getConnectionPool(), searchIndex); // or other database implementations in the future (eg MySQLRW or SQLiteRW)
+        if (productCacheEnabled) {
+            return new CachingDatabaseRW(database, getProductCache());
+        }
+        return database;
     }
-}
 
+    /**
+     * Returns the in-memory store shared by all clients, creating it on first use.
+     * It is loaded from the snapshot file if there is one, otherwise seeded from the Derby database
+     * (or left empty if that is not available), and saved back to the snapshot when the JVM exits.
+     */
+    public static synchronized InMemoryRW getInMemoryRW() {
+        if (inMemoryRW == null) {
+            inMemoryRW = new InMemoryRW();
+            Path snapshot = inMemorySnapshotPath;
+            try {
+                if (snapshot != null && Files.exists(snapshot)) {
+                    inMemoryRW.loadSnapshot(snapshot);
+                } else {
+                    List<Product> products = new DerbyRW(getConnectionPool(), searchIndex).readAllProducts();
+                    inMemoryRW = new InMemoryRW(products);
+                    Log.info(() -> "In-memory database seeded with " + products.size() + " products from " + dbURL);
+                }
+            } catch (IOException | SQLException e) {
+                Log.warn(() -> "In-memory database starts empty: " + e.getMessage());
+            }
+            if (snapshot != null) {
+                InMemoryRW store = inMemoryRW;
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> saveSnapshot(store, snapshot)));
+            }
+        }
+        return inMemoryRW;
+    }
+
+    private static void saveSnapshot(InMemoryRW store, Path snapshot) {
+        try {
+            store.saveSnapshot(snapshot);
+        } catch (IOException e) {
+            Log.error("Failed to save the in-memory database to " + snapshot, e);
+        }
+    }
+
+    /**
+     * Creates the asynchronous version of a DatabaseRW, used by the client models so that
+     * the JavaFX application thread never blocks on JDBC.
+     */
+    public static synchronized AsyncDatabaseRW createAsyncDatabaseRW(DatabaseRW databaseRW) {
+        if (asyncExecutor == null) {
+            asyncExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        }
+        return new VirtualThreadDatabaseRW(databaseRW, asyncExecutor);
+    }
+
+    // Prints the pool and cache statistics and closes the idle pooled connections, called when the system shuts down.
+    public static synchronized void shutdown() {
+        if (asyncExecutor != null) {
+            asyncExecutor.shutdown(); // no new calls, running calls finish
+        }
+        if (productCache != null) {
+            Log.info(productCache.getStats());
+        }
+        if (connectionPool != null) {
+            Log.info(connectionPool.getStats());
+            connectionPool.closeIdleConnections();
+        }
+    }
+}
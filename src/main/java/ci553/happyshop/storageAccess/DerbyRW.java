@@ -1,10 +1,17 @@
 package ci553.happyshop.storageAccess;
 
 import ci553.happyshop.catalogue.Product;
+import ci553.happyshop.utility.Log;
 
 import java.sql.*;
 import java.util.ArrayList;
-import java.util.concurrent.locks.Lock;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.locks.ReentrantLock;
 
 /** ProductTable definition
@@ -19,8 +26,20 @@ import java.util.concurrent.locks.ReentrantLock;
  */
 
 public class DerbyRW implements DatabaseRW {
-    private static String dbURL = DatabaseRWFactory.dbURL; // Shared by all instances
-    private  Lock lock = new ReentrantLock(); // Each instance has its own lock
+    // Number of "?" in the IN (...) list used to read several products by ID in one query.
+    // Unused places are filled with NULL, so the SQL text (and its cached statement) never changes.
+    private static final int ID_BATCH_SIZE = 50;
+
+    private final ConnectionPool connectionPool;    // Shared by all instances created by DatabaseRWFactory
+    private final ProductSearchIndex searchIndex;   // Shared by all instances created by DatabaseRWFactory
+    // Shared by all instances in the process, one lock per stripe of products.
+    // Used by the warehouse write methods; purchaseStocks relies on its conditional UPDATE instead.
+    private static final StripedProductLock productLocks = new StripedProductLock(64);
+
+    public DerbyRW(ConnectionPool connectionPool, ProductSearchIndex searchIndex) {
+        this.connectionPool = connectionPool;
+        this.searchIndex = searchIndex;
+    }
 
     //search product by product Id or name, return a list of products or null
     //search by Id at first, if get null, search by product name
@@ -39,7 +58,7 @@ public class DerbyRW implements DatabaseRW {
 
         // If still no products found, print a message
         if (productList.isEmpty()) {
-            System.out.println("Product " + keyword + " not found.");
+            Log.debug(() -> "Product " + keyword + " not found.");
         }
         return productList;
     }
@@ -49,52 +68,134 @@ public class DerbyRW implements DatabaseRW {
         Product product = null;
         String query = "SELECT * FROM ProductTable WHERE productID = ?";
 
-        try (Connection conn = DriverManager.getConnection(dbURL);
-             PreparedStatement pstmt = conn.prepareStatement(query)) {
+        try (PooledConnection pc = connectionPool.borrow()) {
+            PreparedStatement pstmt = pc.prepareStatement(query); // cached statement, not closed here
             // Set the productId parameter
             pstmt.setString(1, proId);
 
             try (ResultSet rs = pstmt.executeQuery()) {
                 if (rs.next()){
                     product= makeProObjFromDbRecord(rs);
-                    System.out.println("Product " + proId + " found.");
+                    Log.debug(() -> "Product " + proId + " found.");
                 }else{
-                    System.out.println("Product " + proId + " not found.");
+                    Log.debug(() -> "Product " + proId + " not found.");
                 }
 
             }
         } catch (SQLException e) {
-            e.printStackTrace();
+            Log.error("Database query error, search by ID: " + proId, e);
         }
         return product;
     }
 
     //helper method
     //search  by product name, return a List of products or null
+    //the matching IDs come from the in-memory ProductSearchIndex (every word of name matched as a prefix),
+    //then the products are read by primary key, so no full table scan is needed
     private ArrayList<Product> searchByProName(String name) {
         ArrayList<Product> productList = new ArrayList<>();
-        String query = "SELECT * FROM ProductTable WHERE LOWER(description) LIKE LOWER(?)";
 
-        try (Connection conn = DriverManager.getConnection(dbURL);
-             PreparedStatement stmt = conn.prepareStatement(query)) {
+        try {
+            ensureSearchIndexLoaded();
+            List<String> matchingIds = searchIndex.search(name);
+            productList.addAll(searchByProductIds(matchingIds).values()); // Add all matching products to list
+
+            if (productList.isEmpty()) {
+                Log.debug(() -> "Product " + name + " not found.");
+            }
+        } catch (SQLException e) {
+            Log.warn(() -> "Database query error, search by name: " + name + " " + e.getMessage());
+        }
+
+        return productList; // could be empty if no matches
+    }
+
+    //search many products by Id at once, eg. the whole trolley
+    //reads ID_BATCH_SIZE products per query with "productID IN (?, ?, ...)", so 50 IDs cost one query
+    //returns the products found in the order of the ID list
+    public Map<String, Product> searchByProductIds(Collection<String> productIds) throws SQLException {
+        Map<String, Product> productMap = new LinkedHashMap<>();
+        List<String> ids = new ArrayList<>(new LinkedHashSet<>(productIds)); // without duplicates
+        if (ids.isEmpty()) {
+            return productMap;
+        }
+        String query = "SELECT * FROM ProductTable WHERE productID IN (" +
+                "?, ".repeat(ID_BATCH_SIZE - 1) + "?)";
+
+        Map<String, Product> found = new HashMap<>();
+        try (PooledConnection pc = connectionPool.borrow()) {
+            PreparedStatement stmt = pc.prepareStatement(query); // cached statement, not closed here
+            for (int start = 0; start < ids.size(); start += ID_BATCH_SIZE) {
+                for (int i = 0; i < ID_BATCH_SIZE; i++) {
+                    if (start + i < ids.size()) {
+                        stmt.setString(i + 1, ids.get(start + i));
+                    } else {
+                        stmt.setNull(i + 1, Types.CHAR); // fill unused places, NULL never matches
+                    }
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        Product product = makeProObjFromDbRecord(rs);
+                        found.put(product.getProductId(), product);
+                    }
+                }
+            }
+        }
+        for (String id : ids) {
+            Product product = found.get(id);
+            if (product != null) {
+                productMap.put(id, product);
+            }
+        }
+        return productMap;
+    }
 
-            stmt.setString(1, "%" + name.toLowerCase() + "%");
+    //helper method
+    //loads all product descriptions into the shared search index the first time it is needed
+    private void ensureSearchIndexLoaded() throws SQLException {
+        if (searchIndex.isLoaded()) {
+            return;
+        }
+        synchronized (searchIndex) {
+            boolean loaded = searchIndex.isLoaded();
+            while (!loaded) {
+                // a write between reading the table and loading makes load() refuse, so read again
+                long modificationCount = searchIndex.getModificationCount();
+                loaded = searchIndex.load(readAllDescriptions(), modificationCount);
+            }
+        }
+    }
 
+    //helper method
+    //reads the ID and description of every product, used to build the search index
+    private Map<String, String> readAllDescriptions() throws SQLException {
+        Map<String, String> descriptions = new HashMap<>();
+        String query = "SELECT productID, description FROM ProductTable";
+        try (PooledConnection pc = connectionPool.borrow()) {
+            PreparedStatement stmt = pc.prepareStatement(query); // cached statement, not closed here
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
-                    productList.add(makeProObjFromDbRecord(rs)); // Add all matching products to list
+                    descriptions.put(rs.getString("productID"), rs.getString("description"));
                 }
+            }
+        }
+        Log.info(() -> "Search index loaded: " + descriptions.size() + " products.");
+        return descriptions;
+    }
 
-                if (productList.isEmpty()) {
-                    System.out.println("Product " + name + " not found.");
+    //reads every product, used to seed the InMemoryRW when it has no snapshot yet
+    List<Product> readAllProducts() throws SQLException {
+        List<Product> productList = new ArrayList<>();
+        String query = "SELECT * FROM ProductTable";
+        try (PooledConnection pc = connectionPool.borrow()) {
+            PreparedStatement stmt = pc.prepareStatement(query); // cached statement, not closed here
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    productList.add(makeProObjFromDbRecord(rs));
                 }
             }
-
-        } catch (SQLException e) {
-            System.out.println("Database query error, search by name: " + name + " " + e.getMessage());
         }
-
-        return productList; // could be empty if no matches
+        return productList;
     }
 
     //make a Product object from the database record
@@ -107,91 +208,100 @@ public class DerbyRW implements DatabaseRW {
         int inStock = rs.getInt("inStock");
         product =new Product(productId,description,imagePath,unitPrice,inStock);
 
-        // Show product details
-        System.out.println("Product ID: " + productId);
-        System.out.println("Description: " + description);
-        System.out.println("Image: " + imagePath);
-        System.out.println("unitPrice: " + unitPrice);
-
-        // Check availability and display message
-        if(inStock <= 0){
-            System.out.println("Product " + productId+ " is NOT in stock");
-        }
-        else if(inStock < 10) {
-            System.out.println("Product " + productId+ "low stock warning!" + inStock + " units left.");
-        }
-        else {
-            System.out.println("Product " + productId+ " is available");
-        }
-
-        System.out.println("-----"); // Divider for readability
+        // Show product details, only built when debug logging is enabled (this runs for every row)
+        Log.debug(() -> {
+            String availability;
+            // Check availability and display message
+            if (inStock <= 0) {
+                availability = "Product " + productId + " is NOT in stock";
+            } else if (inStock < 10) {
+                availability = "Product " + productId + " low stock warning! " + inStock + " units left.";
+            } else {
+                availability = "Product " + productId + " is available";
+            }
+            return "Product ID: " + productId + "\n" +
+                    "Description: " + description + "\n" +
+                    "Image: " + imagePath + "\n" +
+                    "unitPrice: " + unitPrice + "\n" +
+                    availability + "\n" +
+                    "-----"; // Divider for readability
+        });
         return product;
     }
 
+    //helper method
+    //describes the current row of a ProductTable ResultSet, used for debug output of the warehouse writes
+    private static String describeRecord(ResultSet rs) throws SQLException {
+        return "ID: " + rs.getString("productID") + "\n" +
+                "Description: " + rs.getString("description") + "\n" +
+                "Unit Price: " + rs.getDouble("unitPrice") + "\n" +
+                "Stock: " + rs.getInt("inStock") + "\n" +
+                "Image: " + rs.getString("image");
+    }
+
+    /**
+     * Reduces the stock of every product in one transaction.
+     *
+     * Each line is a single conditional statement,
+     *     UPDATE ProductTable SET inStock = inStock - ? WHERE productID = ? AND inStock >= ?
+     * so the stock check and the change happen atomically inside the database: a line whose update count
+     * is 0 did not have enough stock (or the product no longer exists).
+     * All lines are sent as one batch; if any line fails, the whole transaction is rolled back
+     * and all insufficient products are returned.
+     *
+     * Because the database does the check, no read-then-write race exists and no Java-side lock is needed.
+     * The lines are updated in product ID order, so two purchases always lock their rows in the same order
+     * and can not deadlock each other.
+     *
+     * @throws SQLException if the purchase could not be done; nothing was bought then
+     */
     public ArrayList<Product> purchaseStocks(ArrayList<Product> proList) throws SQLException {
-        lock.lock();  // Lock the critical section to prevent concurrent access
         ArrayList<Product> insufficientProducts = new ArrayList<>();
 
-        String checkSql = "SELECT inStock FROM ProductTable WHERE productId = ?";
-        String updateSql = "UPDATE ProductTable SET inStock = inStock - ? WHERE productId = ?";
+        String updateSql = "UPDATE ProductTable SET inStock = inStock - ? WHERE productID = ? AND inStock >= ?";
 
-        // Use try-with-resources for Connection and PreparedStatements
-        try (Connection conn = DriverManager.getConnection(dbURL)) {
+        // Use try-with-resources for the pooled connection, the PreparedStatement is cached on it
+        try (PooledConnection pc = connectionPool.borrow()) {
+            Connection conn = pc.getConnection();
             conn.setAutoCommit(false); // Turn off auto-commit for transaction
 
-            // Use a second try-with-resources for the PreparedStatements
-            try (PreparedStatement checkStmt = conn.prepareStatement(checkSql);
-                 PreparedStatement updateStmt = conn.prepareStatement(updateSql)) {
-
-                boolean allSufficient = true; // Flag to track if all products have sufficient stock
-
-                for (Product product : proList) {
-                    checkStmt.setString(1, product.getProductId());
-                    ResultSet rs = checkStmt.executeQuery();
-
-                    if (rs.next()) {
-                        int currentStock = rs.getInt("inStock");
-                        int newStock = currentStock - product.getOrderedQuantity();
-
-                        // Debugging: Print values before update
-                        System.out.println("Product ID: " + product.getProductId());
-                        System.out.println("Before change: " + currentStock);
-                        System.out.println("Quantity Ordered: " + product.getOrderedQuantity());
-
-                        if (newStock >= 0) { // Ensure stock doesn't go negative
-                            updateStmt.setInt(1, product.getOrderedQuantity());
-                            updateStmt.setString(2, product.getProductId());
-                            updateStmt.addBatch();
-
-                            // Debugging: Print values after update
-                            System.out.println("After change: " + newStock);
-                            System.out.println("Update successful for Product ID: " + product.getProductId());
-                        } else {
-                            insufficientProducts.add(product);
-                            allSufficient = false; // Mark that there's at least one insufficient product
-                            System.out.println("Not enough stock for Product ID: " + product.getProductId());
-                        }
-                        System.out.println("--------------------------------");
+            ArrayList<Product> lines = new ArrayList<>(proList);
+            lines.sort(Comparator.comparing(Product::getProductId));
+            try {
+                PreparedStatement updateStmt = pc.prepareStatement(updateSql);
+                for (Product product : lines) {
+                    updateStmt.setInt(1, product.getOrderedQuantity());
+                    updateStmt.setString(2, product.getProductId());
+                    updateStmt.setInt(3, product.getOrderedQuantity());
+                    updateStmt.addBatch();
+                }
+                int[] updateCounts = updateStmt.executeBatch();
+
+                for (int i = 0; i < updateCounts.length; i++) {
+                    Product product = lines.get(i);
+                    if (updateCounts[i] == 0) { // the condition inStock >= quantity did not hold
+                        insufficientProducts.add(product);
+                        Log.debug(() -> "Not enough stock for Product ID: " + product.getProductId());
+                    } else {
+                        Log.debug(() -> "Update successful for Product ID: " + product.getProductId()
+                                + ", quantity ordered: " + product.getOrderedQuantity());
                     }
                 }
 
-                if (allSufficient) {
-                    // If all products have sufficient stock, execute the batch and commit
-                    updateStmt.executeBatch();
+                if (insufficientProducts.isEmpty()) {
                     conn.commit();  // Commit all updates if all updates succeed
-                    System.out.println("Database update successful.");
+                    Log.debug("Database update successful.");
                 } else {
                     // If there's insufficient stock for any product, rollback the entire transaction
                     conn.rollback();
-                    System.out.println("Insufficient stock for some products, all updates rolled back.");
+                    Log.debug("Insufficient stock for some products, all updates rolled back.");
                 }
 
             } catch (SQLException e) {
                 conn.rollback();  // Rollback if anything failed inside
-                System.out.println("Database update error, update failed");
+                Log.error("Database update error, update failed", e);
+                throw e; // an empty list would tell the caller that everything was bought
             }
-        } finally {
-            lock.unlock(); // Always release the lock after the operation
         }
 
         return insufficientProducts;
@@ -200,7 +310,7 @@ public class DerbyRW implements DatabaseRW {
 
     //warehouse edits an existing product
     public void updateProduct(String id, String des, double price, String iName, int stock) throws SQLException {
-        lock.lock();
+        List<ReentrantLock> held = productLocks.lock(id);
         String selectSql = "SELECT * FROM ProductTable WHERE productID = ?";
         String updateSql = "UPDATE ProductTable SET " +
                 "description = ?, " +
@@ -209,22 +319,19 @@ public class DerbyRW implements DatabaseRW {
                 "inStock = ? " +
                 "WHERE productID = ?";
 
-        try (Connection conn = DriverManager.getConnection(dbURL);
-             PreparedStatement selectStmt = conn.prepareStatement(selectSql);
-             PreparedStatement updateStmt = conn.prepareStatement(updateSql)) {
+        try (PooledConnection pc = connectionPool.borrow()) {
+            PreparedStatement selectStmt = pc.prepareStatement(selectSql); // cached statements, not closed here
+            PreparedStatement updateStmt = pc.prepareStatement(updateSql);
 
-            // Print Before Update
+            // Check the product exists, print it before update
             selectStmt.setString(1, id);
             try (ResultSet rs = selectStmt.executeQuery()) {
                 if (rs.next()) {
-                    System.out.println("Before Update:");
-                    System.out.println("ID: " + rs.getString("productID"));
-                    System.out.println("Description: " + rs.getString("description"));
-                    System.out.println("Unit Price: " + rs.getDouble("unitPrice"));
-                    System.out.println("Stock: " + rs.getInt("inStock"));
-                    System.out.println("Image: " + rs.getString("image"));
+                    if (Log.isDebugEnabled()) {
+                        Log.debug("Before Update:\n" + describeRecord(rs));
+                    }
                 } else {
-                    System.out.println("Product not found: " + id);
+                    Log.warn(() -> "Product not found: " + id);
                     return; // Exit if product doesn't exist
                 }
             }
@@ -236,46 +343,42 @@ public class DerbyRW implements DatabaseRW {
             updateStmt.setInt(4, stock);
             updateStmt.setString(5, id);
             updateStmt.executeUpdate();
+            searchIndex.put(id, des); // keep the search index in step with the new description
 
-            // Print After Update
-            try (ResultSet rs = selectStmt.executeQuery()) {
-                if (rs.next()) {
-                    System.out.println("After Update:");
-                    System.out.println("ID: " + rs.getString("productID"));
-                    System.out.println("Description: " + rs.getString("description"));
-                    System.out.println("Unit Price: " + rs.getDouble("unitPrice"));
-                    System.out.println("Stock: " + rs.getInt("inStock"));
-                    System.out.println("image: " + rs.getString("image"));
+            // Print After Update, the extra query only runs when debug logging is enabled
+            if (Log.isDebugEnabled()) {
+                try (ResultSet rs = selectStmt.executeQuery()) {
+                    if (rs.next()) {
+                        Log.debug("After Update:\n" + describeRecord(rs));
+                    }
                 }
             }
         }
         finally {
-            lock.unlock(); // Always release the lock after the operation
+            productLocks.unlockAll(held); // Always release the lock after the operation
         }
     }
 
 //warehouse delete an existing product
     public void deleteProduct(String proId) throws SQLException {
-        lock.lock();
+        List<ReentrantLock> held = productLocks.lock(proId);
         String selectSql = "SELECT * FROM ProductTable WHERE productID = ?";
         String deleteSql = "DELETE FROM ProductTable WHERE productID = ?";
 
-        try (Connection conn = DriverManager.getConnection(dbURL);
-             PreparedStatement selectStmt = conn.prepareStatement(selectSql);
-             PreparedStatement deleteStmt = conn.prepareStatement(deleteSql)) {
-            conn.setAutoCommit(true); // Set auto-commit to true immediately
+        try (PooledConnection pc = connectionPool.borrow()) {
+            PreparedStatement selectStmt = pc.prepareStatement(selectSql); // cached statements, not closed here
+            PreparedStatement deleteStmt = pc.prepareStatement(deleteSql);
+            // pooled connections are always handed out with auto-commit on
 
             // print product details before deletion
             selectStmt.setString(1, proId);
             try (ResultSet rs = selectStmt.executeQuery()) {
                 if (rs.next()) {
-                    System.out.println("Before delete:");
-                    System.out.println("ID: " + rs.getString("productID"));
-                    System.out.println("Description: " + rs.getString("description"));
-                    System.out.println("Unit Price: " + rs.getDouble("unitPrice"));
-                    System.out.println("Stock: " + rs.getInt("inStock"));
+                    if (Log.isDebugEnabled()) {
+                        Log.debug("Before delete:\n" + describeRecord(rs));
+                    }
                 } else {
-                    System.out.println("Product not found: " + proId);
+                    Log.warn(() -> "Product not found: " + proId);
                     return; // Exit if product does not exist
                 }
             }
@@ -283,11 +386,12 @@ public class DerbyRW implements DatabaseRW {
             // delete from database
             deleteStmt.setString(1, proId);
             deleteStmt.executeUpdate();
-            System.out.println("Product " + proId + " deleted from database.");
+            searchIndex.remove(proId);
+            Log.info(() -> "Product " + proId + " deleted from database.");
         }
 
         finally {
-            lock.unlock(); // Always release the lock after the operation
+            productLocks.unlockAll(held); // Always release the lock after the operation
         }
     }
 
@@ -296,32 +400,33 @@ public class DerbyRW implements DatabaseRW {
     public boolean isProIdAvailable(String proId) throws SQLException {
         String query = "SELECT COUNT(*) FROM ProductTable WHERE productID = ?";
                              //the count of records that match the given proId.
-        try (Connection conn = DriverManager.getConnection(dbURL);
-             PreparedStatement stmt = conn.prepareStatement(query)) {
+        try (PooledConnection pc = connectionPool.borrow()) {
+            PreparedStatement stmt = pc.prepareStatement(query); // cached statement, not closed here
             stmt.setString(1, proId);
-            ResultSet rs = stmt.executeQuery();
-            // the rs is the COUNT(*) result (a single number): how many records that match the given proId.
-            // If count > 0, the ID is already in the database, so it's not available, return false
-            // If count = 0, the ID is available, return true
-            if (rs.next()) { // Move cursor to the first (and only) row
-                int count = rs.getInt(1); // Get the first column value (the count)
-                if (count == 0) return true;
-                else return false;
+            try (ResultSet rs = stmt.executeQuery()) {
+                // the rs is the COUNT(*) result (a single number): how many records that match the given proId.
+                // If count > 0, the ID is already in the database, so it's not available, return false
+                // If count = 0, the ID is available, return true
+                if (rs.next()) { // Move cursor to the first (and only) row
+                    int count = rs.getInt(1); // Get the first column value (the count)
+                    if (count == 0) return true;
+                    else return false;
+                }
+                return false; // Default case (should not happen)
             }
-            return false; // Default case (should not happen)
         }
     }
 
     //   /images/0001TV.jpg
     //warehouse adds a new product to database
     public void insertNewProduct(String id, String des,double price,String image,int stock) throws SQLException {
-        lock.lock();
+        List<ReentrantLock> held = productLocks.lock(id);
         String insertSql = "INSERT INTO ProductTable VALUES(?, ?, ?, ?, ?)";
         String selectSql = "SELECT * FROM ProductTable WHERE productID = ?";
-        try (Connection conn = DriverManager.getConnection(dbURL);
-        PreparedStatement insertStmt = conn.prepareStatement(insertSql);
-        PreparedStatement selectStmt = conn.prepareStatement(selectSql)) {
-            conn.setAutoCommit(true); // Set auto-commit to true immediately
+        try (PooledConnection pc = connectionPool.borrow()) {
+            // pooled connections are always handed out with auto-commit on
+            PreparedStatement insertStmt = pc.prepareStatement(insertSql); // cached statements, not closed here
+            PreparedStatement selectStmt = pc.prepareStatement(selectSql);
             insertStmt.setString(1, id);
             insertStmt.setString(2, des);
             insertStmt.setDouble(3, price);
@@ -329,17 +434,18 @@ public class DerbyRW implements DatabaseRW {
             insertStmt.setInt(5, stock);
             selectStmt.setString(1, id);
             insertStmt.executeUpdate();
-            ResultSet rs = selectStmt.executeQuery();
-            if (rs.next()) { //print the inserted record
-                System.out.println("Insert successful for Product ID: \" + id");
-                System.out.println("ID: " + rs.getString("productID"));
-                System.out.println("Description: " + rs.getString("description"));
-                System.out.println("Unit Price: " + rs.getDouble("unitPrice"));
-                System.out.println("Stock: " + rs.getInt("inStock"));
+            searchIndex.put(id, des);
+            Log.info(() -> "Insert successful for Product ID: " + id);
+            if (Log.isDebugEnabled()) { //print the inserted record, the extra query only runs in debug
+                try (ResultSet rs = selectStmt.executeQuery()) {
+                    if (rs.next()) {
+                        Log.debug(describeRecord(rs));
+                    }
+                }
             }
         }
         finally {
-            lock.unlock(); // Always release the lock after the operation
+            productLocks.unlockAll(held); // Always release the lock after the operation
         }
     }
 
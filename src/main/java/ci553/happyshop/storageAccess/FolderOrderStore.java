@@ -0,0 +1,334 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.orderManagement.OrderState;
+import ci553.happyshop.orderManagement.OrderSummary;
+import ci553.happyshop.utility.Log;
+import ci553.happyshop.utility.StorageLocation;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+/**
+ * FolderOrderStore keeps one text file per order, e.g. orders/ordered/12.txt,
+ * and moves it to orders/progressing and orders/collected as the state changes.
+ * This is the original storage of the system; the file operations are done by OrderFileManager.
+ *
+ * The state of every order is also kept in a memory-mapped OrderIndex (orders/orderIndex.dat),
+ * so finding an order's folder and loading the active orders at startup need no folder listing.
+ * The index slot is written before the order file is created or moved, so a crash in between can leave
+ * the index ahead of the file, but never an order file that startup does not see. readOrder looks in the
+ * other folders when the file is not where the index says, and recovery mode clears index entries whose
+ * file it does not find.
+ * If the index is empty while the folders hold orders (eg. orders made before the index existed),
+ * it is rebuilt once by listing the folders.
+ *
+ * Recovery mode (recoveryScan, -Dhappyshop.recoverOrders=true) does not trust the index at startup:
+ * forEachActiveOrder walks the ordered and progressing folders in parallel (OrderFolderRecovery),
+ * repairs State: headers that do not match their folder, corrects the index and streams the orders
+ * to OrderHub as they are found. The time taken and the number of repaired files are logged.
+ *
+ * Archiving (startArchiver): a background thread packs collected order files that are older than a
+ * minimum age into compressed day segments under orders/archive (see OrderArchive), so the collected folder
+ * stays small. readOrder() finds an archived order through OrderFileManager.readOrderFileOrArchive.
+ *
+ * It is the default OrderStore (see OrderStoreFactory).
+ */
+
+public class FolderOrderStore implements OrderStore {
+    private final Path orderedPath;
+    private final Path progressingPath;
+    private final Path collectedPath;
+    private final Path archivePath;
+    private final OrderIndex index;
+    private final boolean recoveryScan;
+    private final int recoveryThreads;
+    private ScheduledExecutorService archiver; // null until startArchiver()
+
+    // ordersRoot is the folder holding the ordered, progressing and collected folders, eg. orders
+    public FolderOrderStore(Path ordersRoot) throws IOException {
+        this(ordersRoot, false, 1);
+    }
+
+    // recoveryScan: check the folders against the index at startup, with recoveryThreads threads checking files
+    public FolderOrderStore(Path ordersRoot, boolean recoveryScan, int recoveryThreads) throws IOException {
+        this.recoveryScan = recoveryScan;
+        this.recoveryThreads = recoveryThreads;
+        orderedPath = ordersRoot.resolve("ordered");
+        progressingPath = ordersRoot.resolve("progressing");
+        collectedPath = ordersRoot.resolve("collected");
+        archivePath = ordersRoot.resolve("archive");
+        index = new OrderIndex(ordersRoot.resolve(StorageLocation.orderIndexFile));
+    }
+
+    public void createOrder(int orderId, String orderDetail) throws IOException {
+        index.put(orderId, new OrderIndex.Slot(OrderState.Ordered, 0, 0, System.currentTimeMillis(), 0, 0));
+        OrderFileManager.createOrderFile(orderedPath, orderId, orderDetail);
+    }
+
+    // The index slot is written before the file is moved, as in createOrder(), and put back if the move fails
+    public boolean changeOrderState(int orderId, OrderState newState) throws IOException {
+        Path sourcePath;
+        switch (newState) {
+            case Progressing:
+                sourcePath = orderedPath;
+                break;
+            case Collected:
+                sourcePath = progressingPath;
+                break;
+            case Ordered: // a picker's claim expired, the order goes back to the queue
+                sourcePath = progressingPath;
+                break;
+            default:
+                return false;
+        }
+        OrderIndex.Slot oldSlot = index.get(orderId);
+        OrderIndex.Slot slot = oldSlot != null ? oldSlot
+                : new OrderIndex.Slot(newState, 0, 0, 0, 0, 0); // an order the index did not know yet
+        index.put(orderId, slot.withState(newState, System.currentTimeMillis()));
+        boolean moved = false;
+        try {
+            moved = OrderFileManager.updateAndMoveOrderFile(orderId, newState, sourcePath, folderOf(newState));
+        } finally {
+            if (!moved) {
+                if (oldSlot != null) {
+                    index.put(orderId, oldSlot);
+                } else {
+                    index.remove(orderId);
+                }
+            }
+        }
+        return moved;
+    }
+
+    // The index tells which folder the order is in. If the file is not there (eg. a crash came between
+    // writing the slot and moving the file) or the index has no entry, the folders are tried one by one.
+    public String readOrder(int orderId) throws IOException {
+        OrderState state = index.getState(orderId);
+        if (state != null) {
+            try {
+                return state == OrderState.Collected
+                        ? OrderFileManager.readOrderFileOrArchive(collectedPath, archivePath, orderId)
+                        : OrderFileManager.readOrderFile(folderOf(state), orderId);
+            } catch (IOException e) {
+                Log.warn(() -> "Order " + orderId + " is not in the " + state + " folder, looking in the others");
+            }
+        }
+        for (Path dir : List.of(progressingPath, orderedPath, collectedPath)) {
+            if (Files.exists(dir.resolve(orderId + ".txt"))) {
+                return OrderFileManager.readOrderFile(dir, orderId);
+            }
+        }
+        String archived = OrderFileManager.readArchivedOrder(archivePath, orderId);
+        if (archived != null) {
+            return archived;
+        }
+        throw new IOException("Order file not found: " + orderId);
+    }
+
+    // The times are those of the index; orders added by a rebuild or a recovery have none
+    @Override
+    public OrderSummary getOrderSummary(int orderId) {
+        return index.getSummary(orderId);
+    }
+
+    @Override
+    public List<OrderSummary> loadOrderSummaries(long collectedSince) {
+        return index.summariesSince(collectedSince);
+    }
+
+    public Map<Integer, OrderState> loadActiveOrders() throws IOException {
+        if (index.size() == 0) {
+            rebuildIndex();
+        }
+        return index.activeOrders();
+    }
+
+    // In recovery mode the orders come from the folders as they are walked, otherwise from the index
+    @Override
+    public void forEachActiveOrder(BiConsumer<Integer, OrderState> consumer) throws IOException {
+        if (!recoveryScan) {
+            loadActiveOrders().forEach(consumer);
+            return;
+        }
+        Map<OrderState, Path> folders = new EnumMap<>(OrderState.class);
+        folders.put(OrderState.Ordered, orderedPath);
+        folders.put(OrderState.Progressing, progressingPath);
+        if (index.size() == 0) {
+            folders.put(OrderState.Collected, collectedPath); // the index is rebuilt on the way
+        }
+        OrderFolderRecovery.Result result = new OrderFolderRecovery(folders, index, consumer).run(recoveryThreads);
+        int cleared = clearMissingActiveOrders();
+        Log.info(() -> "Order folders recovered in " + result.elapsedMillis() + " ms: " + result.activeOrders()
+                + " active orders, " + result.orders() + " files checked, " + result.repairedFiles() + " repaired, "
+                + cleared + " index entries without a file cleared");
+    }
+
+    /**
+     * After a recovery walk, every Ordered or Progressing order in the index should have its file in that
+     * folder (the walk has put each file it found in the index with the state of its folder).
+     * An order whose file is in the collected folder is marked Collected; one with no file at all is taken
+     * out of the index, so it is not loaded again at the next startup.
+     * @return the number of index entries corrected
+     */
+    private int clearMissingActiveOrders() throws IOException {
+        int cleared = 0;
+        for (Map.Entry<Integer, OrderState> entry : index.activeOrders().entrySet()) {
+            int orderId = entry.getKey();
+            if (Files.exists(folderOf(entry.getValue()).resolve(orderId + ".txt"))) {
+                continue;
+            }
+            OrderIndex.Slot slot = index.get(orderId);
+            if (slot != null && Files.exists(collectedPath.resolve(orderId + ".txt"))) {
+                index.put(orderId, slot.withState(OrderState.Collected, System.currentTimeMillis()));
+            } else {
+                index.remove(orderId);
+            }
+            Log.warn(() -> "Order " + orderId + " is in the index as " + entry.getValue() + " but its file is not there");
+            cleared++;
+        }
+        return cleared;
+    }
+
+    // Fills the empty index from the order files in the three folders
+    private void rebuildIndex() throws IOException {
+        Map<OrderState, Path> folders = new EnumMap<>(OrderState.class);
+        for (OrderState state : OrderState.values()) {
+            folders.put(state, folderOf(state));
+        }
+        OrderFolderRecovery.Result result = new OrderFolderRecovery(folders, index, (orderId, state) -> {})
+                .run(Math.max(1, recoveryThreads));
+        if (result.orders() > 0) {
+            Log.info(() -> "Order index rebuilt from the order folders: " + result.orders() + " orders in "
+                    + result.elapsedMillis() + " ms, " + result.repairedFiles() + " repaired");
+        }
+    }
+
+    private Path folderOf(OrderState state) {
+        return switch (state) {
+            case Ordered -> orderedPath;
+            case Progressing -> progressingPath;
+            case Collected -> collectedPath;
+        };
+    }
+
+    /**
+     * Starts a background thread that every intervalMillis archives the collected order files
+     * last changed at least minAgeMillis ago, up to maxOrdersPerRun files per run.
+     */
+    public synchronized void startArchiver(long intervalMillis, long minAgeMillis, int maxOrdersPerRun) {
+        if (archiver != null) {
+            return;
+        }
+        archiver = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "OrderArchiver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        archiver.scheduleWithFixedDelay(() -> {
+            try {
+                archiveCollectedOrders(minAgeMillis, maxOrdersPerRun);
+            } catch (IOException | RuntimeException e) {
+                Log.error("Archiving collected orders failed", e); // the files stay, the next run tries again
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // Archives the collected order files last changed at least minAgeMillis ago, returns how many
+    public int archiveCollectedOrders(long minAgeMillis, int maxOrders) throws IOException {
+        return OrderFileManager.archiveCollectedOrders(collectedPath, archivePath, minAgeMillis, maxOrders);
+    }
+
+    // The orders already are in folders, so exporting somewhere else copies the loose files
+    // and writes the archived orders back out as files.
+    public int exportToFolders(Path ordersRoot) throws IOException {
+        int count = 0;
+        for (Path dir : List.of(orderedPath, progressingPath, collectedPath)) {
+            Path targetDir = ordersRoot.resolve(dir.getFileName());
+            boolean sameFolder = Files.exists(targetDir) && Files.isSameFile(dir, targetDir);
+            Files.createDirectories(targetDir);
+            for (Integer orderId : orderIdsLoader(dir)) {
+                String orderFileName = orderId + ".txt";
+                if (!sameFolder) {
+                    Files.copy(dir.resolve(orderFileName), targetDir.resolve(orderFileName), StandardCopyOption.REPLACE_EXISTING);
+                }
+                count++;
+            }
+        }
+        Path targetCollected = ordersRoot.resolve(collectedPath.getFileName());
+        if (Files.isSameFile(collectedPath, targetCollected)) {
+            return count; // archived orders stay archived in their own store
+        }
+        int[] archived = {0};
+        IOException[] failure = {null};
+        OrderFileManager.archiveOf(archivePath).forEachOrder((orderId, orderDetail) -> {
+            Path target = targetCollected.resolve(orderId + ".txt");
+            try {
+                if (Files.notExists(target)) {
+                    Files.writeString(target, orderDetail + System.lineSeparator());
+                }
+                archived[0]++;
+            } catch (IOException e) {
+                failure[0] = e;
+            }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        return count + archived[0];
+    }
+
+    // every change is already written to its own file, only the index is left to write to disk
+    public void close() throws IOException {
+        synchronized (this) {
+            if (archiver != null) {
+                archiver.shutdownNow();
+            }
+        }
+        index.close();
+    }
+
+    // Loads a list of order IDs from the specified directory.
+    private ArrayList<Integer> orderIdsLoader(Path dir) {
+        ArrayList<Integer> orderIds = new ArrayList<>();
+
+        if (Files.exists(dir) && Files.isDirectory(dir)) {
+            try (Stream<Path> fileStream = Files.list(dir)) {
+                // Process the stream without checking it separately
+                List<Path> files = fileStream.filter(Files::isRegularFile).toList();
+
+                if (files.isEmpty()) {
+                    Log.debug(() -> dir + " is empty");
+                } else {
+                    for (Path file : files) {
+                        String fileName = file.getFileName().toString();
+                        if (fileName.endsWith(".txt")) { // Ensure it's a .txt file
+                            try {
+                                int orderId = Integer.parseInt(fileName.substring(0, fileName.lastIndexOf('.')));
+                                orderIds.add(orderId);
+                                Log.debug(() -> String.valueOf(orderId));
+                            } catch (NumberFormatException e) {
+                                Log.warn(() -> "Invalid file name: " + fileName);
+                            }
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                Log.error("Error reading " + dir + ", " + e.getMessage());
+            }
+        } else {
+            Log.warn(() -> dir + " does not exist.");
+        }
+        return orderIds;
+    }
+}
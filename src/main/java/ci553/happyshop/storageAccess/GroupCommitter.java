@@ -0,0 +1,167 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.utility.Log;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * GroupCommitter makes appended records durable in groups, with one fsync per group instead of one per record.
+ *
+ * Every append is numbered (a sequence number) and registered here, getting a future back.
+ * A background "flusher" thread waits for the first registered record, then keeps collecting records
+ * for at most one window (eg. 2 ms) or until a group is full (eg. 256 records).
+ * It then calls the Syncer once (FileChannel.force) and completes the futures of all records up to
+ * the sequence number the Syncer reports as durable.
+ *
+ * Under burst load many writers share one fsync, so durable throughput grows with the number of writers
+ * instead of being limited to one order per disk flush. A lone writer waits at most one window plus one flush.
+ */
+
+class GroupCommitter {
+
+    // Forces everything appended so far to disk and returns the highest sequence number that is now durable
+    interface Syncer {
+        long sync() throws IOException;
+    }
+
+    private record Pending(long sequence, CompletableFuture<Void> future) {}
+
+    private final Syncer syncer;
+    private final long windowNanos;
+    private final int maxGroupSize;
+
+    private final ConcurrentLinkedQueue<Pending> pending = new ConcurrentLinkedQueue<>(); // in sequence order
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition hasWork = lock.newCondition();
+    private final Condition groupFull = lock.newCondition();
+    private int pendingCount = 0;  // guarded by lock
+    private boolean running = true; // guarded by lock
+    private final Thread flusher;
+
+    // statistics, only changed by the flusher thread
+    private volatile long groupsFlushed = 0;
+    private volatile long recordsFlushed = 0;
+
+    GroupCommitter(String name, Syncer syncer, long windowNanos, int maxGroupSize) {
+        this.syncer = syncer;
+        this.windowNanos = windowNanos;
+        this.maxGroupSize = maxGroupSize;
+        flusher = new Thread(this::flushLoop, name);
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Registers an appended record. The caller must register records in increasing sequence order.
+     * @return a future that completes when the record is on disk, or exceptionally if the flush failed
+     */
+    CompletableFuture<Void> register(long sequence) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        lock.lock();
+        try {
+            if (!running) {
+                future.completeExceptionally(new IOException("Group commit is stopped"));
+                return future;
+            }
+            pending.add(new Pending(sequence, future));
+            pendingCount++;
+            if (pendingCount == 1) {
+                hasWork.signal();
+            }
+            if (pendingCount >= maxGroupSize) {
+                groupFull.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+        return future;
+    }
+
+    private void flushLoop() {
+        while (true) {
+            lock.lock();
+            try {
+                while (running && pendingCount == 0) {
+                    hasWork.awaitUninterruptibly();
+                }
+                if (pendingCount == 0) {
+                    return; // stopped and nothing left to flush
+                }
+                // collect more records until the window closes or the group is full
+                long remaining = windowNanos;
+                while (running && pendingCount < maxGroupSize && remaining > 0) {
+                    try {
+                        remaining = groupFull.awaitNanos(remaining);
+                    } catch (InterruptedException e) {
+                        remaining = 0;
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+            flushGroup();
+        }
+    }
+
+    private void flushGroup() {
+        long durable;
+        IOException failure = null;
+        try {
+            durable = syncer.sync();
+        } catch (IOException e) {
+            durable = Long.MAX_VALUE; // complete every waiting record, exceptionally
+            failure = e;
+            Log.error("Group commit flush failed", e);
+        }
+        int completed = 0;
+        Pending head;
+        while ((head = pending.peek()) != null && head.sequence() <= durable) {
+            pending.poll();
+            if (failure == null) {
+                head.future().complete(null);
+            } else {
+                head.future().completeExceptionally(failure);
+            }
+            completed++;
+        }
+        lock.lock();
+        try {
+            pendingCount -= completed;
+        } finally {
+            lock.unlock();
+        }
+        if (completed > 0) {
+            groupsFlushed++;
+            recordsFlushed += completed;
+        }
+    }
+
+    // Flushes what is still waiting and stops the flusher thread.
+    void stop() {
+        lock.lock();
+        try {
+            running = false;
+            hasWork.signal();
+            groupFull.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flusher.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    String getStats() {
+        long groups = groupsFlushed;
+        long records = recordsFlushed;
+        return String.format("GroupCommit[groups=%d, records=%d, avgGroupSize=%.1f]",
+                groups, records, groups == 0 ? 0.0 : (double) records / groups);
+    }
+}
@@ -1,5 +1,7 @@
 package ci553.happyshop.storageAccess;
 
+import ci553.happyshop.utility.Log;
+
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -31,9 +33,9 @@ public class ImageFileManager {
 
         if (Files.exists(iPath)) { // Check if the file exists
             Files.delete(iPath); // Permanently delete the file
-            System.out.println("Deleted: " + iPath);
+            Log.info(() -> "Deleted: " + iPath);
         } else {
-            System.out.println("File not found: " + iPath);
+            Log.warn(() -> "File not found: " + iPath);
         }
     }
 
@@ -62,7 +64,7 @@ public class ImageFileManager {
 
         // Copy the file to the destination folder with the specified name
         Files.copy(sourcePath, destinationPath, StandardCopyOption.REPLACE_EXISTING);
-        System.out.println("File copied successfully to: " + destinationPath);
+        Log.info(() -> "File copied successfully to: " + destinationPath);
         return fileNameWithExtension;
     }
 
@@ -0,0 +1,256 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Product;
+import ci553.happyshop.utility.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * InMemoryRW is a DatabaseRW that keeps every product in memory, without Derby or JDBC.
+ * It is used to benchmark the order pipeline and for headless load tests, and starts instantly.
+ *
+ * Data structures:
+ * - products: a ConcurrentHashMap of product ID -> ProductRecord.
+ * - A ProductRecord holds the details (description, image, price) as one immutable object that is
+ *   replaced on update, and the stock as an AtomicInteger, so a stock change never needs a lock.
+ * - Name searches use a ProductSearchIndex, kept up to date by the write methods.
+ *
+ * Purchases:
+ * Each line is taken from its product with a compare-and-set loop (read stock, stop if too low,
+ * otherwise CAS stock to stock - quantity), so two checkouts can never sell the same units.
+ * If any line is insufficient, the lines already taken are given back (compensation) and the
+ * insufficient products are returned, so overall no stock is changed, as DatabaseRW requires.
+ * Between the take and the give-back another checkout may briefly see the lower stock;
+ * this is the price of being lock-free.
+ *
+ * Snapshots:
+ * saveSnapshot() and loadSnapshot() write and read all products to a small binary file,
+ * so the data survives a restart (DatabaseRWFactory saves on shutdown and loads on startup).
+ *
+ * Example Usage:
+ *     DatabaseRWFactory.databaseType = "memory";   // or -Dhappyshop.db=memory
+ *     DatabaseRW db = DatabaseRWFactory.createDatabaseRW();
+ */
+
+public class InMemoryRW implements DatabaseRW {
+    private static final int SNAPSHOT_MAGIC = 0x48535031; // "HSP1"
+
+    // The product fields that only change together, replaced as a whole by updateProduct
+    private record Details(String description, String imageName, double unitPrice) {}
+
+    private static final class ProductRecord {
+        private volatile Details details;
+        private final AtomicInteger stock;
+
+        private ProductRecord(Details details, int stock) {
+            this.details = details;
+            this.stock = new AtomicInteger(stock);
+        }
+
+        private Product toProduct(String productId) {
+            Details d = details;
+            return new Product(productId, d.description(), d.imageName(), d.unitPrice(), stock.get());
+        }
+    }
+
+    private final ConcurrentHashMap<String, ProductRecord> products = new ConcurrentHashMap<>();
+    private final ProductSearchIndex searchIndex = new ProductSearchIndex();
+
+    public InMemoryRW() {
+        searchIndex.load(Map.of(), searchIndex.getModificationCount()); // an empty store is a loaded index
+    }
+
+    // Creates an in-memory store holding a copy of the given products, e.g. read from Derby.
+    public InMemoryRW(Collection<Product> initialProducts) {
+        this();
+        for (Product p : initialProducts) {
+            putRecord(p.getProductId(), p.getProductDescription(), p.getProductImageName(),
+                    p.getUnitPrice(), p.getStockQuantity());
+        }
+    }
+
+    public int size() {
+        return products.size();
+    }
+
+    //search product by product Id or name, same rules as DerbyRW
+    public ArrayList<Product> searchProduct(String keyword) {
+        ArrayList<Product> productList = new ArrayList<>();
+        Product product = searchByProductId(keyword);
+        if (product != null) {
+            productList.add(product);
+        } else {
+            productList.addAll(searchByProductIds(searchIndex.search(keyword)).values());
+        }
+        if (productList.isEmpty()) {
+            Log.debug(() -> "Product " + keyword + " not found.");
+        }
+        return productList;
+    }
+
+    public Product searchByProductId(String productId) {
+        ProductRecord record = products.get(productId);
+        return record == null ? null : record.toProduct(productId);
+    }
+
+    public Map<String, Product> searchByProductIds(Collection<String> productIds) {
+        Map<String, Product> productMap = new LinkedHashMap<>();
+        for (String productId : new LinkedHashSet<>(productIds)) {
+            Product product = searchByProductId(productId);
+            if (product != null) {
+                productMap.put(productId, product);
+            }
+        }
+        return productMap;
+    }
+
+    public ArrayList<Product> purchaseStocks(ArrayList<Product> proList) {
+        ArrayList<Product> insufficientProducts = new ArrayList<>();
+        List<ProductRecord> taken = new ArrayList<>(proList.size()); // the records whose stock was reduced
+        List<Integer> takenQuantities = new ArrayList<>(proList.size());
+
+        for (Product product : proList) {
+            int quantity = product.getOrderedQuantity();
+            ProductRecord record = products.get(product.getProductId());
+            if (!insufficientProducts.isEmpty()) {
+                // the purchase already failed, only find the other insufficient lines
+                if (record == null || record.stock.get() < quantity) {
+                    insufficientProducts.add(product);
+                }
+            } else if (record != null && take(record.stock, quantity)) {
+                taken.add(record);
+                takenQuantities.add(quantity);
+            } else {
+                insufficientProducts.add(product);
+            }
+        }
+
+        if (!insufficientProducts.isEmpty()) {
+            for (int i = 0; i < taken.size(); i++) {
+                taken.get(i).stock.addAndGet(takenQuantities.get(i)); // give back, as a rollback would
+            }
+            Log.debug("Insufficient stock for some products, all updates rolled back.");
+        }
+        return insufficientProducts;
+    }
+
+    // Reduces stock by quantity if enough is left, lock-free
+    private static boolean take(AtomicInteger stock, int quantity) {
+        while (true) {
+            int current = stock.get();
+            if (current < quantity) {
+                return false;
+            }
+            if (stock.compareAndSet(current, current - quantity)) {
+                return true;
+            }
+        }
+    }
+
+    public void updateProduct(String id, String des, double price, String imageName, int stock) {
+        ProductRecord record = products.get(id);
+        if (record == null) {
+            Log.debug(() -> "Product " + id + " not found, nothing updated.");
+            return;
+        }
+        record.details = new Details(des, imageName, price);
+        record.stock.set(stock);
+        searchIndex.put(id, des);
+    }
+
+    public void deleteProduct(String id) {
+        if (products.remove(id) != null) {
+            searchIndex.remove(id);
+        }
+    }
+
+    // Fails on an ID already in use, as the primary key does in DerbyRW, rather than replacing that product
+    public void insertNewProduct(String id, String des, double price, String image, int stock) throws SQLException {
+        if (products.putIfAbsent(id, new ProductRecord(new Details(des, image, price), stock)) != null) {
+            throw new SQLException("Product ID " + id + " already exists", "23505"); // Derby's duplicate key state
+        }
+        searchIndex.put(id, des);
+    }
+
+    public boolean isProIdAvailable(String productId) {
+        return !products.containsKey(productId);
+    }
+
+    private void putRecord(String id, String des, String image, double price, int stock) {
+        products.put(id, new ProductRecord(new Details(des, image, price), stock));
+        searchIndex.put(id, des);
+    }
+
+    /**
+     * Writes all products to the snapshot file. The file is written next to the target first
+     * and then moved into place, so a crash during the save never leaves a half-written snapshot.
+     */
+    public void saveSnapshot(Path file) throws IOException {
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        Map<String, Product> copy = new LinkedHashMap<>();
+        for (String productId : products.keySet()) {
+            Product product = searchByProductId(productId);
+            if (product != null) {
+                copy.put(productId, product);
+            }
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(copy.size());
+            for (Product p : copy.values()) {
+                out.writeUTF(p.getProductId());
+                out.writeUTF(nullToEmpty(p.getProductDescription()));
+                out.writeUTF(nullToEmpty(p.getProductImageName()));
+                out.writeDouble(p.getUnitPrice());
+                out.writeInt(p.getStockQuantity());
+            }
+        }
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Log.info(() -> "In-memory database saved: " + copy.size() + " products to " + file);
+    }
+
+    private static String nullToEmpty(String text) {
+        return text == null ? "" : text;
+    }
+
+    // Replaces the products with the ones in the snapshot file.
+    public void loadSnapshot(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Not a product snapshot: " + file);
+            }
+            int count = in.readInt();
+            Map<String, ProductRecord> loaded = new LinkedHashMap<>();
+            Map<String, String> descriptions = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                String id = in.readUTF();
+                String des = in.readUTF();
+                String image = in.readUTF();
+                double price = in.readDouble();
+                int stock = in.readInt();
+                loaded.put(id, new ProductRecord(new Details(des, image, price), stock));
+                descriptions.put(id, des);
+            }
+            products.clear();
+            products.putAll(loaded);
+            searchIndex.load(descriptions, searchIndex.getModificationCount());
+        }
+        Log.info(() -> "In-memory database loaded: " + products.size() + " products from " + file);
+    }
+}
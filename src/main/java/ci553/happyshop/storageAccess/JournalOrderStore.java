@@ -0,0 +1,588 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Order;
+import ci553.happyshop.catalogue.OrderCodec;
+import ci553.happyshop.catalogue.Product;
+import ci553.happyshop.orderManagement.OrderState;
+import ci553.happyshop.orderManagement.OrderSummary;
+import ci553.happyshop.utility.Log;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * JournalOrderStore keeps all orders in one append-only journal instead of one text file per order.
+ *
+ * The journal is a folder (orders/journal) of segment files, segment-000001.log, segment-000002.log, ...
+ * A new segment is started when the current one is larger than segmentSize.
+ * Every change is one record appended to the current segment with a single write:
+ *  <pre>
+ *  int    length      bytes after this field
+ *  byte   type        ORDER_CREATED or STATE_CHANGED
+ *  int    orderId
+ *  long   time        epoch milliseconds of the change
+ *  byte[] payload     ORDER_CREATED: the order in OrderCodec bytes (or, in older journals, its text in UTF-8),
+ *                     STATE_CHANGED: the new state
+ *  int    crc         CRC32 of type..payload, detects a record torn by a crash
+ *  </pre>
+ * So creating an order or changing its state costs one append, instead of creating, rewriting
+ * and moving files between folders.
+ *
+ * The current state of every order is kept in a memory-mapped OrderIndex (orders/journal/orderIndex.dat):
+ * its state, the position of its ORDER_CREATED record and its timestamps. readOrder() decodes the created
+ * record, fills in the current state and times and renders it with Order.orderDetails(),
+ * so the text looks the same as an order file.
+ *
+ * Checkpoints:
+ * Every checkpointInterval records the segment and the index are forced to disk and the journal position
+ * is written to checkpoint.dat. On startup the index is opened as it is and only the records after the
+ * checkpoint are replayed into it, so startup time does not grow with the number of historic orders.
+ * A torn record at the end of the last segment is cut off.
+ *
+ * Durability:
+ * By default a record is written to the operating system but not forced to disk.
+ * After enableGroupCommit() every createOrder/changeOrderState waits until its record is on disk;
+ * concurrent writers are flushed together by a GroupCommitter, one FileChannel.force per group.
+ *
+ * exportToFolders() writes the orders in the original folder layout, eg. for inspection or a rollback.
+ */
+
+public class JournalOrderStore implements OrderStore {
+    static final byte ORDER_CREATED = 1;
+    static final byte STATE_CHANGED = 2;
+
+    private static final int RECORD_OVERHEAD = 1 + 4 + 8 + 4; // type, orderId, time, crc
+    private static final int CHECKPOINT_MAGIC = 0x4F4A4332;   // "OJC2"
+    private static final String CHECKPOINT_FILE = "checkpoint.dat";
+    private static final String INDEX_FILE = "orderIndex.dat";
+    private static final DateTimeFormatter DATE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final Path journalDir;
+    private final long segmentSize;        // start a new segment after this many bytes
+    private final int checkpointInterval;  // records between two checkpoints
+
+    private final OrderIndex orders; // order ID -> state and position of its ORDER_CREATED record
+    private final ConcurrentHashMap<Integer, FileChannel> readChannels = new ConcurrentHashMap<>(); // segment -> channel
+    private final ReentrantLock writeLock = new ReentrantLock(); // one writer appends at a time
+
+    // guarded by writeLock
+    private FileChannel segmentChannel; // the segment records are appended to
+    private int segment;                // its number
+    private long position;              // where the next record is written
+    private int recordsSinceCheckpoint = 0;
+    private long appendedSequence = 0;  // number of records appended since the store was opened
+    private boolean closed = false;
+
+    private volatile GroupCommitter groupCommitter; // null unless group commit is enabled
+
+    /**
+     * Opens the journal in journalDir, creating it if needed, and recovers the state of all orders
+     * from the last checkpoint and the records written after it.
+     */
+    public JournalOrderStore(Path journalDir, long segmentSize, int checkpointInterval) throws IOException {
+        this.journalDir = journalDir;
+        this.segmentSize = segmentSize;
+        this.checkpointInterval = checkpointInterval;
+        Files.createDirectories(journalDir);
+        orders = new OrderIndex(journalDir.resolve(INDEX_FILE));
+        long start = System.nanoTime();
+        recover();
+        Log.info(() -> String.format("Order journal opened: %d orders, segment %d at %d bytes, in %.1f ms",
+                orders.size(), segment, position, (System.nanoTime() - start) / 1e6));
+    }
+
+    /**
+     * Makes every following write durable: createOrder and changeOrderState return only when their record
+     * is on disk. Writes arriving within windowNanos of each other, up to maxGroupSize, share one flush.
+     */
+    public void enableGroupCommit(long windowNanos, int maxGroupSize) {
+        writeLock.lock();
+        try {
+            if (groupCommitter == null) {
+                groupCommitter = new GroupCommitter("order-journal-group-commit", this::syncAppended,
+                        windowNanos, maxGroupSize);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public void createOrder(int orderId, String orderDetail) throws IOException {
+        appendCreated(orderId, orderDetail.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // The order is saved in OrderCodec bytes, a fraction of its text
+    @Override
+    public void createOrder(Order order) throws IOException {
+        appendCreated(order.getOrderId(), OrderCodec.encode(order));
+    }
+
+    private void appendCreated(int orderId, byte[] payload) throws IOException {
+        CompletableFuture<Void> durable;
+        writeLock.lock();
+        try {
+            if (orders.get(orderId) != null) {
+                Log.warn(() -> "Order " + orderId + " already exists");
+                return;
+            }
+            long time = System.currentTimeMillis();
+            long offset = append(ORDER_CREATED, orderId, time, payload);
+            orders.put(orderId, new OrderIndex.Slot(OrderState.Ordered, segment, offset, time, 0, 0));
+            durable = afterAppend();
+        } finally {
+            writeLock.unlock();
+        }
+        awaitDurable(durable); // outside the lock, so other writers can join the same group
+    }
+
+    public boolean changeOrderState(int orderId, OrderState newState) throws IOException {
+        CompletableFuture<Void> durable;
+        writeLock.lock();
+        try {
+            OrderIndex.Slot entry = orders.get(orderId);
+            if (entry == null || entry.state() == newState) {
+                Log.warn(() -> "Order " + orderId + " not found or already " + newState);
+                return false;
+            }
+            long time = System.currentTimeMillis();
+            append(STATE_CHANGED, orderId, time, new byte[]{(byte) newState.ordinal()});
+            orders.put(orderId, entry.withState(newState, time));
+            durable = afterAppend();
+        } finally {
+            writeLock.unlock();
+        }
+        awaitDurable(durable);
+        return true;
+    }
+
+    @Override
+    public OrderSummary getOrderSummary(int orderId) {
+        return orders.getSummary(orderId);
+    }
+
+    @Override
+    public List<OrderSummary> loadOrderSummaries(long collectedSince) {
+        return orders.summariesSince(collectedSince);
+    }
+
+    // Decodes the products from the created record, without rendering the order text
+    @Override
+    public List<String> readProductIds(int orderId) throws IOException {
+        OrderIndex.Slot entry = orders.get(orderId);
+        if (entry == null) {
+            throw new IOException("Order not found in journal: " + orderId);
+        }
+        byte[] payload = readPayload(entry.segment(), entry.offset());
+        if (OrderCodec.isEncoded(payload)) {
+            List<String> productIds = new ArrayList<>();
+            for (Product product : OrderCodec.decode(payload).getProductList()) {
+                productIds.add(product.getProductId());
+            }
+            return productIds;
+        }
+        return OrderFileManager.productIdsOf(new String(payload, StandardCharsets.UTF_8)); // an order saved as text
+    }
+
+    public String readOrder(int orderId) throws IOException {
+        OrderIndex.Slot entry = orders.get(orderId);
+        if (entry == null) {
+            throw new IOException("Order not found in journal: " + orderId);
+        }
+        byte[] payload = readPayload(entry.segment(), entry.offset());
+        if (OrderCodec.isEncoded(payload)) {
+            Order order = OrderCodec.decode(payload);
+            order.setState(entry.state());
+            order.setProgressingDateTime(entry.progressingTime() == 0 ? "" : formatTime(entry.progressingTime()));
+            order.setCollectedDateTime(entry.collectedTime() == 0 ? "" : formatTime(entry.collectedTime()));
+            return order.orderDetails();
+        }
+        return render(new String(payload, StandardCharsets.UTF_8), entry); // an order saved as text
+    }
+
+    public Map<Integer, OrderState> loadActiveOrders() {
+        return orders.activeOrders();
+    }
+
+    public int exportToFolders(Path ordersRoot) throws IOException {
+        int count = 0;
+        for (int orderId = 1; orderId <= orders.getHighestOrderId(); orderId++) {
+            OrderIndex.Slot entry = orders.get(orderId);
+            if (entry == null) {
+                continue; // an unused order ID
+            }
+            Path dir = ordersRoot.resolve(entry.state().name().toLowerCase(Locale.ROOT)); // eg. orders/progressing
+            Files.createDirectories(dir);
+            Files.writeString(dir.resolve(orderId + ".txt"), readOrder(orderId) + System.lineSeparator(),
+                    StandardCharsets.UTF_8);
+            count++;
+        }
+        Log.info("Order journal exported: " + count + " orders to " + ordersRoot);
+        return count;
+    }
+
+    // the number of orders in the journal, collected ones included
+    public int size() {
+        return orders.size();
+    }
+
+    // Writes a final checkpoint so the next start has nothing to replay, then closes the segment files.
+    public void close() throws IOException {
+        GroupCommitter committer = groupCommitter;
+        if (committer != null) {
+            committer.stop(); // flushes the waiting writers, it needs the write lock to do so
+            Log.info(committer.getStats());
+        }
+        writeLock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            writeCheckpoint();
+            segmentChannel.close();
+            orders.close();
+            for (FileChannel channel : readChannels.values()) {
+                channel.close();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    //------------------------------------------------------------------
+    // writing, caller holds writeLock
+
+    // Appends one record with a single write and returns its offset in the current segment
+    private long append(byte type, int orderId, long time, byte[] payload) throws IOException {
+        if (closed) {
+            throw new IOException("Order journal is closed");
+        }
+        int recordSize = 4 + RECORD_OVERHEAD + payload.length;
+        if (position > 0 && position + recordSize > segmentSize) {
+            openSegment(segment + 1); // roll over, the old segment stays readable
+        }
+        ByteBuffer buffer = encodeRecord(type, orderId, time, payload);
+        long offset = position;
+        while (buffer.hasRemaining()) {
+            position += segmentChannel.write(buffer, position);
+        }
+        return offset;
+    }
+
+    // Counts the record and writes a checkpoint when due.
+    // Returns the future of the record becoming durable, or null when group commit is off.
+    private CompletableFuture<Void> afterAppend() throws IOException {
+        appendedSequence++;
+        if (++recordsSinceCheckpoint >= checkpointInterval) {
+            writeCheckpoint();
+        }
+        GroupCommitter committer = groupCommitter;
+        return committer == null ? null : committer.register(appendedSequence);
+    }
+
+    // Called by the GroupCommitter: forces all records appended so far, returns the last one's sequence number
+    private long syncAppended() throws IOException {
+        FileChannel channel;
+        long sequence;
+        writeLock.lock();
+        try {
+            channel = segmentChannel;
+            sequence = appendedSequence;
+        } finally {
+            writeLock.unlock();
+        }
+        try {
+            channel.force(false); // outside the lock, writers keep appending meanwhile
+        } catch (ClosedChannelException e) {
+            // the segment was rolled over or the store closed, both force the segment before closing it
+        }
+        return sequence;
+    }
+
+    private static void awaitDurable(CompletableFuture<Void> durable) throws IOException {
+        if (durable == null) {
+            return;
+        }
+        try {
+            durable.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the order journal flush");
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+        }
+    }
+
+    static ByteBuffer encodeRecord(byte type, int orderId, long time, byte[] payload) {
+        ByteBuffer buffer = ByteBuffer.allocate(4 + RECORD_OVERHEAD + payload.length);
+        buffer.putInt(RECORD_OVERHEAD + payload.length);
+        buffer.put(type).putInt(orderId).putLong(time).put(payload);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 4, 1 + 4 + 8 + payload.length);
+        buffer.putInt((int) crc.getValue());
+        return buffer.flip();
+    }
+
+    private void openSegment(int number) throws IOException {
+        if (segmentChannel != null) {
+            segmentChannel.force(false); // the records of the old segment are durable before moving on
+            segmentChannel.close();
+        }
+        segment = number;
+        segmentChannel = FileChannel.open(segmentPath(number),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        position = segmentChannel.size();
+    }
+
+    private Path segmentPath(int number) {
+        return journalDir.resolve(String.format("segment-%06d.log", number));
+    }
+
+    /**
+     * Saves the current journal position, after forcing the segment and the index to disk,
+     * so the checkpoint never points past data that could be lost.
+     * The new checkpoint is forced to disk before it replaces the old one, and the folder afterwards,
+     * so a crash leaves either the old or the new checkpoint, never an empty one.
+     */
+    private void writeCheckpoint() throws IOException {
+        segmentChannel.force(false);
+        orders.force();
+        Path checkpoint = journalDir.resolve(CHECKPOINT_FILE);
+        Path tempFile = journalDir.resolve(CHECKPOINT_FILE + ".tmp");
+        ByteBuffer content = ByteBuffer.allocate(16).putInt(CHECKPOINT_MAGIC).putInt(segment).putLong(position).flip();
+        try (FileChannel out = FileChannel.open(tempFile,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (content.hasRemaining()) {
+                out.write(content);
+            }
+            out.force(true);
+        }
+        Files.move(tempFile, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        forceDirectory(journalDir);
+        recordsSinceCheckpoint = 0;
+    }
+
+    // Makes a rename in the folder durable; not every platform can open a folder (eg. Windows), then it is skipped
+    private static void forceDirectory(Path dir) {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            Log.debug(() -> "Can not force the folder " + dir + ": " + e.getMessage());
+        }
+    }
+
+    //------------------------------------------------------------------
+    // reading
+
+    private byte[] readPayload(int segmentNumber, long offset) throws IOException {
+        FileChannel channel = readChannel(segmentNumber);
+        ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+        readFully(channel, lengthBuffer, offset);
+        int length = lengthBuffer.flip().getInt();
+        ByteBuffer record = ByteBuffer.allocate(length);
+        readFully(channel, record, offset + 4);
+        record.flip();
+        record.position(1 + 4 + 8); // skip type, orderId and time
+        byte[] payload = new byte[length - RECORD_OVERHEAD];
+        record.get(payload);
+        return payload;
+    }
+
+    private FileChannel readChannel(int segmentNumber) throws IOException {
+        FileChannel channel = readChannels.get(segmentNumber);
+        if (channel == null) {
+            FileChannel opened = FileChannel.open(segmentPath(segmentNumber), StandardOpenOption.READ);
+            channel = readChannels.putIfAbsent(segmentNumber, opened);
+            if (channel == null) {
+                channel = opened;
+            } else {
+                opened.close(); // another reader opened it first
+            }
+        }
+        return channel;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long offset) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, offset + buffer.position());
+            if (read < 0) {
+                throw new EOFException("Unexpected end of order journal");
+            }
+        }
+    }
+
+    // Fills the current state and times into the text saved when the order was created
+    private static String render(String createdDetail, OrderIndex.Slot entry) {
+        StringBuilder sb = new StringBuilder(createdDetail.length() + 64);
+        String[] lines = createdDetail.split("\n", -1);
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i];
+            if (line.startsWith("State")) {
+                line = "State: " + entry.state();
+            } else if (entry.progressingTime() != 0 && line.startsWith("ProgressingDateTime")) {
+                line = "ProgressingDateTime: " + formatTime(entry.progressingTime());
+            } else if (entry.collectedTime() != 0 && line.startsWith("CollectedDateTime")) {
+                line = "CollectedDateTime: " + formatTime(entry.collectedTime());
+            }
+            sb.append(line);
+            if (i < lines.length - 1) {
+                sb.append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String formatTime(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault()).format(DATE_TIME_FORMAT);
+    }
+
+    //------------------------------------------------------------------
+    // recovery
+
+    private void recover() throws IOException {
+        int startSegment = 1;
+        long startPosition = 0;
+        Path checkpoint = journalDir.resolve(CHECKPOINT_FILE);
+        // without an index (eg. deleted) the checkpoint is of no use, the whole journal is replayed
+        if (Files.exists(checkpoint) && orders.size() > 0) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(checkpoint)))) {
+                if (in.readInt() == CHECKPOINT_MAGIC) {
+                    int segmentRead = in.readInt();
+                    long positionRead = in.readLong();
+                    startSegment = segmentRead;
+                    startPosition = positionRead;
+                } else {
+                    Log.warn(() -> "Unknown order journal checkpoint, replaying the whole journal: " + checkpoint);
+                }
+            } catch (IOException e) { // eg. cut short by a crash, treated like an unknown checkpoint
+                Log.warn(() -> "Unreadable order journal checkpoint (" + e + "), replaying the whole journal: " + checkpoint);
+            }
+        }
+
+        List<Integer> segments = listSegments();
+        int lastSegment = segments.isEmpty() ? startSegment : Math.max(startSegment, segments.get(segments.size() - 1));
+        boolean fullReplay = startSegment == 1 && startPosition == 0;
+        if (fullReplay) {
+            orders.clear(); // the index is rebuilt from the whole journal
+        }
+        boolean torn = replay(segments, startSegment, startPosition, lastSegment);
+        if (torn && !fullReplay) {
+            // a crash lost the last records, but the index may already show them: rebuild it
+            Log.warn("Order journal: rebuilding the order index after an incomplete record");
+            orders.clear();
+            replay(segments, 1, 0, lastSegment);
+        }
+        openSegment(lastSegment);
+    }
+
+    // Replays the segments from a position on, returns true if a torn record was cut off the last segment
+    private boolean replay(List<Integer> segments, int startSegment, long startPosition, int lastSegment) throws IOException {
+        boolean torn = false;
+        for (int number : segments) {
+            if (number >= startSegment) {
+                long from = number == startSegment ? startPosition : 0;
+                long validEnd = replaySegment(number, from);
+                if (number == lastSegment) {
+                    torn = truncateTornTail(number, validEnd);
+                }
+            }
+        }
+        return torn;
+    }
+
+    private List<Integer> listSegments() throws IOException {
+        List<Integer> segments = new ArrayList<>();
+        try (Stream<Path> files = Files.list(journalDir)) {
+            for (Path file : files.toList()) {
+                String name = file.getFileName().toString();
+                if (name.startsWith("segment-") && name.endsWith(".log")) {
+                    segments.add(Integer.parseInt(name.substring(8, name.length() - 4)));
+                }
+            }
+        }
+        segments.sort(null);
+        return segments;
+    }
+
+    // Applies the records of a segment from a position, returns the end of the last complete record
+    private long replaySegment(int number, long from) throws IOException {
+        long pos = from;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segmentPath(number))))) {
+            in.skipNBytes(from);
+            OrderState[] states = OrderState.values();
+            while (true) {
+                int length;
+                byte[] body;
+                try {
+                    length = in.readInt();
+                    if (length < RECORD_OVERHEAD || length > segmentSize + RECORD_OVERHEAD) {
+                        break; // garbage, not a record
+                    }
+                    body = in.readNBytes(length);
+                } catch (EOFException e) {
+                    break;
+                }
+                if (body.length < length) {
+                    break; // torn record
+                }
+                ByteBuffer record = ByteBuffer.wrap(body);
+                CRC32 crc = new CRC32();
+                crc.update(body, 0, length - 4);
+                if (record.getInt(length - 4) != (int) crc.getValue()) {
+                    break; // torn or corrupt record
+                }
+                byte type = record.get();
+                int orderId = record.getInt();
+                long time = record.getLong();
+                // replaying a record twice (eg. after a crash between checkpoints) gives the same slot
+                if (type == ORDER_CREATED) {
+                    orders.put(orderId, new OrderIndex.Slot(OrderState.Ordered, number, pos, time, 0, 0));
+                } else if (type == STATE_CHANGED) {
+                    OrderIndex.Slot entry = orders.get(orderId);
+                    if (entry != null) {
+                        orders.put(orderId, entry.withState(states[record.get()], time));
+                    }
+                }
+                pos += 4 + length;
+            }
+        }
+        return pos;
+    }
+
+    private boolean truncateTornTail(int number, long validEnd) throws IOException {
+        try (FileChannel channel = FileChannel.open(segmentPath(number), StandardOpenOption.WRITE)) {
+            if (channel.size() > validEnd) {
+                long cut = channel.size() - validEnd;
+                channel.truncate(validEnd);
+                Log.warn(() -> "Order journal: cut " + cut + " bytes of an incomplete record from segment " + number);
+                return true;
+            }
+            return false;
+        }
+    }
+}
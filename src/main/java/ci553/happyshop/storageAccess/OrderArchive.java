@@ -0,0 +1,350 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.utility.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * OrderArchive packs collected order files into compressed segment files, one per day, so the collected
+ * folder does not keep one file per order forever (see archiveCollectedOrders()).
+ *
+ * Files in the archive folder (orders/archive), for each day the orders were collected:
+ *  <pre>
+ *  2025-03-11.seg   gzip blocks, one after the other. A block holds up to BLOCK_ORDERS orders in ID order:
+ *                     int orderId, int length, byte[] order text (UTF-8), ...
+ *  2025-03-11.idx   one 20-byte entry per block: int firstId, int lastId, long offset, int length
+ *  </pre>
+ * The .idx files are a sparse index: one entry per block rather than per order. They are all loaded
+ * into memory when the archive is opened, and readOrder() decompresses the one block that can hold the ID.
+ *
+ * Each archiving run appends new blocks to the day segments, forces them to disk, then appends their
+ * index entries, and only then deletes the loose files. A crash in between leaves an order both loose
+ * and archived (the next run only deletes the file), or some unreferenced bytes at the end of a segment.
+ * To find such orders, a run checks each file's ID against the block ranges in memory, and decompresses
+ * a block only when an ID falls in its range, at most once per run.
+ *
+ * A ReadWriteLock lets many readers look up orders while a run adds blocks; one run is done at a time.
+ */
+
+class OrderArchive {
+    static final int BLOCK_ORDERS = 256;
+    private static final int INDEX_ENTRY_SIZE = 4 + 4 + 8 + 4;
+
+    // One gzip block of a day segment
+    private record Block(String day, int firstId, int lastId, long offset, int length) {}
+
+    private final Path archiveDir;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private List<Block> blocks = new ArrayList<>(); // sorted by firstId, guarded by lock
+    private int[] maxLastId = new int[0];           // the highest lastId of blocks[0..i], guarded by lock
+
+    // Opens the archive folder and loads the index of every day segment
+    OrderArchive(Path archiveDir) throws IOException {
+        this.archiveDir = archiveDir;
+        List<Block> loaded = new ArrayList<>();
+        if (Files.isDirectory(archiveDir)) {
+            try (DirectoryStream<Path> indexFiles = Files.newDirectoryStream(archiveDir, "*.idx")) {
+                for (Path indexFile : indexFiles) {
+                    String fileName = indexFile.getFileName().toString();
+                    loadIndex(fileName.substring(0, fileName.length() - 4), indexFile, loaded);
+                }
+            }
+        }
+        setBlocks(loaded);
+    }
+
+    private static void loadIndex(String day, Path indexFile, List<Block> into) throws IOException {
+        ByteBuffer entries = ByteBuffer.wrap(Files.readAllBytes(indexFile));
+        while (entries.remaining() >= INDEX_ENTRY_SIZE) { // a torn last entry is ignored
+            into.add(new Block(day, entries.getInt(), entries.getInt(), entries.getLong(), entries.getInt()));
+        }
+    }
+
+    // Caller holds the write lock (or is the constructor)
+    private void setBlocks(List<Block> newBlocks) {
+        newBlocks.sort(Comparator.comparingInt(Block::firstId));
+        int[] newMax = new int[newBlocks.size()];
+        int max = 0;
+        for (int i = 0; i < newBlocks.size(); i++) {
+            max = Math.max(max, newBlocks.get(i).lastId());
+            newMax[i] = max;
+        }
+        blocks = newBlocks;
+        maxLastId = newMax;
+    }
+
+    // Returns the archived text of an order, or null if it is not in the archive
+    String readOrder(int orderId) throws IOException {
+        for (Block block : candidateBlocks(orderId)) {
+            String orderDetail = readBlock(block).get(orderId);
+            if (orderDetail != null) {
+                return orderDetail;
+            }
+        }
+        return null;
+    }
+
+    boolean contains(int orderId) throws IOException {
+        return readOrder(orderId) != null;
+    }
+
+    /**
+     * Like contains(), for many IDs in one archiving run: an ID outside the range of every block is answered
+     * from the in-memory index alone, and each block that may hold an ID is decompressed at most once per run
+     * (its IDs are kept in idsOfBlock).
+     */
+    private boolean contains(int orderId, Map<Block, Set<Integer>> idsOfBlock) throws IOException {
+        for (Block block : candidateBlocks(orderId)) {
+            Set<Integer> ids = idsOfBlock.get(block);
+            if (ids == null) {
+                ids = readBlock(block).keySet();
+                idsOfBlock.put(block, ids);
+            }
+            if (ids.contains(orderId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // The blocks whose ID range holds orderId, from the last one back
+    private List<Block> candidateBlocks(int orderId) {
+        List<Block> candidates = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            // the blocks starting at or below orderId, from the last one back while a block can still reach it
+            int i = floorIndex(orderId);
+            for (; i >= 0 && maxLastId[i] >= orderId; i--) {
+                Block block = blocks.get(i);
+                if (block.lastId() >= orderId) {
+                    candidates.add(block);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return candidates;
+    }
+
+    // Passes every archived order to the action, block by block
+    void forEachOrder(BiConsumer<Integer, String> action) throws IOException {
+        List<Block> all;
+        lock.readLock().lock();
+        try {
+            all = blocks;
+        } finally {
+            lock.readLock().unlock();
+        }
+        for (Block block : all) {
+            readBlock(block).forEach(action);
+        }
+    }
+
+    int blockCount() {
+        lock.readLock().lock();
+        try {
+            return blocks.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // The index of the last block whose firstId <= orderId, -1 if none. Caller holds the lock.
+    private int floorIndex(int orderId) {
+        int low = 0, high = blocks.size() - 1, found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (blocks.get(mid).firstId() <= orderId) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    private Map<Integer, String> readBlock(Block block) throws IOException {
+        ByteBuffer compressed = ByteBuffer.allocate(block.length());
+        try (FileChannel channel = FileChannel.open(segmentFile(block.day()), StandardOpenOption.READ)) {
+            while (compressed.hasRemaining()) {
+                if (channel.read(compressed, block.offset() + compressed.position()) < 0) {
+                    throw new EOFException("Archive block cut short: " + segmentFile(block.day()) + " at " + block.offset());
+                }
+            }
+        }
+        Map<Integer, String> orders = new TreeMap<>();
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(compressed.array())))) {
+            while (true) {
+                int orderId;
+                try {
+                    orderId = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                byte[] text = new byte[in.readInt()];
+                in.readFully(text);
+                orders.put(orderId, new String(text, StandardCharsets.UTF_8));
+            }
+        }
+        return orders;
+    }
+
+    /**
+     * Moves the order files in the collected folder that were last changed at least minAgeMillis ago
+     * into the day segments, at most maxOrders of them per call.
+     * @return the number of files taken out of the collected folder
+     */
+    synchronized int archiveCollectedOrders(Path collectedDir, long minAgeMillis, int maxOrders) throws IOException {
+        if (!Files.isDirectory(collectedDir)) {
+            return 0;
+        }
+        long cutoff = System.currentTimeMillis() - minAgeMillis;
+        SortedMap<String, SortedMap<Integer, String>> days = new TreeMap<>(); // day -> order ID -> text
+        List<Path> archived = new ArrayList<>();
+        Map<Block, Set<Integer>> idsOfBlock = new HashMap<>(); // the blocks decompressed by this run
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(collectedDir, "*.txt")) {
+            for (Path file : files) {
+                if (archived.size() >= maxOrders) {
+                    break;
+                }
+                String fileName = file.getFileName().toString();
+                int orderId;
+                try {
+                    orderId = Integer.parseInt(fileName.substring(0, fileName.length() - 4));
+                } catch (NumberFormatException e) {
+                    continue; // eg. a temp file, not an order
+                }
+                long lastModified = Files.getLastModifiedTime(file).toMillis();
+                if (lastModified > cutoff) {
+                    continue;
+                }
+                archived.add(file);
+                if (contains(orderId, idsOfBlock)) {
+                    continue; // archived by a run that stopped before deleting the file
+                }
+                String orderDetail = String.join("\n", Files.readAllLines(file, StandardCharsets.UTF_8)); // as readOrderFile gives it
+                days.computeIfAbsent(dayOf(orderDetail, lastModified), day -> new TreeMap<>()).put(orderId, orderDetail);
+            }
+        }
+        if (archived.isEmpty()) {
+            return 0;
+        }
+
+        Files.createDirectories(archiveDir);
+        lock.writeLock().lock();
+        try {
+            List<Block> newBlocks = new ArrayList<>(blocks);
+            for (Map.Entry<String, SortedMap<Integer, String>> day : days.entrySet()) {
+                appendDay(day.getKey(), day.getValue(), newBlocks);
+            }
+            setBlocks(newBlocks);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        for (Path file : archived) {
+            Files.deleteIfExists(file);
+        }
+        int count = archived.size();
+        Log.debug(() -> count + " collected orders archived into " + days.size() + " day segments");
+        return count;
+    }
+
+    // Writes the orders of one day as blocks at the end of its segment, then their index entries. Caller holds the write lock.
+    private void appendDay(String day, SortedMap<Integer, String> orders, List<Block> newBlocks) throws IOException {
+        List<Block> dayBlocks = new ArrayList<>();
+        try (FileChannel segment = FileChannel.open(segmentFile(day),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            long offset = segment.size();
+            List<Map.Entry<Integer, String>> entries = new ArrayList<>(orders.entrySet());
+            for (int start = 0; start < entries.size(); start += BLOCK_ORDERS) {
+                List<Map.Entry<Integer, String>> blockOrders = entries.subList(start, Math.min(entries.size(), start + BLOCK_ORDERS));
+                ByteBuffer compressed = ByteBuffer.wrap(compress(blockOrders));
+                int length = compressed.remaining();
+                while (compressed.hasRemaining()) {
+                    segment.write(compressed);
+                }
+                dayBlocks.add(new Block(day, blockOrders.get(0).getKey(), blockOrders.get(blockOrders.size() - 1).getKey(), offset, length));
+                offset += length;
+            }
+            segment.force(false);
+        }
+        ByteBuffer index = ByteBuffer.allocate(dayBlocks.size() * INDEX_ENTRY_SIZE);
+        for (Block block : dayBlocks) {
+            index.putInt(block.firstId()).putInt(block.lastId()).putLong(block.offset()).putInt(block.length());
+        }
+        index.flip();
+        try (FileChannel indexFile = FileChannel.open(archiveDir.resolve(day + ".idx"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            while (index.hasRemaining()) {
+                indexFile.write(index);
+            }
+            indexFile.force(false);
+        }
+        newBlocks.addAll(dayBlocks);
+    }
+
+    private static byte[] compress(List<Map.Entry<Integer, String>> orders) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(bytes))) {
+            for (Map.Entry<Integer, String> order : orders) {
+                byte[] text = order.getValue().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(order.getKey());
+                out.writeInt(text.length);
+                out.write(text);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    // The day of the CollectedDateTime: line, eg. 2025-03-11, or of the file time if the line is empty
+    private static String dayOf(String orderDetail, long lastModified) {
+        for (String line : orderDetail.split("\n")) {
+            if (line.startsWith("CollectedDateTime:")) {
+                String value = line.substring("CollectedDateTime:".length()).trim();
+                if (value.length() >= 10) {
+                    try {
+                        return LocalDate.parse(value.substring(0, 10)).toString();
+                    } catch (DateTimeParseException e) {
+                        break;
+                    }
+                }
+                break;
+            }
+        }
+        return LocalDate.ofInstant(Instant.ofEpochMilli(lastModified), ZoneId.systemDefault()).toString();
+    }
+
+    private Path segmentFile(String day) {
+        return archiveDir.resolve(day + ".seg");
+    }
+}
@@ -1,16 +1,27 @@
 package ci553.happyshop.storageAccess;
 
+import ci553.happyshop.catalogue.Order;
 import ci553.happyshop.orderManagement.OrderState;
+import ci553.happyshop.utility.Log;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This class manages creation, updating, and relocation of order files.
@@ -39,10 +50,33 @@ import java.time.format.DateTimeFormatter;
  * When the order state changes, this class updates the corresponding timestamp and moves the file to the appropriate folder.
  *  1. update state from Ordered to Progressing, (then move the file to progressing folder)
  *  2. update state from Progressing to Collected (then move the file to collected folder)
+ *  3. update state from Progressing back to Ordered when a picker's claim expires,
+ *     clearing ProgressingDateTime (then move the file back to ordered folder)
+ * </p>
+ *
+ * <p>
+ * Order files written by Order.orderDetails() have fixed-width State, ProgressingDateTime and CollectedDateTime
+ * fields (padded with spaces), so a state change overwrites them in place: the header is read (at most
+ * HEADER_BYTES), the new values are written at their offsets, and the file is moved with one atomic move.
+ * The cost does not depend on the number of items. Files whose fields are too narrow (older files) are
+ * rewritten through a temp file as before, with padded fields, so their next change is in place.
+ * </p>
+ *
+ * <p>
+ * At startup the State: header of each order file can be checked against its folder and repaired (repairStateHeader).
+ * </p>
+ *
+ * <p>
+ * Collected order files are packed into day segments of an OrderArchive (orders/archive) by archiveCollectedOrders,
+ * so the collected folder does not grow forever. readOrderFileOrArchive and readArchivedOrder still find them.
  * </p>
  */
 
 public class OrderFileManager {
+    private static final int HEADER_BYTES = 512; // the header of an order file fits in the first 512 bytes
+
+    // One open archive per archive folder, shared by the archiver and the readers
+    private static final Map<Path, OrderArchive> archives = new ConcurrentHashMap<>();
 
     //Creates a new order file in the specified directory with the given content.
     public static void createOrderFile(Path dir, int orderId, String orderDetail) throws IOException {
@@ -57,11 +91,11 @@ public class OrderFileManager {
             try (BufferedWriter writer = Files.newBufferedWriter(path)) {
                 writer.write(orderDetail);
                 writer.newLine();
-                System.out.println(path + " created");
+                Log.debug(() -> path + " created");
             }
         }
         else{
-            System.out.println(path + " already exists");
+            Log.warn(() -> path + " already exists");
         }
     }
 
@@ -74,13 +108,15 @@ public class OrderFileManager {
         Path sourcePath = sourceDir.resolve(orderFileName);
         Path targetPath = targetDir.resolve(orderFileName);
         if (Files.exists(sourcePath)) {
-            updateOrderStateAndTime(sourceDir,orderId,newState); //Edit the file to update order state and add time
+            if (!patchOrderStateAndTime(sourcePath, newState)) { // in place when the header has fixed-width fields
+                updateOrderStateAndTime(sourceDir,orderId,newState); //Edit the file to update order state and add time
+            }
             if(!sourceDir.equals(targetDir)) //Move the file only if the source and destination are different
-                Files.move(sourcePath,targetPath);
+                Files.move(sourcePath,targetPath, StandardCopyOption.ATOMIC_MOVE);
             return true;
         }
         else{
-            System.out.println(sourcePath + " not found in ");
+            Log.warn(() -> sourcePath + " not found in ");
             return false;
         }
     }
@@ -101,11 +137,14 @@ public class OrderFileManager {
             String line;
             while ((line = reader.readLine()) != null) {
                 if (line.startsWith("State")) {
-                    line = "State: " + newState;
-                } else if (newState.equals(OrderState.Progressing) && line.startsWith("ProgressingDateTime")) {
-                    line = "ProgressingDateTime: " + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
-                } else if (newState.equals(OrderState.Collected) && line.startsWith("CollectedDateTime")) {
-                    line = "CollectedDateTime: " + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+                    line = "State: " + padded(newState.toString(), Order.STATE_WIDTH) + " ";
+                } else if (line.startsWith("ProgressingDateTime")) {
+                    String time = newState.equals(OrderState.Progressing) ? now()
+                            : newState.equals(OrderState.Ordered) ? "" : line.substring("ProgressingDateTime:".length()).trim();
+                    line = "ProgressingDateTime: " + padded(time, Order.DATE_TIME_WIDTH) + " ";
+                } else if (line.startsWith("CollectedDateTime")) {
+                    String time = newState.equals(OrderState.Collected) ? now() : line.substring("CollectedDateTime:".length()).trim();
+                    line = "CollectedDateTime: " + padded(time, Order.DATE_TIME_WIDTH);
                 }
                 writer.write(line);
                 writer.newLine();
@@ -116,11 +155,111 @@ public class OrderFileManager {
         try {
             Files.move(tempFilePath, sourcePath, StandardCopyOption.REPLACE_EXISTING);
         } catch (IOException e) {
-            System.err.println("Move failed: " + e.getMessage());
+            Log.error("Move failed: " + e.getMessage());
             Files.deleteIfExists(tempFilePath); // Delete temp file ONLY IF move failed and it still exists
         }
     }
 
+    /**
+     * Changes State and the matching timestamp by overwriting the fixed-width fields in the order file,
+     * without reading more than its header or rewriting the rest.
+     * The timestamp is written before the state, so a crash in between leaves the old state,
+     * which is still right for the folder the file is in.
+     * @return false, with the file unchanged, if a field is missing or too narrow for its new value
+     */
+    static boolean patchOrderStateAndTime(Path file, OrderState newState) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate((int) Math.min(HEADER_BYTES, channel.size()));
+            while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+                // read the whole header
+            }
+            Map<String, long[]> fields = headerFields(new String(header.array(), 0, header.position(), StandardCharsets.ISO_8859_1));
+            if (fields == null) {
+                return false;
+            }
+
+            Map<String, String> writes = new LinkedHashMap<>(); // field -> new value, timestamps first
+            if (newState == OrderState.Progressing) {
+                writes.put("ProgressingDateTime:", now());
+            } else if (newState == OrderState.Ordered) {
+                writes.put("ProgressingDateTime:", "");
+            } else if (newState == OrderState.Collected) {
+                writes.put("CollectedDateTime:", now());
+            }
+            writes.put("State:", newState.toString());
+            for (Map.Entry<String, String> write : writes.entrySet()) {
+                long[] field = fields.get(write.getKey());
+                if (field == null || field[1] < write.getValue().length()) {
+                    return false;
+                }
+            }
+            for (Map.Entry<String, String> write : writes.entrySet()) {
+                long[] field = fields.get(write.getKey());
+                ByteBuffer value = ByteBuffer.wrap(padded(write.getValue(), (int) field[1]).getBytes(StandardCharsets.ISO_8859_1));
+                while (value.hasRemaining()) {
+                    channel.write(value, field[0] + value.position());
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Finds the State, ProgressingDateTime and CollectedDateTime values in the header text (up to Items:).
+     * @return field name -> {offset of the value, width up to the end of the line}, or null if the header is incomplete
+     */
+    private static Map<String, long[]> headerFields(String header) {
+        Map<String, long[]> fields = new LinkedHashMap<>();
+        int lineStart = 0;
+        while (lineStart < header.length()) {
+            int lineEnd = header.indexOf('\n', lineStart);
+            if (lineEnd < 0) {
+                return null; // the header goes on beyond what was read
+            }
+            String line = header.substring(lineStart, lineEnd);
+            if (line.startsWith("Items")) {
+                return fields;
+            }
+            int width = line.endsWith("\r") ? line.length() - 1 : line.length();
+            for (String name : List.of("State:", "ProgressingDateTime:", "CollectedDateTime:")) {
+                if (line.startsWith(name) && line.length() > name.length() && line.charAt(name.length()) == ' ') {
+                    int valueStart = name.length() + 1; // after the space following the name
+                    fields.putIfAbsent(name, new long[]{lineStart + valueStart, Math.max(0, width - valueStart)});
+                }
+            }
+            lineStart = lineEnd + 1;
+        }
+        return null;
+    }
+
+    private static String padded(String value, int width) {
+        return value.length() >= width ? value : value + " ".repeat(width - value.length());
+    }
+
+    private static String now() {
+        return LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+    }
+
+    // The product IDs in the Items: section of an order text, the first word of each line up to the ---- line
+    public static List<String> productIdsOf(String orderDetail) {
+        List<String> productIds = new ArrayList<>();
+        boolean inItems = false;
+        for (String line : orderDetail.split("\n")) {
+            if (!inItems) {
+                inItems = line.startsWith("Items");
+                continue;
+            }
+            String item = line.strip();
+            if (item.startsWith("-")) {
+                break; // the line above the total
+            }
+            if (!item.isEmpty()) {
+                productIds.add(item.split("\\s+", 2)[0]);
+            }
+        }
+        return productIds;
+    }
+
     //Reads the content of an order file as a single string.
     public static String readOrderFile(Path dir, int orderId) throws IOException {
         String orderFileName = String.valueOf(orderId)+".txt";
@@ -131,4 +270,85 @@ public class OrderFileManager {
         }
         return String.join("\n", Files.readAllLines(path));
     }
+
+    /**
+     * Checks the State: line of an order file against the folder it is in, and rewrites it if it differs
+     * (eg. a crash came between updating and moving the file, or the file was moved by hand).
+     * Only the header is read when it is right; a repair replaces the file in one atomic move.
+     * @return true if the file was repaired
+     */
+    public static boolean repairStateHeader(Path file, OrderState folderState) throws IOException {
+        String expected = "State: " + folderState;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null && !line.startsWith("Items")) {
+                if (line.startsWith("State")) {
+                    if (line.trim().equals(expected)) {
+                        return false;
+                    }
+                    break;
+                }
+            }
+        }
+
+        List<String> lines = new ArrayList<>(Files.readAllLines(file, StandardCharsets.UTF_8));
+        int stateLine = -1;
+        for (int i = 0; i < lines.size() && !lines.get(i).startsWith("Items"); i++) {
+            if (lines.get(i).startsWith("State")) {
+                stateLine = i;
+                break;
+            }
+        }
+        if (stateLine >= 0) {
+            lines.set(stateLine, "State: " + padded(folderState.toString(), Order.STATE_WIDTH) + " ");
+        } else { // no State: line at all, it belongs after OrderId:
+            lines.add(!lines.isEmpty() && lines.get(0).startsWith("Order") ? 1 : 0,
+                    "State: " + padded(folderState.toString(), Order.STATE_WIDTH) + " ");
+        }
+        Path tempFilePath = file.resolveSibling(file.getFileName() + ".repair");
+        Files.write(tempFilePath, lines, StandardCharsets.UTF_8);
+        Files.move(tempFilePath, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return true;
+    }
+
+    //Reads an order file, or the archived copy of a collected order once its file has been archived.
+    public static String readOrderFileOrArchive(Path dir, Path archiveDir, int orderId) throws IOException {
+        try {
+            return readOrderFile(dir, orderId);
+        } catch (IOException e) { // not there, or archived and deleted while being read
+            String orderDetail = readArchivedOrder(archiveDir, orderId);
+            if (orderDetail == null) {
+                throw e;
+            }
+            return orderDetail;
+        }
+    }
+
+    //Reads an order from the archive, null if it is not archived.
+    public static String readArchivedOrder(Path archiveDir, int orderId) throws IOException {
+        return archiveOf(archiveDir).readOrder(orderId);
+    }
+
+    /**
+     * Packs the collected order files last changed at least minAgeMillis ago into the archive,
+     * at most maxOrders per call, and deletes them from the collected folder.
+     * @return the number of order files archived
+     */
+    public static int archiveCollectedOrders(Path collectedDir, Path archiveDir, long minAgeMillis, int maxOrders) throws IOException {
+        return archiveOf(archiveDir).archiveCollectedOrders(collectedDir, minAgeMillis, maxOrders);
+    }
+
+    static OrderArchive archiveOf(Path archiveDir) throws IOException {
+        try {
+            return archives.computeIfAbsent(archiveDir.toAbsolutePath().normalize(), dir -> {
+                try {
+                    return new OrderArchive(dir);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
 }
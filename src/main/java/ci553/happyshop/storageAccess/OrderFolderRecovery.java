@@ -0,0 +1,172 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.orderManagement.OrderState;
+import ci553.happyshop.utility.Log;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * OrderFolderRecovery walks the order folders of a FolderOrderStore at startup, in parallel,
+ * and hands every order it finds straight to a consumer (OrderHub), without building lists of files or IDs first.
+ *
+ * How it works:
+ * - One thread per folder lists it with a DirectoryStream, which reads the folder as it goes,
+ *   and passes the file names on in batches of BATCH_SIZE.
+ * - A pool of checker threads takes the batches. For each file it checks the State: header
+ *   against the folder the file is in and rewrites the header if they differ (the folder wins, since
+ *   the index and every state change go by the folder). Then it puts the order into the OrderIndex
+ *   if the index does not have it in that state, and passes Ordered and Progressing orders to the consumer.
+ * - The consumer is called from several threads at once.
+ *
+ * The result tells how many orders were found, how many files were repaired and how long it took.
+ */
+
+class OrderFolderRecovery {
+    private static final int BATCH_SIZE = 1024;
+
+    // What one recovery found
+    record Result(int orders, int activeOrders, int repairedFiles, long elapsedMillis) {}
+
+    private final Map<OrderState, Path> folders;
+    private final OrderIndex index;
+    private final BiConsumer<Integer, OrderState> consumer;
+
+    private final LongAdder orders = new LongAdder();
+    private final LongAdder activeOrders = new LongAdder();
+    private final LongAdder repairedFiles = new LongAdder();
+    private final Queue<Future<?>> batches = new ConcurrentLinkedQueue<>();
+    private ExecutorService pool;
+
+    // folders: the state folders to walk, eg. Ordered -> orders/ordered
+    OrderFolderRecovery(Map<OrderState, Path> folders, OrderIndex index, BiConsumer<Integer, OrderState> consumer) {
+        this.folders = folders;
+        this.index = index;
+        this.consumer = consumer;
+    }
+
+    /**
+     * Walks the folders with the given number of checker threads, and returns once every file is checked.
+     * @throws IOException if a folder or an order file can not be read or repaired
+     */
+    Result run(int threads) throws IOException {
+        long start = System.nanoTime();
+        AtomicInteger threadCount = new AtomicInteger();
+        pool = Executors.newFixedThreadPool(Math.max(1, threads) + folders.size(), runnable -> {
+            Thread thread = new Thread(runnable, "OrderRecovery-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> listers = new ArrayList<>();
+            for (Map.Entry<OrderState, Path> folder : folders.entrySet()) {
+                listers.add(pool.submit(() -> {
+                    listFolder(folder.getKey(), folder.getValue());
+                    return null;
+                }));
+            }
+            for (Future<?> lister : listers) {
+                await(lister);
+            }
+            Future<?> batch;
+            while ((batch = batches.poll()) != null) { // all batches are queued once the listers are done
+                await(batch);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return new Result(orders.intValue(), activeOrders.intValue(), repairedFiles.intValue(),
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    // Lists one folder and queues its files in batches; runs on a lister thread
+    private void listFolder(OrderState state, Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            Log.warn(() -> dir + " does not exist.");
+            return;
+        }
+        List<Path> batch = new ArrayList<>(BATCH_SIZE);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*.txt")) {
+            for (Path file : files) {
+                batch.add(file);
+                if (batch.size() == BATCH_SIZE) {
+                    submit(state, batch);
+                    batch = new ArrayList<>(BATCH_SIZE);
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            submit(state, batch);
+        }
+    }
+
+    private void submit(OrderState state, List<Path> files) {
+        batches.add(pool.submit(() -> {
+            checkFiles(state, files);
+            return null;
+        }));
+    }
+
+    // Checks a batch of order files of one folder; runs on a checker thread
+    private void checkFiles(OrderState state, List<Path> files) throws IOException {
+        for (Path file : files) {
+            String fileName = file.getFileName().toString();
+            int orderId;
+            try {
+                orderId = Integer.parseInt(fileName.substring(0, fileName.lastIndexOf('.')));
+            } catch (NumberFormatException e) {
+                Log.warn(() -> "Invalid file name: " + file); // eg. a temp file left by a crash
+                continue;
+            }
+            if (orderId <= 0 || !Files.isRegularFile(file)) {
+                Log.warn(() -> "Invalid order file: " + file);
+                continue;
+            }
+            if (OrderFileManager.repairStateHeader(file, state)) {
+                repairedFiles.increment();
+                Log.warn(() -> "Repaired the State: header of " + file);
+            }
+            OrderIndex.Slot slot = index.get(orderId);
+            if (slot == null) {
+                index.put(orderId, new OrderIndex.Slot(state, 0, 0, 0, 0, 0));
+            } else if (slot.state() != state) {
+                index.put(orderId, new OrderIndex.Slot(state, slot.segment(), slot.offset(),
+                        slot.orderedTime(), slot.progressingTime(), slot.collectedTime()));
+            }
+            orders.increment();
+            if (state != OrderState.Collected) {
+                activeOrders.increment();
+                consumer.accept(orderId, state);
+            }
+        }
+    }
+
+    private static void await(Future<?> future) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Order recovery interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException("Order recovery failed", e.getCause());
+        }
+    }
+}
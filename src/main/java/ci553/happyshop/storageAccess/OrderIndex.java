@@ -0,0 +1,295 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.orderManagement.OrderState;
+import ci553.happyshop.orderManagement.OrderSummary;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * OrderIndex is a memory-mapped file with one fixed-width slot per order ID, so the state and location
+ * of any order are found in O(1) with a single memory read, without listing folders or parsing file names.
+ *
+ * File layout (orderIndex.dat):
+ *  <pre>
+ *  header, 64 bytes:
+ *    int  magic
+ *    int  slotSize
+ *    int  highestOrderId   the counter: the highest order ID in the index
+ *    int  count            number of orders in the index
+ *    int  lowestActiveId   every order below it is Collected
+ *  slot of order ID n, at 64 + (n - 1) * 40:
+ *    byte state            0 = empty, otherwise OrderState ordinal + 1
+ *    int  segment          where the order is stored, used by JournalOrderStore (0 for FolderOrderStore)
+ *    long offset
+ *    long orderedTime      epoch milliseconds, 0 if unknown
+ *    long progressingTime
+ *    long collectedTime
+ *  </pre>
+ *
+ * The slots are mapped in chunks (MappedByteBuffer) that are added as the order IDs grow.
+ * Because the mapping is shared with the operating system, a change is in the file as soon as it is
+ * written to memory; force() writes it to disk.
+ *
+ * activeOrders() only scans from lowestActiveId up to highestOrderId, and moves lowestActiveId up past
+ * the collected orders, so loading the active orders at startup stays fast however many collected
+ * orders there are.
+ *
+ * A ReadWriteLock makes every slot read see a complete slot, while many readers run in parallel.
+ */
+
+public class OrderIndex implements AutoCloseable {
+    private static final int MAGIC = 0x4F494458; // "OIDX"
+    private static final int HEADER_SIZE = 64;
+    static final int SLOT_SIZE = 40;
+    private static final int CHUNK_SLOTS = 1 << 16; // slots mapped at once, 2.5 MB per chunk
+
+    // header field positions
+    private static final int H_MAGIC = 0, H_SLOT_SIZE = 4, H_HIGHEST = 8, H_COUNT = 12, H_LOWEST_ACTIVE = 16;
+    // slot field positions
+    private static final int S_STATE = 0, S_SEGMENT = 4, S_OFFSET = 8, S_ORDERED = 16, S_PROGRESSING = 24, S_COLLECTED = 32;
+
+    // The content of one slot
+    public record Slot(OrderState state, int segment, long offset,
+                       long orderedTime, long progressingTime, long collectedTime) {
+
+        // the same slot after a change to newState at the given time; back to Ordered clears the progressing time
+        public Slot withState(OrderState newState, long time) {
+            return new Slot(newState, segment, offset, orderedTime,
+                    newState == OrderState.Progressing ? time : newState == OrderState.Ordered ? 0 : progressingTime,
+                    newState == OrderState.Collected ? time : collectedTime);
+        }
+    }
+
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    private final List<MappedByteBuffer> chunks = new ArrayList<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Opens the index file, creating an empty one if it does not exist.
+    public OrderIndex(Path file) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        if (header.getInt(H_MAGIC) == 0) { // a new file
+            header.putInt(H_MAGIC, MAGIC);
+            header.putInt(H_SLOT_SIZE, SLOT_SIZE);
+            header.putInt(H_LOWEST_ACTIVE, 1);
+        } else if (header.getInt(H_MAGIC) != MAGIC || header.getInt(H_SLOT_SIZE) != SLOT_SIZE) {
+            channel.close();
+            throw new IOException("Not an order index: " + file);
+        }
+        int highest = header.getInt(H_HIGHEST);
+        if (highest > 0) {
+            chunkFor(highest); // map the existing slots
+        }
+    }
+
+    // Writes a slot for the order, adding it to the index if it is new.
+    public void put(int orderId, Slot slot) throws IOException {
+        checkOrderId(orderId);
+        lock.writeLock().lock();
+        try {
+            MappedByteBuffer chunk = chunkFor(orderId);
+            int pos = slotPosition(orderId);
+            if (chunk.get(pos + S_STATE) == 0) {
+                header.putInt(H_COUNT, header.getInt(H_COUNT) + 1);
+            }
+            chunk.putInt(pos + S_SEGMENT, slot.segment());
+            chunk.putLong(pos + S_OFFSET, slot.offset());
+            chunk.putLong(pos + S_ORDERED, slot.orderedTime());
+            chunk.putLong(pos + S_PROGRESSING, slot.progressingTime());
+            chunk.putLong(pos + S_COLLECTED, slot.collectedTime());
+            chunk.put(pos + S_STATE, (byte) (slot.state().ordinal() + 1));
+            if (orderId > header.getInt(H_HIGHEST)) {
+                header.putInt(H_HIGHEST, orderId);
+            }
+            if (slot.state() != OrderState.Collected && orderId < header.getInt(H_LOWEST_ACTIVE)) {
+                header.putInt(H_LOWEST_ACTIVE, orderId); // eg. an old order added by a rebuild
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Takes an order out of the index, eg. when recovery finds no file for it.
+    public void remove(int orderId) {
+        if (orderId <= 0) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (orderId > header.getInt(H_HIGHEST)) {
+                return;
+            }
+            MappedByteBuffer chunk = chunks.get((orderId - 1) / CHUNK_SLOTS);
+            int pos = slotPosition(orderId);
+            if (chunk.get(pos + S_STATE) != 0) {
+                chunk.put(pos + S_STATE, (byte) 0);
+                header.putInt(H_COUNT, header.getInt(H_COUNT) - 1);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Returns the slot of an order, or null if the order is not in the index.
+    public Slot get(int orderId) {
+        if (orderId <= 0) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            if (orderId > header.getInt(H_HIGHEST)) {
+                return null;
+            }
+            MappedByteBuffer chunk = chunks.get((orderId - 1) / CHUNK_SLOTS);
+            int pos = slotPosition(orderId);
+            byte state = chunk.get(pos + S_STATE);
+            if (state == 0) {
+                return null;
+            }
+            return new Slot(OrderState.values()[state - 1], chunk.getInt(pos + S_SEGMENT), chunk.getLong(pos + S_OFFSET),
+                    chunk.getLong(pos + S_ORDERED), chunk.getLong(pos + S_PROGRESSING), chunk.getLong(pos + S_COLLECTED));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // The state and times of an order, or null if the order is not in the index.
+    public OrderSummary getSummary(int orderId) {
+        Slot slot = get(orderId);
+        return slot == null ? null
+                : new OrderSummary(orderId, slot.state(), slot.orderedTime(), slot.progressingTime(), slot.collectedTime());
+    }
+
+    public OrderState getState(int orderId) {
+        Slot slot = get(orderId);
+        return slot == null ? null : slot.state();
+    }
+
+    // the counter: the highest order ID in the index, 0 if empty
+    public int getHighestOrderId() {
+        return header.getInt(H_HIGHEST);
+    }
+
+    public int size() {
+        return header.getInt(H_COUNT);
+    }
+
+    /**
+     * Returns the orders that are Ordered or Progressing, in ascending order ID.
+     * Only the slots from lowestActiveId on are read; lowestActiveId is then moved up to the first active order.
+     */
+    public Map<Integer, OrderState> activeOrders() {
+        Map<Integer, OrderState> active = new TreeMap<>();
+        lock.writeLock().lock();
+        try {
+            int highest = header.getInt(H_HIGHEST);
+            int firstActive = highest + 1;
+            for (int orderId = Math.max(1, header.getInt(H_LOWEST_ACTIVE)); orderId <= highest; orderId++) {
+                byte state = chunks.get((orderId - 1) / CHUNK_SLOTS).get(slotPosition(orderId) + S_STATE);
+                if (state != 0 && state != OrderState.Collected.ordinal() + 1) {
+                    active.put(orderId, OrderState.values()[state - 1]);
+                    firstActive = Math.min(firstActive, orderId);
+                }
+            }
+            header.putInt(H_LOWEST_ACTIVE, firstActive);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return active;
+    }
+
+    /**
+     * Returns the state and times of every order that is not collected, or was collected at or after
+     * collectedSince, in ascending order ID. Unlike activeOrders() this reads every slot, one memory read
+     * per order ID, so it is only used once at startup.
+     */
+    public List<OrderSummary> summariesSince(long collectedSince) {
+        List<OrderSummary> summaries = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            int highest = header.getInt(H_HIGHEST);
+            for (int orderId = 1; orderId <= highest; orderId++) {
+                MappedByteBuffer chunk = chunks.get((orderId - 1) / CHUNK_SLOTS);
+                int pos = slotPosition(orderId);
+                byte state = chunk.get(pos + S_STATE);
+                long collectedTime = chunk.getLong(pos + S_COLLECTED);
+                if (state != 0 && (state != OrderState.Collected.ordinal() + 1 || collectedTime >= collectedSince)) {
+                    summaries.add(new OrderSummary(orderId, OrderState.values()[state - 1], chunk.getLong(pos + S_ORDERED),
+                            chunk.getLong(pos + S_PROGRESSING), collectedTime));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return summaries;
+    }
+
+    // Empties the index, eg. before it is rebuilt from the order files or the journal.
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            for (MappedByteBuffer chunk : chunks) {
+                for (int pos = 0; pos < chunk.capacity(); pos += SLOT_SIZE) {
+                    chunk.put(pos + S_STATE, (byte) 0);
+                }
+            }
+            header.putInt(H_HIGHEST, 0);
+            header.putInt(H_COUNT, 0);
+            header.putInt(H_LOWEST_ACTIVE, 1);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Writes all changes to disk.
+    public void force() {
+        lock.readLock().lock();
+        try {
+            for (MappedByteBuffer chunk : chunks) {
+                chunk.force();
+            }
+            header.force();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void close() throws IOException {
+        force();
+        channel.close();
+    }
+
+    private static void checkOrderId(int orderId) {
+        if (orderId <= 0) {
+            throw new IllegalArgumentException("Order ID must be positive: " + orderId);
+        }
+    }
+
+    // position of the slot inside its chunk
+    private static int slotPosition(int orderId) {
+        return ((orderId - 1) % CHUNK_SLOTS) * SLOT_SIZE;
+    }
+
+    // Returns the chunk holding the slot of orderId, mapping new chunks up to it; caller holds the write lock (or is the constructor)
+    private MappedByteBuffer chunkFor(int orderId) throws IOException {
+        int chunkIndex = (orderId - 1) / CHUNK_SLOTS;
+        while (chunks.size() <= chunkIndex) {
+            long start = HEADER_SIZE + (long) chunks.size() * CHUNK_SLOTS * SLOT_SIZE;
+            chunks.add(channel.map(FileChannel.MapMode.READ_WRITE, start, (long) CHUNK_SLOTS * SLOT_SIZE)); // grows the file
+        }
+        return chunks.get(chunkIndex);
+    }
+}
@@ -0,0 +1,111 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Order;
+import ci553.happyshop.orderManagement.OrderState;
+import ci553.happyshop.orderManagement.OrderSummary;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * The OrderStore interface defines how OrderHub persists orders.
+ * It is implemented by:
+ * - FolderOrderStore: one text file per order, moved between the ordered, progressing and collected folders
+ *   (the original file layout, see OrderFileManager).
+ * - JournalOrderStore: one append-only log of order-created and state-changed records, with checkpoints.
+ *
+ * OrderStoreFactory decides which one is used, so OrderHub does not depend on the storage format.
+ *
+ * Responsibilities:
+ * - Saving a new order and later changes of its state.
+ * - Reading the full details of an order, showing its current state and timestamps.
+ * - Loading the orders that are not collected yet, when the system starts (as a map or one by one).
+ * - Listing the state and times of the active and recently collected orders, for the order queries.
+ * - Exporting all orders to the folder layout, so the folders stay available whatever store is used.
+ */
+
+public interface OrderStore extends AutoCloseable {
+
+    /**
+     * Saves a new order in the Ordered state.
+     * @param orderId the order ID
+     * @param orderDetail the order text, as built by Order.orderDetails()
+     */
+    void createOrder(int orderId, String orderDetail) throws IOException;
+
+    /**
+     * Saves a new order in the Ordered state, used by OrderHub.
+     * By default it is saved as its text (Order.orderDetails()); JournalOrderStore saves it with OrderCodec.
+     */
+    default void createOrder(Order order) throws IOException {
+        createOrder(order.getOrderId(), order.orderDetails());
+    }
+
+    /**
+     * Changes the state of an order and records the time of the change
+     * (ProgressingDateTime or CollectedDateTime). Progressing back to Ordered clears ProgressingDateTime.
+     * @return true if the order was found and changed
+     */
+    boolean changeOrderState(int orderId, OrderState newState) throws IOException;
+
+    /**
+     * Reads the details of an order in its current state.
+     * @throws IOException if the order does not exist or can not be read
+     */
+    String readOrder(int orderId) throws IOException;
+
+    /**
+     * The state and times of an order as last saved, without reading the order itself; used by OrderHub
+     * to rank the orders it loads at startup by their real age.
+     * @return null if the store does not know the order or does not keep its times
+     */
+    default OrderSummary getOrderSummary(int orderId) {
+        return null;
+    }
+
+    /**
+     * The state and times of every order that is not collected or was collected at or after collectedSince,
+     * used by OrderHub on startup to fill its OrderQueryService.
+     * @return the summaries in ascending order ID; by default none, for a store that does not keep the times
+     */
+    default List<OrderSummary> loadOrderSummaries(long collectedSince) throws IOException {
+        return List.of();
+    }
+
+    /**
+     * Reads the IDs of the products in an order, used by OrderQueryService for the orders loaded at startup.
+     * By default they are taken from the Items: section of readOrder().
+     * @throws IOException if the order does not exist or can not be read
+     */
+    default List<String> readProductIds(int orderId) throws IOException {
+        return OrderFileManager.productIdsOf(readOrder(orderId));
+    }
+
+    /**
+     * Loads the orders that are Ordered or Progressing, used by OrderHub on startup.
+     * @return order ID -> state, in ascending order ID
+     */
+    Map<Integer, OrderState> loadActiveOrders() throws IOException;
+
+    /**
+     * Passes each order that is Ordered or Progressing to the consumer, used by OrderHub on startup so the
+     * orders go straight into its map. The consumer may be called from several threads at once, in any order.
+     * By default it goes through loadActiveOrders().
+     */
+    default void forEachActiveOrder(BiConsumer<Integer, OrderState> consumer) throws IOException {
+        loadActiveOrders().forEach(consumer);
+    }
+
+    /**
+     * Writes every order as a text file into the ordered, progressing or collected folder under ordersRoot.
+     * @return the number of order files written
+     */
+    int exportToFolders(Path ordersRoot) throws IOException;
+
+    // Flushes and releases the files used by the store.
+    @Override
+    void close() throws IOException;
+}
@@ -0,0 +1,91 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.utility.Log;
+import ci553.happyshop.utility.StorageLocation;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+
+/**
+ * The OrderStoreFactory class centralizes the choice and configuration of the OrderStore used by OrderHub,
+ * in the same way DatabaseRWFactory does for DatabaseRW.
+ *
+ * Responsibilities:
+ * - Holds the order store settings (type, journal folder, segment size, checkpoint interval, group commit,
+ *   folder recovery mode and archiving).
+ * - Creates the one OrderStore shared by the whole system on first use.
+ * - Closes it when the system shuts down.
+ *
+ * Example Usage:
+ *     OrderStoreFactory.orderStoreType = "journal";   // or -Dhappyshop.orderStore=journal
+ *     OrderStore store = OrderStoreFactory.getOrderStore();
+ */
+
+public class OrderStoreFactory {
+
+    // "folder" (default, one text file per order) or "journal" (append-only order journal)
+    public static String orderStoreType = System.getProperty("happyshop.orderStore", "folder");
+
+    // Journal settings, change them before the store is first used
+    public static Path journalPath = StorageLocation.journalPath;
+    public static long journalSegmentSize = 16L * 1024 * 1024; // start a new segment file after 16 MB
+    public static int journalCheckpointInterval = 10000;      // records between two checkpoints
+
+    // Group commit: writes wait until their record is on disk, concurrent writes share one flush
+    public static boolean journalGroupCommit = true;
+    public static long journalGroupCommitWindowMicros = 2000; // collect writes for up to 2 ms ...
+    public static int journalGroupCommitMaxRecords = 256;     // ... or until 256 records are waiting
+
+    // Folder store recovery mode: check every order file against the index at startup (see FolderOrderStore)
+    public static boolean folderRecoveryScan = Boolean.getBoolean("happyshop.recoverOrders");
+    public static int folderRecoveryThreads = Runtime.getRuntime().availableProcessors();
+
+    // Folder store archiving: collected order files older than the minimum age are packed into orders/archive
+    public static boolean folderArchiveEnabled = true;
+    public static long folderArchiveIntervalMillis = 60_000;
+    public static long folderArchiveMinAgeMillis = 60 * 60_000;  // leave an hour's collected orders as files
+    public static int folderArchiveMaxOrdersPerRun = 50_000;
+
+    private static OrderStore orderStore;
+
+    /**
+     * Returns the OrderStore shared by the whole system, creating it on first use.
+     * The store is closed by a shutdown hook when the JVM exits.
+     * @throws UncheckedIOException if the store (its journal or order index) can not be opened
+     */
+    public static synchronized OrderStore getOrderStore() {
+        if (orderStore == null) {
+            try {
+                if ("journal".equalsIgnoreCase(orderStoreType)) {
+                    JournalOrderStore journal = new JournalOrderStore(journalPath, journalSegmentSize, journalCheckpointInterval);
+                    if (journalGroupCommit) {
+                        journal.enableGroupCommit(journalGroupCommitWindowMicros * 1000, journalGroupCommitMaxRecords);
+                    }
+                    orderStore = journal;
+                } else {
+                    FolderOrderStore folders = new FolderOrderStore(StorageLocation.ordersPath, folderRecoveryScan, folderRecoveryThreads);
+                    if (folderArchiveEnabled) {
+                        folders.startArchiver(folderArchiveIntervalMillis, folderArchiveMinAgeMillis, folderArchiveMaxOrdersPerRun);
+                    }
+                    orderStore = folders;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to open the " + orderStoreType + " order store", e);
+            }
+            Runtime.getRuntime().addShutdownHook(new Thread(OrderStoreFactory::shutdown));
+        }
+        return orderStore;
+    }
+
+    // Closes the order store, called when the system shuts down. Calling it again has no effect.
+    public static synchronized void shutdown() {
+        if (orderStore != null) {
+            try {
+                orderStore.close();
+            } catch (IOException e) {
+                Log.error("Failed to close the order store", e);
+            }
+        }
+    }
+}
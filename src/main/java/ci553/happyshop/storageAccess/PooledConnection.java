@@ -0,0 +1,54 @@
+package ci553.happyshop.storageAccess;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * A connection borrowed from the ConnectionPool.
+ *
+ * It is used with try-with-resources exactly like a plain Connection,
+ * but closing it hands the physical connection back to the pool instead of closing it.
+ * Statements should be obtained through prepareStatement(), which reuses the statements
+ * cached on this connection.
+ */
+
+public class PooledConnection implements AutoCloseable {
+    private final ConnectionPool pool;
+    private StatementCache cached; // null once it has been returned to the pool
+
+    PooledConnection(ConnectionPool pool, StatementCache cached) {
+        this.pool = pool;
+        this.cached = cached;
+    }
+
+    // Returns the underlying JDBC connection. Do not close it directly.
+    public Connection getConnection() throws SQLException {
+        return checkedCache().getConnection();
+    }
+
+    /**
+     * Returns a PreparedStatement for the SQL text from this connection's statement cache.
+     * The statement stays owned by the cache: do not close it, only close its ResultSets.
+     */
+    public PreparedStatement prepareStatement(String sql) throws SQLException {
+        return checkedCache().prepare(sql);
+    }
+
+    private StatementCache checkedCache() throws SQLException {
+        if (cached == null) {
+            throw new SQLException("Connection has already been returned to the pool");
+        }
+        return cached;
+    }
+
+    // Returns the connection to the pool, calling it more than once has no effect.
+    @Override
+    public void close() {
+        if (cached != null) {
+            StatementCache toRelease = cached;
+            cached = null;
+            pool.release(toRelease);
+        }
+    }
+}
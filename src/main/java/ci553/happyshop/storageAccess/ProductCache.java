@@ -0,0 +1,107 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Product;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ProductCache keeps recently read products in memory, keyed by product ID.
+ * It is shared by all CachingDatabaseRW instances created by the DatabaseRWFactory,
+ * so a write made through one client invalidates the entry for every other client too.
+ *
+ * Memory is bounded by entry count: the least recently used product is evicted
+ * once maxEntries is exceeded.
+ *
+ * Products are mutable (e.g. setOrderedQuantity), so the cache stores its own copy
+ * and always hands out a fresh copy to callers.
+ *
+ * Stale reads are avoided with a write version: a reader takes the version before reading
+ * the database and only stores the result if no invalidation happened in the meantime.
+ */
+
+public class ProductCache {
+    private final int maxEntries;
+    private final Map<String, Product> products;
+    private final AtomicLong writeVersion = new AtomicLong(); // increased on every invalidation
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public ProductCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.products = new LinkedHashMap<>(16, 0.75f, true) { // true = access order, needed for LRU
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Product> eldest) {
+                return size() > ProductCache.this.maxEntries;
+            }
+        };
+    }
+
+    // Returns a copy of the cached product, or null if it is not cached.
+    public synchronized Product get(String productId) {
+        Product product = products.get(productId);
+        if (product == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return copyOf(product);
+    }
+
+    // Checks whether a product is cached without counting a hit or miss.
+    public synchronized boolean contains(String productId) {
+        return products.containsKey(productId);
+    }
+
+    // Returns the current write version, take it before reading from the database.
+    public long getWriteVersion() {
+        return writeVersion.get();
+    }
+
+    /**
+     * Stores a product read from the database, unless the cache was invalidated
+     * after readVersion was taken (the product read may already be out of date).
+     */
+    public synchronized void put(Product product, long readVersion) {
+        if (product != null && readVersion == writeVersion.get()) {
+            products.put(product.getProductId(), copyOf(product));
+        }
+    }
+
+    // Removes a product, called after any successful write to that product.
+    public synchronized void invalidate(String productId) {
+        writeVersion.incrementAndGet();
+        products.remove(productId);
+    }
+
+    public synchronized void clear() {
+        writeVersion.incrementAndGet();
+        products.clear();
+    }
+
+    // Makes an independent copy of a product, so callers can not change the cached one.
+    static Product copyOf(Product p) {
+        Product copy = new Product(p.getProductId(), p.getProductDescription(), p.getProductImageName(),
+                p.getUnitPrice(), p.getStockQuantity());
+        copy.setOrderedQuantity(p.getOrderedQuantity());
+        return copy;
+    }
+
+    //a set of getter methods for cache statistics
+    public synchronized int size() { return products.size(); }
+    public int getMaxEntries() { return maxEntries; }
+    public long getHits() { return hits.get(); }
+    public long getMisses() { return misses.get(); }
+
+    public double getHitRatio() {
+        long total = hits.get() + misses.get();
+        return total == 0 ? 0 : (double) hits.get() / total;
+    }
+
+    public String getStats() {
+        return String.format("ProductCache[size=%d/%d, hits=%d, misses=%d, hitRatio=%.2f%%]",
+                size(), maxEntries, getHits(), getMisses(), getHitRatio() * 100);
+    }
+}
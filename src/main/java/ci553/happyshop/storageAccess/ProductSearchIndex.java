@@ -0,0 +1,205 @@
+package ci553.happyshop.storageAccess;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * ProductSearchIndex is an in-memory inverted index over ProductTable.description.
+ * It replaces the "LOWER(description) LIKE '%keyword%'" full table scan used by the name search.
+ *
+ * How it works:
+ * - Each description is split into lower-case tokens (words made of letters and digits).
+ * - tokenIndex maps every token to the set of product IDs whose description contains it.
+ *   It is a TreeMap, so all tokens starting with a prefix are found with one subMap() range lookup.
+ * - A query is tokenized the same way. Every query word is matched as a prefix,
+ *   and the results of all words are intersected (AND), e.g. "usb dri" finds "USB drive".
+ *
+ * The index only answers which product IDs match; the products themselves are still read
+ * from the database by primary key, so stock and price are always up to date.
+ *
+ * The index is shared by all DerbyRW instances. It is loaded once from the database on first use,
+ * and then kept up to date by the DerbyRW write methods (insert, update, delete).
+ * A ReadWriteLock lets many searches run in parallel while writes are exclusive.
+ */
+
+public class ProductSearchIndex {
+    private final TreeMap<String, Set<String>> tokenIndex = new TreeMap<>();  // token -> product IDs
+    private final Map<String, List<String>> productTokens = new HashMap<>();  // product ID -> its tokens
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile boolean loaded = false; // true once the index has been filled from the database
+    private long modificationCount = 0;      // number of put/remove calls, guarded by the lock
+
+    // Splits a text into lower-case tokens, e.g. "40 inch TV" -> [40, inch, tv]
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        for (String token : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    // Returns the number of put/remove calls so far, read it before reading the products to load.
+    public long getModificationCount() {
+        lock.readLock().lock();
+        try {
+            return modificationCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Fills the index with all products, replacing anything indexed before.
+     * The load is refused if put/remove was called after expectedModificationCount was read,
+     * because the descriptions may then miss that change; the caller should read them again.
+     *
+     * @param descriptions product ID -> description of every product in the database
+     * @param expectedModificationCount the value of getModificationCount() before the descriptions were read
+     * @return true if the index was loaded, false if it changed in the meantime
+     */
+    public boolean load(Map<String, String> descriptions, long expectedModificationCount) {
+        lock.writeLock().lock();
+        try {
+            if (modificationCount != expectedModificationCount) {
+                return false;
+            }
+            tokenIndex.clear();
+            productTokens.clear();
+            for (Map.Entry<String, String> entry : descriptions.entrySet()) {
+                addProduct(entry.getKey(), entry.getValue());
+            }
+            loaded = true;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Indexes a new or changed product description. Calling it again with the same values has no effect.
+    public void put(String productId, String description) {
+        lock.writeLock().lock();
+        try {
+            modificationCount++;
+            removeProduct(productId);
+            addProduct(productId, description);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Removes a deleted product from the index.
+    public void remove(String productId) {
+        lock.writeLock().lock();
+        try {
+            modificationCount++;
+            removeProduct(productId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the IDs of all products whose description contains every word of the query
+     * (each word matched as a prefix of a description word).
+     *
+     * @return matching product IDs in ascending order, empty if nothing matches
+     */
+    public List<String> search(String query) {
+        List<String> words = tokenize(query);
+        if (words.isEmpty()) {
+            return Collections.emptyList();
+        }
+        lock.readLock().lock();
+        try {
+            TreeSet<String> result = null;
+            for (String word : words) {
+                TreeSet<String> matches = idsWithPrefix(word);
+                if (result == null) {
+                    result = matches;
+                } else {
+                    result.retainAll(matches);
+                }
+                if (result.isEmpty()) {
+                    break; // no need to look at the remaining words
+                }
+            }
+            return new ArrayList<>(result);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return productTokens.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // The number of distinct tokens indexed, tokens no product uses any more are dropped
+    int tokenCount() {
+        lock.readLock().lock();
+        try {
+            return tokenIndex.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Collects the product IDs of every token that starts with the prefix, caller holds the read lock.
+    private TreeSet<String> idsWithPrefix(String prefix) {
+        TreeSet<String> ids = new TreeSet<>();
+        SortedMap<String, Set<String>> range = tokenIndex.subMap(prefix, prefix + Character.MAX_VALUE);
+        for (Set<String> productIds : range.values()) {
+            ids.addAll(productIds);
+        }
+        return ids;
+    }
+
+    // caller holds the write lock
+    private void addProduct(String productId, String description) {
+        List<String> tokens = tokenize(description);
+        productTokens.put(productId, tokens);
+        for (String token : tokens) {
+            tokenIndex.computeIfAbsent(token, t -> new TreeSet<>()).add(productId);
+        }
+    }
+
+    // caller holds the write lock
+    private void removeProduct(String productId) {
+        List<String> tokens = productTokens.remove(productId);
+        if (tokens == null) {
+            return;
+        }
+        for (String token : tokens) {
+            Set<String> ids = tokenIndex.get(token);
+            if (ids != null) {
+                ids.remove(productId);
+                if (ids.isEmpty()) {
+                    tokenIndex.remove(token);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package ci553.happyshop.storageAccess;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * StatementCache belongs to one physical connection of the ConnectionPool and keeps
+ * the PreparedStatements that were prepared on it, keyed by their SQL text.
+ *
+ * DerbyRW only uses a handful of SQL strings, so after warm-up every search or purchase finds its
+ * statements here and skips statement compilation entirely.
+ *
+ * The cache is bounded: a LinkedHashMap in access order gives least-recently-used (LRU) eviction,
+ * and an evicted statement is closed. A cache is only used by the one thread that currently holds
+ * its connection, so it needs no locking; hit, miss and eviction counts are reported to the pool.
+ */
+
+class StatementCache {
+    private final Connection connection;
+    private final ConnectionPool pool; // receives hit/miss/eviction counts
+    private final Map<String, PreparedStatement> statements;
+
+    StatementCache(Connection connection, ConnectionPool pool, int capacity) {
+        this.connection = connection;
+        this.pool = pool;
+        this.statements = new LinkedHashMap<>(16, 0.75f, true) { // true = access order, needed for LRU
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() > capacity) {
+                    closeQuietly(eldest.getValue());
+                    pool.recordStatementEviction();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    Connection getConnection() {
+        return connection;
+    }
+
+    /**
+     * Returns the cached statement for the SQL text, preparing and caching it on a miss.
+     * A reused statement has its parameters and batch cleared, so it behaves like a freshly prepared one.
+     * The caller must NOT close the returned statement.
+     */
+    PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement stmt = statements.get(sql);
+        if (stmt != null && !stmt.isClosed()) {
+            pool.recordStatementHit();
+            stmt.clearParameters();
+            stmt.clearBatch();
+            return stmt;
+        }
+        pool.recordStatementMiss();
+        stmt = connection.prepareStatement(sql);
+        statements.put(sql, stmt);
+        return stmt;
+    }
+
+    int size() {
+        return statements.size();
+    }
+
+    // Closes every cached statement and the connection itself.
+    void close() {
+        for (PreparedStatement stmt : statements.values()) {
+            closeQuietly(stmt);
+        }
+        statements.clear();
+        try {
+            connection.close();
+        } catch (SQLException ignored) {
+            // the connection is discarded anyway
+        }
+    }
+
+    private static void closeQuietly(PreparedStatement stmt) {
+        try {
+            stmt.close();
+        } catch (SQLException ignored) {
+            // the statement is discarded anyway
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package ci553.happyshop.storageAccess;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * StripedProductLock protects stock changes per product instead of with one lock for everything.
+ *
+ * A fixed array of ReentrantLocks ("stripes") is shared by the whole process. A product ID is mapped
+ * to one stripe by its hash, so:
+ * - two checkouts with the same product always use the same lock and never run at the same time,
+ * - checkouts with different products usually use different locks and run in parallel.
+ *
+ * A checkout locks all of its products at once. To avoid deadlock, the stripes are always acquired in
+ * ascending stripe order (two products may share a stripe, so ordering by stripe rather than by ID
+ * is what guarantees every thread takes the locks in the same order), and each stripe is taken only once.
+ *
+ * Example Usage:
+ *     List<ReentrantLock> held = productLocks.lockAll(productIds);
+ *     try {
+ *         ... check and change stock ...
+ *     } finally {
+ *         productLocks.unlockAll(held);
+ *     }
+ */
+
+public class StripedProductLock {
+    private final ReentrantLock[] stripes;
+
+    public StripedProductLock(int stripeCount) {
+        if (stripeCount <= 0) {
+            throw new IllegalArgumentException("Stripe count must be positive: " + stripeCount);
+        }
+        stripes = new ReentrantLock[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    // Maps a product ID to its stripe
+    int stripeIndex(String productId) {
+        return Math.floorMod(productId.hashCode(), stripes.length);
+    }
+
+    /**
+     * Locks the stripes of all given products in ascending stripe order.
+     * @return the locks that were acquired, to be passed to unlockAll()
+     */
+    public List<ReentrantLock> lockAll(Collection<String> productIds) {
+        TreeSet<Integer> stripeIndexes = new TreeSet<>(); // sorted and without duplicates
+        for (String productId : productIds) {
+            stripeIndexes.add(stripeIndex(productId));
+        }
+        List<ReentrantLock> held = new ArrayList<>(stripeIndexes.size());
+        try {
+            for (int index : stripeIndexes) {
+                ReentrantLock stripe = stripes[index];
+                stripe.lock();
+                held.add(stripe);
+            }
+        } catch (RuntimeException e) {
+            unlockAll(held); // never keep a partial set of locks
+            throw e;
+        }
+        return held;
+    }
+
+    // Locks the stripe of a single product.
+    public List<ReentrantLock> lock(String productId) {
+        return lockAll(List.of(productId));
+    }
+
+    // Releases the locks returned by lockAll(), in reverse order.
+    public void unlockAll(List<ReentrantLock> held) {
+        for (int i = held.size() - 1; i >= 0; i--) {
+            held.get(i).unlock();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Product;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * VirtualThreadDatabaseRW makes any DatabaseRW asynchronous.
+ *
+ * Each call is run as its own task on an executor that starts one virtual thread per task,
+ * (Executors.newVirtualThreadPerTaskExecutor()), so a blocking JDBC call only parks a cheap virtual
+ * thread and never the JavaFX application thread. Many calls can wait for the database at the same time;
+ * the shared ConnectionPool still bounds how many actually use a connection.
+ */
+
+public class VirtualThreadDatabaseRW implements AsyncDatabaseRW {
+    private final DatabaseRW database; // the blocking DatabaseRW doing the real work
+    private final ExecutorService executor;
+
+    // A database call that may throw SQLException, run on a virtual thread
+    @FunctionalInterface
+    private interface DatabaseCall<T> {
+        T call() throws SQLException;
+    }
+
+    public VirtualThreadDatabaseRW(DatabaseRW database, ExecutorService executor) {
+        this.database = database;
+        this.executor = executor;
+    }
+
+    // Runs the call on the executor, completing the future with its result or its exception
+    private <T> CompletableFuture<T> submit(DatabaseCall<T> databaseCall) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                future.complete(databaseCall.call());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    public CompletableFuture<ArrayList<Product>> searchProduct(String keyword) {
+        return submit(() -> database.searchProduct(keyword));
+    }
+
+    public CompletableFuture<Product> searchByProductId(String productId) {
+        return submit(() -> database.searchByProductId(productId));
+    }
+
+    public CompletableFuture<Map<String, Product>> searchByProductIds(Collection<String> productIds) {
+        return submit(() -> database.searchByProductIds(productIds));
+    }
+
+    public CompletableFuture<ArrayList<Product>> purchaseStocks(ArrayList<Product> proList) {
+        return submit(() -> database.purchaseStocks(proList));
+    }
+
+    public CompletableFuture<Void> updateProduct(String id, String des, double price, String imageName, int stock) {
+        return submit(() -> {
+            database.updateProduct(id, des, price, imageName, stock);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> deleteProduct(String id) {
+        return submit(() -> {
+            database.deleteProduct(id);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> insertNewProduct(String id, String des, double price, String image, int stock) {
+        return submit(() -> {
+            database.insertNewProduct(id, des, price, image, stock);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Boolean> isProIdAvailable(String productId) {
+        return submit(() -> database.isProIdAvailable(productId));
+    }
+}
@@ -0,0 +1,84 @@
+package ci553.happyshop.utility;
+
+import java.util.Locale;
+import java.util.function.Supplier;
+
+/**
+ * Log is a small leveled logging facade used instead of calling System.out.println directly.
+ *
+ * Levels, from most to least detailed: DEBUG, INFO, WARN, ERROR, OFF.
+ * A message is only written if its level is at least the current level.
+ * DEBUG and INFO go to System.out, WARN and ERROR go to System.err.
+ *
+ * The current level is read from the system property "happyshop.log.level" (e.g. -Dhappyshop.log.level=DEBUG)
+ * and defaults to INFO. It can also be changed at runtime with setLevel().
+ *
+ * Messages that need string building should be passed as a Supplier (a lambda), e.g.
+ *     Log.debug(() -> "Product " + productId + " found.");
+ * The lambda is only called when DEBUG is enabled, so a disabled message costs neither
+ * string formatting nor console I/O.
+ */
+
+public class Log {
+    public enum Level { DEBUG, INFO, WARN, ERROR, OFF }
+
+    private static volatile Level level = readLevelProperty();
+
+    private Log() {} // static use only
+
+    private static Level readLevelProperty() {
+        String value = System.getProperty("happyshop.log.level", "INFO");
+        try {
+            return Level.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return Level.INFO;
+        }
+    }
+
+    public static void setLevel(Level newLevel) { level = newLevel; }
+    public static Level getLevel() { return level; }
+
+    public static boolean isEnabled(Level messageLevel) {
+        return messageLevel != Level.OFF && messageLevel.ordinal() >= level.ordinal();
+    }
+
+    public static boolean isDebugEnabled() {
+        return isEnabled(Level.DEBUG);
+    }
+
+    // a set of methods for plain messages, use them when the message is a constant
+    public static void debug(String message) { write(Level.DEBUG, message); }
+    public static void info(String message) { write(Level.INFO, message); }
+    public static void warn(String message) { write(Level.WARN, message); }
+    public static void error(String message) { write(Level.ERROR, message); }
+
+    // a set of methods for lazily built messages, the supplier is only called when the level is enabled
+    public static void debug(Supplier<String> message) { write(Level.DEBUG, message); }
+    public static void info(Supplier<String> message) { write(Level.INFO, message); }
+    public static void warn(Supplier<String> message) { write(Level.WARN, message); }
+
+    // Logs an error together with the stack trace of the exception that caused it.
+    public static void error(String message, Throwable cause) {
+        if (isEnabled(Level.ERROR)) {
+            System.err.println(message);
+            cause.printStackTrace();
+        }
+    }
+
+    private static void write(Level messageLevel, Supplier<String> message) {
+        if (isEnabled(messageLevel)) {
+            write(messageLevel, message.get());
+        }
+    }
+
+    private static void write(Level messageLevel, String message) {
+        if (!isEnabled(messageLevel)) {
+            return;
+        }
+        if (messageLevel.ordinal() >= Level.WARN.ordinal()) {
+            System.err.println(message);
+        } else {
+            System.out.println(message);
+        }
+    }
+}
@@ -25,12 +25,27 @@ import java.nio.file.Paths;
  *         Subfolder to store orders in the "Progressing" state (e.g., being prepared by a picker).
  *    - collectedPath:
  *         Subfolder to store orders in the "Collected" state (e.g., customer collected).
+ *    - archivePath:
+ *         Subfolder holding the compressed day segments of archived collected orders (OrderArchive),
+ *         so the collected folder does not keep one file per order forever.
+ *    - journalPath:
+ *         Subfolder holding the segments and checkpoint of the order journal, used instead of the
+ *         three state folders when the journal order store is selected.
  *
  * 3. Order ID Tracking:
  *    - orderCounterFile / orderCounterPath:
  *         A text file (orders/orderCounter.txt) used to track and increment the unique order ID
  *         when a new order is created.
  *
+ *    - orderIndexFile / orderIndexPath:
+ *         A binary, memory-mapped file (orders/orderIndex.dat) with the state of every order by ID,
+ *         used to load the active orders and find an order's folder without listing the folders.
+ *
+ * 4. In-memory Database:
+ *    - productSnapshotFile / productSnapshotPath:
+ *         A binary file holding all products of the in-memory database (InMemoryRW),
+ *         saved on shutdown and loaded on startup.
+ *
  * These static paths ensure consistent folder usage throughout the application and simplify
  * file-related operations such as reset, loading, and persistence.
  *
@@ -60,8 +75,18 @@ public class StorageLocation {
     public static final Path orderedPath = ordersPath.resolve("ordered");//orders/ordered to store orders at Ordered state
     public static final Path progressingPath = ordersPath.resolve("progressing");// orders/progressing to store orders at Progressing state
     public static final Path collectedPath = ordersPath.resolve("collected");//orders/collected to store orders at Collected state
+    public static final Path journalPath = ordersPath.resolve("journal");//orders/journal holds the order journal (JournalOrderStore)
+    public static final Path archivePath = ordersPath.resolve("archive");//orders/archive holds the archived collected orders
 
     //OrderCounter File and its Path, ie orders/orderCounter.txt
     public static final String orderCounterFile = "orderCounter.txt";
     public static final Path orderCounterPath = ordersPath.resolve(orderCounterFile);
+
+    //Memory-mapped order index, one slot per order ID, ie orders/orderIndex.dat
+    public static final String orderIndexFile = "orderIndex.dat";
+    public static final Path orderIndexPath = ordersPath.resolve(orderIndexFile);
+
+    //Snapshot of the in-memory database, ie happyShopDB.snapshot
+    public static final String productSnapshotFile = "happyShopDB.snapshot";
+    public static final Path productSnapshotPath = Paths.get(productSnapshotFile);
 }
@@ -0,0 +1,58 @@
+package ci553.happyshop.catalogue;
+
+import ci553.happyshop.orderManagement.OrderState;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderCodecTest {
+
+    private static Order order() {
+        ArrayList<Product> products = new ArrayList<>();
+        products.add(new Product("0002", "DAB Radio", "0002.jpg", 29.99, 100));
+        products.add(new Product("0004", "Watch", "0004.jpg", 29.99, 100));
+        Product usb = new Product("X-7", "USB drive £", "usb.png", 6.99, 100);
+        usb.setOrderedQuantity(3);
+        products.add(usb);
+        Order order = new Order(123456, OrderState.Progressing, "2025-05-03 16:52:24", products);
+        order.setProgressingDateTime("2025-05-03 17:01:00");
+        order.setExpress(true);
+        return order;
+    }
+
+    /**
+     * Decoding gives the same order, so the same text, in a fraction of the bytes.
+     */
+    @Test
+    void roundTripRendersTheSameText() throws Exception {
+        Order order = order();
+        byte[] encoded = OrderCodec.encode(order);
+        Order decoded = OrderCodec.decode(encoded);
+
+        assertEquals(order.orderDetails(), decoded.orderDetails());
+        assertTrue(decoded.isExpress());
+        assertEquals(5, decoded.getItemCount());
+        assertEquals("usb.png", decoded.getProductList().get(2).getProductImageName());
+        assertEquals("", decoded.getCollectedDateTime());
+        int textBytes = order.orderDetails().getBytes(StandardCharsets.UTF_8).length;
+        assertTrue(encoded.length * 3 < textBytes, encoded.length + " bytes encoded, " + textBytes + " as text");
+    }
+
+    /**
+     * Text, a cut-short encoding and an unknown version are refused.
+     */
+    @Test
+    void badBytesAreRefused() {
+        byte[] encoded = OrderCodec.encode(order());
+        assertFalse(OrderCodec.isEncoded(order().orderDetails().getBytes(StandardCharsets.UTF_8)));
+        assertThrows(IOException.class, () -> OrderCodec.decode(Arrays.copyOf(encoded, encoded.length - 5)));
+        byte[] future = encoded.clone();
+        future[1] = 2;
+        assertThrows(IOException.class, () -> OrderCodec.decode(future));
+    }
+}
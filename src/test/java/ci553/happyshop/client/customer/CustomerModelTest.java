@@ -1,7 +1,6 @@
 package ci553.happyshop.client.customer;
 
 import ci553.happyshop.catalogue.Product;
-import com.sun.javafx.tk.DummyToolkit;
 import javafx.scene.control.TextField;
 import org.junit.jupiter.api.Test;
 
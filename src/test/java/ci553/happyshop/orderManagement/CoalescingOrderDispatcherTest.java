@@ -0,0 +1,93 @@
+package ci553.happyshop.orderManagement;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CoalescingOrderDispatcherTest {
+
+    /**
+     * A burst of events from several threads is delivered in a few frames, one thread at a time,
+     * and the observer ends with the latest state of every order.
+     */
+    @Test
+    void burstIsCollapsedIntoFewRenders() throws Exception {
+        OrderMapReplica replica = new OrderMapReplica();
+        ExecutorService uiThread = Executors.newSingleThreadExecutor();
+        CoalescingOrderDispatcher dispatcher = new CoalescingOrderDispatcher(replica::apply, uiThread,
+                TimeUnit.MILLISECONDS.toNanos(16));
+        AtomicLong version = new AtomicLong();
+        int orders = 5000;
+
+        long start = System.nanoTime();
+        ExecutorService producers = Executors.newFixedThreadPool(4);
+        for (int p = 0; p < 4; p++) {
+            int first = p * orders / 4;
+            producers.submit(() -> {
+                for (int orderId = first; orderId < first + orders / 4; orderId++) {
+                    dispatcher.onOrderEvents(List.of(new OrderEvent(orderId, null, OrderState.Ordered, version.incrementAndGet())));
+                    dispatcher.onOrderEvents(List.of(new OrderEvent(orderId, OrderState.Ordered, OrderState.Progressing, version.incrementAndGet())));
+                }
+            });
+        }
+        producers.shutdown();
+        assertTrue(producers.awaitTermination(30, TimeUnit.SECONDS));
+        long elapsedFrames = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) / 16 + 1;
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (uiThreadSize(replica, uiThread) < orders && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        uiThread.submit(() -> {
+            assertEquals(orders, replica.orders().size());
+            assertTrue(replica.orders().values().stream().allMatch(state -> state == OrderState.Progressing));
+        }).get();
+        uiThread.shutdown();
+
+        assertEquals(2L * orders, dispatcher.getEventsReceived());
+        assertTrue(dispatcher.getRenders() <= elapsedFrames + 2,
+                "more renders than frames: " + dispatcher.getStats() + ", frames " + elapsedFrames);
+    }
+
+    /**
+     * Several events of one order in one frame become one event with the newest state; a late older event is dropped.
+     */
+    @Test
+    void eventsOfOneOrderAreMerged() throws Exception {
+        List<List<OrderEvent>> delivered = new ArrayList<>();
+        List<Runnable> queued = new CopyOnWriteArrayList<>(); // the delivery is queued by the pulse thread
+        CoalescingOrderDispatcher dispatcher = new CoalescingOrderDispatcher(delivered::add, queued::add,
+                TimeUnit.MILLISECONDS.toNanos(16));
+
+        dispatcher.onOrderEvents(List.of(new OrderEvent(1, null, OrderState.Ordered, 1)));
+        dispatcher.onOrderEvents(List.of(new OrderEvent(1, OrderState.Progressing, OrderState.Collected, 3),
+                new OrderEvent(1, OrderState.Ordered, OrderState.Progressing, 2)));
+        dispatcher.onOrderEvents(List.of(new OrderEvent(2, null, OrderState.Ordered, 4)));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (queued.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        Thread.sleep(50);
+        assertEquals(1, queued.size(), "only one delivery may be queued");
+        queued.get(0).run();
+        assertEquals(1, delivered.size());
+        assertEquals(List.of(new OrderEvent(1, null, OrderState.Collected, 3), new OrderEvent(2, null, OrderState.Ordered, 4)),
+                delivered.get(0));
+        assertEquals(4, dispatcher.getEventsReceived());
+        assertEquals(1, dispatcher.getRenders());
+    }
+
+    // Reads the replica size on the thread that owns it
+    private static int uiThreadSize(OrderMapReplica replica, ExecutorService uiThread) throws Exception {
+        return uiThread.submit(() -> replica.orders().size()).get();
+    }
+}
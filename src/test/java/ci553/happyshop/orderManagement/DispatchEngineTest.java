@@ -0,0 +1,110 @@
+package ci553.happyshop.orderManagement;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DispatchEngineTest {
+
+    private static final long START = 1_000_000_000_000L;
+
+    private static ReadyOrder order(int orderId, long orderedTime, int itemCount, boolean express) {
+        return new ReadyOrder(orderId, orderedTime, itemCount, express, orderedTime);
+    }
+
+    /**
+     * SIZE hands out the smallest order first, EXPRESS the express orders first, both oldest first on a tie.
+     */
+    @Test
+    void policiesRankOrders() {
+        DispatchEngine bySize = new DispatchEngine(DispatchPolicy.SIZE, START);
+        DispatchEngine byExpress = new DispatchEngine(DispatchPolicy.EXPRESS, START);
+        List<ReadyOrder> orders = List.of(order(1, START, 5, false), order(2, START + 1, 1, false),
+                order(3, START + 2, 3, true), order(4, START + 3, 1, true));
+        for (ReadyOrder order : orders) {
+            bySize.offer(order, START);
+            byExpress.offer(order, START);
+        }
+        assertEquals(List.of(2, 4, 3, 1), drain(bySize));
+        assertEquals(List.of(3, 4, 1, 2), drain(byExpress));
+    }
+
+    /**
+     * An order past its service level deadline moves ahead of every order that is not, once refresh() sees it.
+     */
+    @Test
+    void overdueOrderJumpsAhead() {
+        DispatchEngine engine = new DispatchEngine(DispatchPolicy.SIZE, START);
+        engine.offer(order(1, START, 10, false), START);
+        engine.offer(order(2, START + 60_000, 1, false), START);
+        engine.offer(order(3, START + 60_000, 2, true), START);
+
+        engine.refresh(START + DispatchEngine.expressSlaMillis + 60_000 + 1000); // order 3 is late
+        assertEquals(3, engine.poll().orderId());
+        engine.refresh(START + DispatchEngine.standardSlaMillis + 1000);         // order 1 is late
+        assertEquals(1, engine.poll().orderId());
+        assertEquals(2, engine.poll().orderId());
+        assertNull(engine.poll());
+    }
+
+    /**
+     * Random offers, removals and polls give the same orders as a sorted list.
+     */
+    @Test
+    void heapMatchesSortedReference() {
+        DispatchEngine engine = new DispatchEngine(DispatchPolicy.SIZE, START);
+        Comparator<ReadyOrder> expected = Comparator.comparingInt(ReadyOrder::itemCount)
+                .thenComparingLong(ReadyOrder::orderedTime).thenComparingInt(ReadyOrder::orderId);
+        List<ReadyOrder> reference = new ArrayList<>();
+        Random random = new Random(20);
+        for (int orderId = 1; orderId <= 5000; orderId++) {
+            ReadyOrder order = order(orderId, START + random.nextInt(1000), random.nextInt(20), false);
+            engine.offer(order, START);
+            reference.add(order);
+            int action = random.nextInt(4);
+            if (action == 0) {
+                ReadyOrder removed = reference.remove(random.nextInt(reference.size()));
+                engine.remove(removed.orderId());
+            } else if (action == 1) {
+                ReadyOrder best = reference.stream().min(expected).orElseThrow();
+                reference.remove(best);
+                assertEquals(best, engine.poll());
+            }
+            assertEquals(reference.size(), engine.size());
+        }
+        reference.sort(expected);
+        for (ReadyOrder order : reference) {
+            assertEquals(order, engine.poll());
+        }
+        assertNull(engine.poll());
+    }
+
+    /**
+     * The percentiles are within one bucket (about 5%) of the exact values.
+     */
+    @Test
+    void histogramPercentiles() {
+        WaitTimeHistogram histogram = new WaitTimeHistogram();
+        for (long millis = 1; millis <= 10_000; millis++) {
+            histogram.record(millis);
+        }
+        assertEquals(10_000, histogram.getCount());
+        assertEquals(10_000, histogram.getMax());
+        assertEquals(5000, histogram.getPercentile(50), 5000 * 0.05);
+        assertEquals(9900, histogram.getPercentile(99), 9900 * 0.05);
+    }
+
+    private static List<Integer> drain(DispatchEngine engine) {
+        List<Integer> orderIds = new ArrayList<>();
+        ReadyOrder order;
+        while ((order = engine.poll()) != null) {
+            orderIds.add(order.orderId());
+        }
+        return orderIds;
+    }
+}
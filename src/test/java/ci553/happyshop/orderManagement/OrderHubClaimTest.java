@@ -0,0 +1,135 @@
+package ci553.happyshop.orderManagement;
+
+import ci553.happyshop.catalogue.Product;
+import ci553.happyshop.storageAccess.JournalOrderStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderHubClaimTest {
+
+    private static ArrayList<Product> trolley() {
+        ArrayList<Product> trolley = new ArrayList<>();
+        trolley.add(new Product("0001", "40 inch TV", "0001.jpg", 269.00, 100));
+        return trolley;
+    }
+
+    private static OrderHub newHub(Path dir, JournalOrderStore store) throws Exception {
+        Path counter = dir.resolve("orderCounter.txt");
+        Files.writeString(counter, "0");
+        return new OrderHub(store, new OrderIdAllocator(counter, 100));
+    }
+
+    /**
+     * Many pickers claiming at once: every order is claimed exactly once, oldest first per picker,
+     * and every claim can be completed.
+     */
+    @Test
+    void concurrentPickersClaimEachOrderOnce(@TempDir Path dir) throws Exception {
+        try (JournalOrderStore store = new JournalOrderStore(dir.resolve("journal"), 1 << 20, 1000);
+             OrderHub hub = newHub(dir, store)) {
+            int orders = 2000;
+            for (int n = 0; n < orders; n++) {
+                hub.newOrder(trolley());
+            }
+
+            int pickers = 8;
+            Set<Integer> claimed = ConcurrentHashMap.newKeySet();
+            ExecutorService pool = Executors.newFixedThreadPool(pickers);
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> results = new ArrayList<>();
+            for (int p = 0; p < pickers; p++) {
+                results.add(pool.submit(() -> {
+                    start.await();
+                    int previous = 0;
+                    OrderClaim claim;
+                    while ((claim = hub.claimNextOrder()) != null) {
+                        assertTrue(claimed.add(claim.orderId()), "order " + claim.orderId() + " claimed twice");
+                        assertTrue(claim.orderId() > previous, "a picker got a newer order before an older one");
+                        previous = claim.orderId();
+                        assertTrue(hub.completeOrder(claim));
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> result : results) {
+                result.get(60, TimeUnit.SECONDS);
+            }
+            pool.shutdown();
+
+            assertEquals(orders, claimed.size());
+            assertTrue(hub.orderMapSnapshot().values().stream().allMatch(state -> state == OrderState.Collected));
+            assertNull(hub.claimNextOrder());
+        }
+    }
+
+    /**
+     * An abandoned claim expires: the order goes back to Ordered and into the queue,
+     * and the old claim can no longer complete it.
+     */
+    @Test
+    void expiredClaimReturnsToQueue(@TempDir Path dir) throws Exception {
+        long savedLease = OrderHub.pickLeaseMillis;
+        long savedTick = OrderHub.expiryTickMillis;
+        OrderHub.pickLeaseMillis = 200;
+        OrderHub.expiryTickMillis = 20;
+        try (JournalOrderStore store = new JournalOrderStore(dir.resolve("journal"), 1 << 20, 1000);
+             OrderHub hub = newHub(dir, store)) {
+            int orderId = hub.newOrder(trolley()).getOrderId();
+            OrderClaim abandoned = hub.claimNextOrder();
+            assertEquals(orderId, abandoned.orderId());
+            assertNull(hub.claimNextOrder());
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (hub.getOrderState(orderId) != OrderState.Ordered && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(OrderState.Ordered, hub.getOrderState(orderId));
+            assertEquals(OrderState.Ordered, store.loadActiveOrders().get(orderId));
+            assertFalse(hub.completeOrder(abandoned));
+
+            OrderClaim second = hub.claimNextOrder();
+            assertEquals(orderId, second.orderId());
+            assertFalse(hub.completeOrder(abandoned), "the expired claim must not complete the new one");
+            assertTrue(hub.renewLease(second));
+            assertTrue(hub.completeOrder(second));
+            assertEquals(OrderState.Collected, hub.getOrderState(orderId));
+        } finally {
+            OrderHub.pickLeaseMillis = savedLease;
+            OrderHub.expiryTickMillis = savedTick;
+        }
+    }
+
+    /**
+     * A released order is the next one handed out again.
+     */
+    @Test
+    void releasedOrderIsClaimedAgain(@TempDir Path dir) throws Exception {
+        try (JournalOrderStore store = new JournalOrderStore(dir.resolve("journal"), 1 << 20, 1000);
+             OrderHub hub = newHub(dir, store)) {
+            int first = hub.newOrder(trolley()).getOrderId();
+            int second = hub.newOrder(trolley()).getOrderId();
+
+            OrderClaim claim = hub.claimNextOrder();
+            assertEquals(first, claim.orderId());
+            assertTrue(hub.releaseOrder(claim));
+            assertFalse(hub.releaseOrder(claim));
+            assertEquals(first, hub.claimNextOrder().orderId());
+            assertEquals(second, hub.claimNextOrder().orderId());
+        }
+    }
+}
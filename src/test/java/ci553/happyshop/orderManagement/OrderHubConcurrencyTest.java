@@ -0,0 +1,234 @@
+package ci553.happyshop.orderManagement;
+
+import ci553.happyshop.catalogue.Product;
+import ci553.happyshop.storageAccess.JournalOrderStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderHubConcurrencyTest {
+
+    private static ArrayList<Product> trolley() {
+        ArrayList<Product> trolley = new ArrayList<>();
+        trolley.add(new Product("0001", "40 inch TV", "0001.jpg", 269.00, 100));
+        return trolley;
+    }
+
+    /**
+     * Customers create orders while pickers race each other to move every order
+     * Ordered -> Progressing -> Collected.
+     *
+     * Every order must be won exactly once per transition (no double pick, no lost update),
+     * and the hub and the order store must agree on the final states.
+     */
+    @Test
+    void racingPickersMoveEachOrderExactlyOnce(@TempDir Path dir) throws Exception {
+        Path counter = dir.resolve("orderCounter.txt");
+        Files.writeString(counter, "0");
+        int customers = 4;
+        int ordersPerCustomer = 500;
+        int pickers = 8;
+        int totalOrders = customers * ordersPerCustomer;
+
+        try (JournalOrderStore store = new JournalOrderStore(dir.resolve("journal"), 1 << 20, 1000);
+             OrderHub hub = new OrderHub(store, new OrderIdAllocator(counter, 100))) {
+            Map<Integer, AtomicInteger> progressingWins = new ConcurrentHashMap<>();
+            Map<Integer, AtomicInteger> collectedWins = new ConcurrentHashMap<>();
+            AtomicInteger collectedCount = new AtomicInteger();
+
+            ExecutorService pool = Executors.newFixedThreadPool(customers + pickers);
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> customerResults = new ArrayList<>();
+            for (int c = 0; c < customers; c++) {
+                customerResults.add(pool.submit(() -> {
+                    start.await();
+                    for (int n = 0; n < ordersPerCustomer; n++) {
+                        hub.newOrder(trolley());
+                    }
+                    return null;
+                }));
+            }
+            List<Future<?>> pickerResults = new ArrayList<>();
+            for (int p = 0; p < pickers; p++) {
+                pickerResults.add(pool.submit(() -> {
+                    start.await();
+                    while (collectedCount.get() < totalOrders) {
+                        // every picker goes for the same orders, so most attempts lose the race
+                        for (Map.Entry<Integer, OrderState> entry : hub.orderMapSnapshot().entrySet()) {
+                            int orderId = entry.getKey();
+                            if (hub.changeOrderStateMoveFile(orderId, OrderState.Progressing)) {
+                                progressingWins.computeIfAbsent(orderId, id -> new AtomicInteger()).incrementAndGet();
+                            }
+                            if (hub.changeOrderStateMoveFile(orderId, OrderState.Collected)) {
+                                collectedWins.computeIfAbsent(orderId, id -> new AtomicInteger()).incrementAndGet();
+                                collectedCount.incrementAndGet();
+                            }
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            // a late subscriber gets a snapshot taken while orders change, then the deltas
+            while (hub.orderMapSnapshot().size() < totalOrders / 4) {
+                Thread.onSpinWait();
+            }
+            OrderMapReplica replica = new OrderMapReplica();
+            AtomicInteger changeEvents = new AtomicInteger();
+            hub.subscribe(events -> {
+                synchronized (replica) {
+                    for (OrderEvent event : events) {
+                        if (!event.isNewOrder()) {
+                            changeEvents.incrementAndGet();
+                        }
+                    }
+                    replica.apply(events);
+                }
+            });
+            for (Future<?> result : customerResults) {
+                result.get(60, TimeUnit.SECONDS);
+            }
+            for (Future<?> result : pickerResults) {
+                result.get(60, TimeUnit.SECONDS);
+            }
+            pool.shutdown();
+
+            assertEquals(totalOrders, progressingWins.size());
+            assertEquals(totalOrders, collectedWins.size());
+            for (int orderId : collectedWins.keySet()) {
+                assertEquals(1, progressingWins.get(orderId).get(), "order " + orderId + " picked twice");
+                assertEquals(1, collectedWins.get(orderId).get(), "order " + orderId + " collected twice");
+                assertEquals(OrderState.Collected, hub.getOrderState(orderId));
+            }
+            assertTrue(store.loadActiveOrders().isEmpty(), "the store still holds uncollected orders");
+            synchronized (replica) {
+                assertEquals(hub.orderMapSnapshot(), replica.orders());
+                // one event per won transition after subscribing, never one per attempt
+                assertTrue(changeEvents.get() <= 2 * totalOrders);
+            }
+        }
+    }
+
+    /**
+     * A subscriber receives the snapshot first, then exactly one event per change, each with a higher version.
+     */
+    @Test
+    void subscriberReceivesSnapshotThenDeltas(@TempDir Path dir) throws Exception {
+        Path counter = dir.resolve("orderCounter.txt");
+        Files.writeString(counter, "0");
+        try (JournalOrderStore store = new JournalOrderStore(dir.resolve("journal"), 1 << 20, 1000);
+             OrderHub hub = new OrderHub(store, new OrderIdAllocator(counter, 10))) {
+            int first = hub.newOrder(trolley()).getOrderId();
+            List<List<OrderEvent>> received = new ArrayList<>();
+            hub.subscribe(received::add);
+            int second = hub.newOrder(trolley()).getOrderId();
+            hub.changeOrderStateMoveFile(first, OrderState.Progressing);
+
+            assertEquals(3, received.size());
+            OrderEvent snapshot = received.get(0).get(0);
+            assertEquals(1, received.get(0).size());
+            assertEquals(first, snapshot.orderId());
+            assertTrue(snapshot.isNewOrder());
+            OrderEvent created = received.get(1).get(0);
+            assertEquals(new OrderEvent(second, null, OrderState.Ordered, created.version()), created);
+            OrderEvent progressing = received.get(2).get(0);
+            assertEquals(new OrderEvent(first, OrderState.Ordered, OrderState.Progressing, progressing.version()), progressing);
+            assertTrue(snapshot.version() < created.version() && created.version() < progressing.version());
+        }
+    }
+
+    /**
+     * Late events are ignored by the replica, and a removed order cannot be brought back by one.
+     */
+    @Test
+    void replicaIgnoresStaleEvents() {
+        OrderMapReplica replica = new OrderMapReplica();
+        assertTrue(replica.apply(new OrderEvent(7, OrderState.Ordered, OrderState.Progressing, 5)));
+        assertFalse(replica.apply(new OrderEvent(7, null, OrderState.Ordered, 3)));
+        assertEquals(OrderState.Progressing, replica.get(7));
+        assertTrue(replica.apply(new OrderEvent(7, OrderState.Collected, null, 9)));
+        assertFalse(replica.apply(new OrderEvent(7, OrderState.Progressing, OrderState.Collected, 8)));
+        assertNull(replica.get(7));
+    }
+
+    /**
+     * Only Ordered -> Progressing -> Collected is allowed; skipping or repeating a state is refused.
+     */
+    @Test
+    void onlyForwardTransitionsAreAccepted(@TempDir Path dir) throws Exception {
+        Path counter = dir.resolve("orderCounter.txt");
+        Files.writeString(counter, "0");
+        try (JournalOrderStore store = new JournalOrderStore(dir.resolve("journal"), 1 << 20, 1000);
+             OrderHub hub = new OrderHub(store, new OrderIdAllocator(counter, 10))) {
+            int orderId = hub.newOrder(trolley()).getOrderId();
+
+            assertFalse(hub.changeOrderStateMoveFile(orderId, OrderState.Collected));
+            assertFalse(hub.changeOrderStateMoveFile(orderId, OrderState.Ordered));
+            assertTrue(hub.changeOrderStateMoveFile(orderId, OrderState.Progressing));
+            assertFalse(hub.changeOrderStateMoveFile(orderId, OrderState.Progressing));
+            assertTrue(hub.changeOrderStateMoveFile(orderId, OrderState.Collected));
+            assertFalse(hub.changeOrderStateMoveFile(12345, OrderState.Progressing));
+            assertEquals(Set.of(orderId), hub.orderMapSnapshot().keySet());
+        }
+    }
+
+    /**
+     * Collected orders are removed after the configured retention, in batches, with one removal event each.
+     */
+    @Test
+    void collectedOrdersExpireAfterRetention(@TempDir Path dir) throws Exception {
+        Path counter = dir.resolve("orderCounter.txt");
+        Files.writeString(counter, "0");
+        long savedRetention = OrderHub.collectedRetentionMillis;
+        long savedTick = OrderHub.expiryTickMillis;
+        OrderHub.collectedRetentionMillis = 300;
+        OrderHub.expiryTickMillis = 20;
+        try (JournalOrderStore store = new JournalOrderStore(dir.resolve("journal"), 1 << 20, 1000);
+             OrderHub hub = new OrderHub(store, new OrderIdAllocator(counter, 100))) {
+            List<List<OrderEvent>> batches = new CopyOnWriteArrayList<>();
+            hub.subscribe(events -> {
+                if (!events.isEmpty() && events.get(0).isRemoval()) batches.add(events);
+            });
+            int orders = 200;
+            long collectedAt = System.currentTimeMillis();
+            for (int n = 0; n < orders; n++) {
+                int orderId = hub.newOrder(trolley()).getOrderId();
+                hub.changeOrderStateMoveFile(orderId, OrderState.Progressing);
+                hub.changeOrderStateMoveFile(orderId, OrderState.Collected);
+            }
+            long collectedUntil = System.currentTimeMillis();
+            assertEquals(orders, hub.orderMapSnapshot().size());
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!hub.orderMapSnapshot().isEmpty() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            long removedAt = System.currentTimeMillis();
+            assertTrue(hub.orderMapSnapshot().isEmpty(), "collected orders were not removed");
+            assertTrue(removedAt - collectedAt >= 300, "removed before the retention time");
+            int removals = batches.stream().mapToInt(List::size).sum();
+            assertEquals(orders, removals);
+            // one notification per tick, not one per order
+            assertTrue(batches.size() <= (collectedUntil - collectedAt) / 20 + 2, batches.size() + " notifications");
+        } finally {
+            OrderHub.collectedRetentionMillis = savedRetention;
+            OrderHub.expiryTickMillis = savedTick;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package ci553.happyshop.orderManagement;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderIdAllocatorTest {
+
+    /**
+     * Two allocators on the same file (like two processes) and many threads never hand out the same ID.
+     */
+    @Test
+    void concurrentAllocatorsNeverShareAnId(@TempDir Path dir) throws Exception {
+        Path counter = dir.resolve("orderCounter.txt");
+        Files.writeString(counter, "0");
+        OrderIdAllocator first = new OrderIdAllocator(counter, 100);
+        OrderIdAllocator second = new OrderIdAllocator(counter, 100);
+        Set<Integer> ids = ConcurrentHashMap.newKeySet();
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<?>> results = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            OrderIdAllocator allocator = t % 2 == 0 ? first : second;
+            results.add(pool.submit(() -> {
+                for (int n = 0; n < 2000; n++) {
+                    assertTrue(ids.add(allocator.nextId()), "ID handed out twice");
+                }
+                return null;
+            }));
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(60, TimeUnit.SECONDS));
+        for (Future<?> result : results) {
+            result.get(); // rethrows a failure inside a task
+        }
+        assertEquals(16000, ids.size());
+    }
+
+    /**
+     * After a crash, a new allocator continues above the whole reserved block, never reusing an ID.
+     */
+    @Test
+    void restartSkipsTheReservedBlock(@TempDir Path dir) throws Exception {
+        Path counter = dir.resolve("orderCounter.txt");
+        Files.writeString(counter, "41"); // an old counter file: the last used ID
+        OrderIdAllocator beforeCrash = new OrderIdAllocator(counter, 1000);
+        assertEquals(42, beforeCrash.nextId());
+        assertEquals(43, beforeCrash.nextId());
+        assertEquals("1041", Files.readString(counter).trim());
+
+        OrderIdAllocator afterCrash = new OrderIdAllocator(counter, 1000);
+        assertEquals(1042, afterCrash.nextId());
+    }
+
+    /**
+     * A missing counter file starts at 1, an existing empty or garbled one is refused instead of restarting the IDs.
+     */
+    @Test
+    void emptyOrGarbledCounterFileIsRefused(@TempDir Path dir) throws Exception {
+        Path counter = dir.resolve("orderCounter.txt");
+        assertEquals(1, new OrderIdAllocator(counter, 10).nextId());
+        assertEquals("10", Files.readString(counter));
+
+        Files.writeString(counter, "");
+        assertThrows(IOException.class, () -> new OrderIdAllocator(counter, 10).nextId());
+        Files.writeString(counter, "12x");
+        assertThrows(IOException.class, () -> new OrderIdAllocator(counter, 10).nextId());
+    }
+}
@@ -0,0 +1,192 @@
+package ci553.happyshop.orderManagement;
+
+import ci553.happyshop.catalogue.Product;
+import ci553.happyshop.storageAccess.JournalOrderStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderQueryServiceTest {
+
+    private static final long DAY = 24 * 60 * 60_000L;
+
+    /**
+     * Queries on product, state and time ranges return exactly the orders a full scan finds, whatever
+     * the page size: in ascending order ID, or in ascending time when read from a time index.
+     */
+    @Test
+    void queriesMatchAFullScan() {
+        OrderQueryService service = new OrderQueryService();
+        LocalDate yesterday = LocalDate.of(2025, 3, 11);
+        long start = yesterday.minusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        Random random = new Random(25);
+        List<Integer> containing7 = new ArrayList<>();
+        for (int orderId = 1; orderId <= 5000; orderId++) {
+            long ordered = start + random.nextInt((int) (2 * DAY));
+            List<String> products = List.of(String.format("%04d", 1 + random.nextInt(10)), String.format("%04d", 1 + random.nextInt(10)));
+            if (products.contains("0007")) {
+                containing7.add(orderId);
+            }
+            service.orderCreated(orderId, ordered, products);
+            int steps = random.nextInt(3);
+            if (steps >= 1) {
+                service.stateChanged(orderId, OrderState.Progressing, ordered + 60_000);
+            }
+            if (steps >= 2) {
+                service.stateChanged(orderId, OrderState.Collected, ordered + random.nextInt((int) DAY));
+            }
+        }
+
+        OrderQuery query = OrderQuery.all().containing("0007").collectedOn(yesterday);
+        List<OrderSummary> expected = containing7.stream().map(service::get)
+                .filter(order -> order.state() == OrderState.Collected)
+                .filter(order -> LocalDate.ofInstant(Instant.ofEpochMilli(order.collectedTime()), ZoneId.systemDefault()).equals(yesterday))
+                .collect(Collectors.toList());
+        assertFalse(expected.isEmpty());
+        for (int pageSize : new int[]{1, 7, 1000}) {
+            assertEquals(expected, service.stream(query, pageSize).toList());
+        }
+
+        // the same orders found through the time index alone, sorted by collected time
+        for (int pageSize : new int[]{1, 50}) {
+            List<OrderSummary> byTime = service.stream(OrderQuery.all().collectedOn(yesterday), pageSize)
+                    .filter(order -> containing7.contains(order.orderId())).toList();
+            assertEquals(expected.stream().sorted(Comparator.comparingLong(OrderSummary::collectedTime)
+                    .thenComparingInt(OrderSummary::orderId)).toList(), byTime);
+        }
+
+        long progressing = service.count(OrderQuery.all().inState(OrderState.Progressing));
+        long scanned = service.stream(OrderQuery.all(), 100).filter(order -> order.state() == OrderState.Progressing).count();
+        assertEquals(scanned, progressing);
+        assertEquals(5000, service.count(OrderQuery.all()));
+    }
+
+    /**
+     * Paging continues after the cursor of the page before; a claim given back clears the progressing time;
+     * old collected orders are dropped from every index.
+     */
+    @Test
+    void pagingChangesAndRetention() {
+        OrderQueryService service = new OrderQueryService();
+        for (int orderId = 1; orderId <= 10; orderId++) {
+            service.orderCreated(orderId, 1000 + orderId, List.of("0001"));
+        }
+        OrderQuery ordered = OrderQuery.all().inState(OrderState.Ordered);
+        OrderPage first = service.page(ordered, OrderPage.Cursor.START, 4);
+        assertEquals(List.of(1, 2, 3, 4), first.orders().stream().map(OrderSummary::orderId).toList());
+        assertTrue(first.hasMore());
+        OrderPage last = service.page(ordered, service.page(ordered, first.next(), 4).next(), 4);
+        assertEquals(List.of(9, 10), last.orders().stream().map(OrderSummary::orderId).toList());
+        assertFalse(last.hasMore());
+
+        // a time range is paged by time then ID: order 11 was ordered with order 4, before order 5
+        service.orderCreated(11, 1004, List.of("0002"));
+        OrderQuery orderedBetween = OrderQuery.all().orderedBetween(1004, 1011);
+        OrderPage byTime = service.page(orderedBetween, OrderPage.Cursor.START, 3);
+        assertEquals(List.of(4, 11, 5), byTime.orders().stream().map(OrderSummary::orderId).toList());
+        assertEquals(new OrderPage.Cursor(1005, 5), byTime.next());
+        assertEquals(List.of(6, 7, 8, 9, 10), service.page(orderedBetween, byTime.next(), 10).orders().stream()
+                .map(OrderSummary::orderId).toList());
+
+        service.stateChanged(3, OrderState.Progressing, 2000);
+        service.stateChanged(3, OrderState.Ordered, 2500);
+        assertEquals(0, service.get(3).progressingTime());
+        assertEquals(0, service.count(OrderQuery.all().progressingBetween(0, Long.MAX_VALUE)));
+
+        service.stateChanged(5, OrderState.Progressing, 3000);
+        service.stateChanged(5, OrderState.Collected, 4000);
+        service.stateChanged(6, OrderState.Progressing, 3000);
+        service.stateChanged(6, OrderState.Collected, 9000);
+        assertEquals(1, service.removeCollectedBefore(5000));
+        assertNull(service.get(5));
+        assertEquals(9, service.count(OrderQuery.all().containing("0001")));
+        assertEquals(List.of(6), service.stream(OrderQuery.all().inState(OrderState.Collected), 10).map(OrderSummary::orderId).toList());
+    }
+
+    /**
+     * Orders loaded at startup have their products read once, by the first query that asks for a product;
+     * an order whose products can not be read fails that query rather than being left out.
+     */
+    @Test
+    void loadedOrdersReadTheirProductsOnDemand() {
+        Map<Integer, List<String>> stored = Map.of(1, List.of("0007", "0001"), 2, List.of("0002"), 3, List.of("0007"));
+        List<Integer> reads = new ArrayList<>();
+        Set<Integer> unreadable = new HashSet<>(Set.of(3));
+        OrderQueryService service = new OrderQueryService(orderId -> {
+            if (unreadable.contains(orderId)) {
+                throw new IOException("order file " + orderId + " is missing");
+            }
+            reads.add(orderId);
+            return stored.get(orderId);
+        });
+        service.orderLoaded(new OrderSummary(1, OrderState.Collected, 1000, 2000, 3000));
+        service.orderLoaded(new OrderSummary(2, OrderState.Ordered, 1500, 0, 0));
+        service.orderLoaded(new OrderSummary(3, OrderState.Progressing, 1600, 2500, 0));
+        service.orderCreated(4, 4000, List.of("0007"));
+
+        assertEquals(List.of(1), service.stream(OrderQuery.all().collectedBetween(2500, 3500), 10)
+                .map(OrderSummary::orderId).toList());
+        assertTrue(reads.isEmpty(), "no product asked for yet");
+
+        assertThrows(UncheckedIOException.class, () -> service.count(OrderQuery.all().containing("0007")));
+        unreadable.clear();
+        assertEquals(List.of(1, 3, 4), service.stream(OrderQuery.all().containing("0007"), 10)
+                .map(OrderSummary::orderId).toList());
+        assertEquals(List.of(1), service.stream(OrderQuery.all().containing("0007").collectedBetween(2500, 3500), 10)
+                .map(OrderSummary::orderId).toList());
+        assertEquals(1, service.count(OrderQuery.all().containing("0002")));
+        assertEquals(List.of(1, 2, 3), reads.stream().sorted().toList()); // each once, 4 was never read
+    }
+
+    /**
+     * After a restart the hub fills the query service from the OrderStore, so an order collected before
+     * the restart is still found by product and collected time.
+     */
+    @Test
+    void collectedOrdersAreFoundAfterARestart(@TempDir Path dir) throws Exception {
+        Path counter = dir.resolve("orderCounter.txt");
+        Files.writeString(counter, "0");
+        ArrayList<Product> withUsbDrive = new ArrayList<>(List.of(new Product("0007", "USB drive", "0007.jpg", 6.99, 100)));
+        ArrayList<Product> withTv = new ArrayList<>(List.of(new Product("0001", "40 inch TV", "0001.jpg", 269.00, 100)));
+        int collected;
+        int waiting;
+        long before = System.currentTimeMillis();
+        try (JournalOrderStore store = new JournalOrderStore(dir.resolve("journal"), 1 << 20, 1000);
+             OrderHub hub = new OrderHub(store, new OrderIdAllocator(counter, 100))) {
+            collected = hub.newOrder(withUsbDrive).getOrderId();
+            waiting = hub.newOrder(withUsbDrive).getOrderId();
+            hub.newOrder(withTv);
+            assertTrue(hub.changeOrderStateMoveFile(collected, OrderState.Progressing));
+            assertTrue(hub.changeOrderStateMoveFile(collected, OrderState.Collected));
+        }
+
+        try (JournalOrderStore store = new JournalOrderStore(dir.resolve("journal"), 1 << 20, 1000);
+             OrderHub hub = new OrderHub(store, new OrderIdAllocator(counter, 100))) {
+            hub.initializeOrderMap();
+            OrderQueryService queries = hub.getQueryService();
+            assertEquals(3, queries.size());
+            OrderQuery query = OrderQuery.all().containing("0007").collectedBetween(before, System.currentTimeMillis() + 1);
+            assertEquals(List.of(collected), queries.stream(query, 10).map(OrderSummary::orderId).toList());
+            assertEquals(List.of(collected, waiting), queries.stream(OrderQuery.all().containing("0007"), 10)
+                    .map(OrderSummary::orderId).toList());
+            assertTrue(queries.get(collected).orderedTime() > 0);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package ci553.happyshop.orderManagement;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimingWheelTest {
+
+    /**
+     * Deadlines on every level (and beyond the top level) expire at the first tick at or after
+     * their deadline: never early and at most one tick late.
+     */
+    @Test
+    void everyIdExpiresWithinOneTickOfItsDeadline() {
+        long tick = 10;
+        TimingWheel wheel = new TimingWheel(tick, 8, 3, 0); // levels cover 80 ms, 640 ms and 5120 ms
+        Random random = new Random(42);
+        Map<Integer, Long> deadlines = new HashMap<>();
+        for (int id = 0; id < 5000; id++) {
+            long deadline = 1 + random.nextInt(20_000); // up to four times the top level
+            deadlines.put(id, deadline);
+            wheel.add(id, deadline);
+        }
+        assertEquals(5000, wheel.size());
+
+        for (long now = 0; now <= 20_000 + tick; now += tick) {
+            for (int id : wheel.advance(now)) {
+                long deadline = deadlines.remove(id);
+                assertTrue(deadline <= now, "id " + id + " expired early: " + deadline + " at " + now);
+                assertTrue(now - deadline < tick, "id " + id + " expired late: " + deadline + " at " + now);
+            }
+        }
+        assertTrue(deadlines.isEmpty(), deadlines.size() + " ids never expired");
+        assertEquals(0, wheel.size());
+    }
+
+    /**
+     * Everything due by the time the wheel is advanced comes out in one batch,
+     * even when the wheel was not advanced for many ticks.
+     */
+    @Test
+    void skippedTicksAreSweptInOneBatch() {
+        TimingWheel wheel = new TimingWheel(100, 64, 3, 1_000);
+        List<Integer> expected = new ArrayList<>();
+        for (int id = 0; id < 1000; id++) {
+            wheel.add(id, 1_000 + 10_000 + id);
+            expected.add(id);
+        }
+        wheel.add(5000, 1_000 + 60_000);
+
+        assertTrue(wheel.advance(1_000 + 9_999).isEmpty());
+        List<Integer> expired = wheel.advance(1_000 + 11_100);
+        expired.sort(null);
+        assertEquals(expected, expired);
+        assertEquals(1, wheel.size());
+        assertEquals(List.of(5000), wheel.advance(1_000 + 60_000));
+    }
+}
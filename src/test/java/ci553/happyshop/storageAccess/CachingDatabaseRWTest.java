@@ -0,0 +1,67 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Product;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CachingDatabaseRWTest {
+
+    /**
+     * A row read before an invalidation is not cached: here the stock is updated through the cache
+     * after the database was read but before the result is put into the cache.
+     */
+    @Test
+    void rowReadBeforeAnInvalidationIsNotCached() throws SQLException {
+        ProductCache cache = new ProductCache(100);
+        CachingDatabaseRW[] caching = new CachingDatabaseRW[1];
+        InMemoryRW database = new InMemoryRW(List.of(new Product("0001", "40 inch TV", "0001.jpg", 269.00, 100))) {
+            private boolean updated = false;
+
+            @Override
+            public Product searchByProductId(String productId) {
+                Product read = super.searchByProductId(productId);
+                if (!updated) { // a warehouse update commits while this read is on its way back
+                    updated = true;
+                    try {
+                        caching[0].updateProduct("0001", "40 inch TV", 269.00, "0001.jpg", 50);
+                    } catch (SQLException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+                return read;
+            }
+        };
+        caching[0] = new CachingDatabaseRW(database, cache);
+
+        assertEquals(100, caching[0].searchByProductId("0001").getStockQuantity()); // the read from before the update
+        assertFalse(cache.contains("0001"));
+        assertEquals(50, caching[0].searchByProductId("0001").getStockQuantity());
+        assertTrue(cache.contains("0001"));
+        assertEquals(50, caching[0].searchByProductId("0001").getStockQuantity());
+    }
+
+    /**
+     * Only a keyword that can be a product ID is looked up in the cache, so name searches
+     * do not count as misses.
+     */
+    @Test
+    void nameSearchesAreNotCountedAsCacheLookups() throws SQLException {
+        ProductCache cache = new ProductCache(100);
+        CachingDatabaseRW caching = new CachingDatabaseRW(
+                new InMemoryRW(List.of(new Product("0001", "40 inch TV", "0001.jpg", 269.00, 100))), cache);
+
+        assertEquals("0001", caching.searchProduct("tv").get(0).getProductId());
+        assertTrue(caching.searchProduct("radio").isEmpty());
+        assertEquals(0, cache.getHits() + cache.getMisses());
+
+        assertEquals("0001", caching.searchProduct("0001").get(0).getProductId()); // cached by the name search
+        assertEquals(1, cache.getHits());
+        assertEquals(0, cache.getMisses());
+        assertTrue(caching.searchProduct("0002").isEmpty());
+        assertEquals(1, cache.getMisses());
+    }
+}
@@ -0,0 +1,52 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Product;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DerbyRWTest {
+
+    /**
+     * searchByProductIds reads the IDs 50 at a time with a fixed-size IN list padded with NULLs:
+     * more than one batch, duplicates and unknown IDs all come back right, in the requested order.
+     */
+    @Test
+    void searchByProductIdsAcrossPaddedBatches(@TempDir Path dir) throws Exception {
+        List<Product> products = new ArrayList<>();
+        for (int id = 1; id <= 120; id++) {
+            products.add(new Product(String.format("%04d", id), "product " + id, id + ".jpg", id, id));
+        }
+        try (TempDerbyDatabase database = new TempDerbyDatabase(dir, 2, products)) {
+            DerbyRW db = database.newDerbyRW();
+            List<String> requested = new ArrayList<>();
+            for (int id = 120; id >= 1; id -= 2) { // 60 IDs, more than one batch, in descending order
+                requested.add(String.format("%04d", id));
+            }
+            requested.add(1, "9999"); // unknown
+            requested.add("0120");    // duplicate
+            requested.add("0002");    // duplicate
+            requested.add("8888");    // unknown, in the second batch with 38 NULLs of padding
+
+            Map<String, Product> found = db.searchByProductIds(requested);
+
+            List<String> expected = requested.stream().distinct()
+                    .filter(id -> !id.equals("9999") && !id.equals("8888")).toList();
+            assertEquals(expected, new ArrayList<>(found.keySet()));
+            assertNull(found.get("9999"));
+            assertNull(found.get("8888"));
+            assertFalse(found.containsKey("0087")); // odd IDs were not requested
+            assertEquals(120, found.get("0120").getStockQuantity());
+            assertEquals("product 2", found.get("0002").getProductDescription());
+
+            assertTrue(db.searchByProductIds(List.of()).isEmpty());
+            assertEquals(List.of("0050"), new ArrayList<>(db.searchByProductIds(List.of("0050", "0050")).keySet()));
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.orderManagement.OrderState;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FolderOrderStoreRecoveryTest {
+
+    private static void writeOrder(Path dir, int orderId, String stateLine) throws Exception {
+        Files.createDirectories(dir);
+        Files.writeString(dir.resolve(orderId + ".txt"), "OrderId: " + orderId + "\n" + stateLine + "\n"
+                + "OrderedDateTime: 2025-03-11 19:53:45\nProgressingDateTime: \nCollectedDateTime: \n"
+                + "Items:\n0001 40 inch TV x1 (£269.00)\nTotal price: £269.00\n");
+    }
+
+    /**
+     * Recovery streams every active order from the folders, repairs the State: headers that disagree
+     * with their folder, and leaves the index matching the folders.
+     */
+    @Test
+    void recoveryStreamsOrdersAndRepairsHeaders(@TempDir Path dir) throws Exception {
+        int orders = 5000;
+        for (int orderId = 1; orderId <= orders; orderId++) {
+            OrderState state = orderId % 3 == 0 ? OrderState.Collected
+                    : orderId % 3 == 1 ? OrderState.Ordered : OrderState.Progressing;
+            String stateLine = orderId % 500 == 0 ? "State: Ordered" : "State: " + state; // every 500th is wrong
+            writeOrder(dir.resolve(state.name().toLowerCase()), orderId, stateLine);
+        }
+        Files.writeString(dir.resolve("ordered").resolve("7_temp.txt"), "left by a crash");
+        writeOrder(dir.resolve("progressing"), orders + 1, "OrderedDateTime: no state line");
+
+        Map<Integer, OrderState> streamed = new ConcurrentHashMap<>();
+        try (FolderOrderStore store = new FolderOrderStore(dir, true, 4)) {
+            store.forEachActiveOrder((orderId, state) -> assertNull(streamed.put(orderId, state)));
+            assertEquals(store.loadActiveOrders(), streamed);
+            assertEquals(OrderState.Collected, store.readOrder(3).lines()
+                    .filter(line -> line.startsWith("State")).map(line -> OrderState.valueOf(line.substring(7))).findFirst().orElseThrow());
+        }
+
+        long active = 0;
+        for (int orderId = 1; orderId <= orders; orderId++) {
+            if (orderId % 3 != 0) {
+                active++;
+                assertEquals(orderId % 3 == 1 ? OrderState.Ordered : OrderState.Progressing, streamed.get(orderId));
+            }
+        }
+        assertEquals(active + 1, streamed.size());
+        assertEquals(OrderState.Progressing, streamed.get(orders + 1));
+        assertTrue(Files.readString(dir.resolve("collected").resolve("1500.txt")).contains("State: Collected   \n"));
+        assertTrue(Files.readString(dir.resolve("progressing").resolve((orders + 1) + ".txt"))
+                .startsWith("OrderId: " + (orders + 1) + "\nState: Progressing \n"));
+        assertFalse(OrderFileManager.repairStateHeader(dir.resolve("ordered").resolve("1000.txt"), OrderState.Ordered));
+    }
+
+    /**
+     * The index can be ahead of the files after a crash: readOrder still finds a file in another folder,
+     * and recovery takes orders without a file out of the index.
+     */
+    @Test
+    void recoveryClearsIndexEntriesWithoutFile(@TempDir Path dir) throws Exception {
+        for (String folder : new String[] {"ordered", "progressing", "collected"}) {
+            Files.createDirectories(dir.resolve(folder));
+        }
+        try (FolderOrderStore store = new FolderOrderStore(dir)) {
+            for (int orderId = 1; orderId <= 3; orderId++) {
+                store.createOrder(orderId, "OrderId: " + orderId + "\nState: Ordered\n");
+            }
+            assertTrue(store.changeOrderState(2, OrderState.Progressing));
+            assertFalse(store.changeOrderState(2, OrderState.Progressing), "the file is no longer in ordered");
+            assertEquals(OrderState.Progressing, store.loadActiveOrders().get(2));
+
+            Files.move(dir.resolve("progressing").resolve("2.txt"), dir.resolve("ordered").resolve("2.txt"));
+            assertTrue(store.readOrder(2).startsWith("OrderId: 2"));
+            Files.move(dir.resolve("ordered").resolve("2.txt"), dir.resolve("collected").resolve("2.txt"));
+            Files.delete(dir.resolve("ordered").resolve("3.txt"));
+        }
+
+        Map<Integer, OrderState> streamed = new ConcurrentHashMap<>();
+        try (FolderOrderStore store = new FolderOrderStore(dir, true, 2)) {
+            store.forEachActiveOrder(streamed::put);
+            assertEquals(Map.of(1, OrderState.Ordered), streamed);
+            assertEquals(Map.of(1, OrderState.Ordered), store.loadActiveOrders());
+            assertTrue(store.readOrder(2).startsWith("OrderId: 2"));
+            assertThrows(java.io.IOException.class, () -> store.readOrder(3));
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Product;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InMemoryRWTest {
+
+    private static ArrayList<Product> line(String id, int quantity) {
+        Product product = new Product(id, "", "", 0, 0);
+        product.setOrderedQuantity(quantity);
+        ArrayList<Product> proList = new ArrayList<>();
+        proList.add(product);
+        return proList;
+    }
+
+    /**
+     * A purchase with one insufficient line changes no stock at all.
+     */
+    @Test
+    void insufficientLineRollsBackWholePurchase() {
+        InMemoryRW db = new InMemoryRW(List.of(
+                new Product("0001", "40 inch TV", "0001.jpg", 269.00, 5),
+                new Product("0002", "DAB Radio", "0002.jpg", 29.99, 1)));
+        ArrayList<Product> proList = line("0001", 3);
+        proList.addAll(line("0002", 2));
+
+        ArrayList<Product> insufficient = db.purchaseStocks(proList);
+
+        assertEquals(1, insufficient.size());
+        assertEquals("0002", insufficient.get(0).getProductId());
+        assertEquals(5, db.searchByProductId("0001").getStockQuantity());
+        assertEquals(1, db.searchByProductId("0002").getStockQuantity());
+    }
+
+    /**
+     * Inserting an ID already in use fails and leaves the existing product and its stock unchanged.
+     */
+    @Test
+    void duplicateInsertIsRefused() {
+        InMemoryRW db = new InMemoryRW(List.of(new Product("0001", "40 inch TV", "0001.jpg", 269.00, 100)));
+        db.purchaseStocks(line("0001", 4));
+
+        assertThrows(SQLException.class, () -> db.insertNewProduct("0001", "DAB Radio", 29.99, "0002.jpg", 20));
+
+        assertEquals("40 inch TV", db.searchByProductId("0001").getProductDescription());
+        assertEquals(96, db.searchByProductId("0001").getStockQuantity());
+        assertTrue(db.searchProduct("radio").isEmpty());
+    }
+
+    @Test
+    void snapshotRestoresProductsAndSearchIndex(@TempDir Path dir) throws Exception {
+        InMemoryRW db = new InMemoryRW(List.of(new Product("0001", "40 inch TV", "0001.jpg", 269.00, 100)));
+        db.insertNewProduct("0002", "DAB Radio", 29.99, "0002.jpg", 20);
+        db.purchaseStocks(line("0001", 4));
+        Path snapshot = dir.resolve("products.snapshot");
+        db.saveSnapshot(snapshot);
+
+        InMemoryRW restored = new InMemoryRW();
+        restored.loadSnapshot(snapshot);
+
+        assertEquals(2, restored.size());
+        assertEquals(96, restored.searchByProductId("0001").getStockQuantity());
+        assertEquals("0002", restored.searchProduct("radio").get(0).getProductId());
+        assertFalse(restored.isProIdAvailable("0002"));
+    }
+}
@@ -0,0 +1,182 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Order;
+import ci553.happyshop.catalogue.Product;
+import ci553.happyshop.orderManagement.OrderState;
+import ci553.happyshop.orderManagement.OrderSummary;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JournalOrderStoreTest {
+
+    private static String detail(int orderId) {
+        return "Order ID: " + orderId + " \n" +
+                "State: Ordered \n" +
+                "OrderedDateTime: 2025-05-03 16:52:24 \n" +
+                "ProgressingDateTime:  \n" +
+                "CollectedDateTime: \n" +
+                "Items:\n 0002    DAB Radio          ( 1) £  29.99";
+    }
+
+    /**
+     * Orders and state changes written before a restart are recovered by replaying the journal,
+     * across several segments.
+     */
+    @Test
+    void reopenReplaysOrdersAndStates(@TempDir Path dir) throws Exception {
+        try (JournalOrderStore store = new JournalOrderStore(dir, 1024, 1000)) {
+            for (int id = 1; id <= 50; id++) {
+                store.createOrder(id, detail(id));
+            }
+            store.changeOrderState(2, OrderState.Progressing);
+            store.changeOrderState(3, OrderState.Progressing);
+            store.changeOrderState(3, OrderState.Collected);
+        }
+        Files.delete(dir.resolve("checkpoint.dat")); // force a full replay
+        assertTrue(Files.exists(dir.resolve("segment-000002.log")));
+
+        try (JournalOrderStore store = new JournalOrderStore(dir, 1024, 1000)) {
+            assertEquals(50, store.size());
+            Map<Integer, OrderState> active = store.loadActiveOrders();
+            assertEquals(49, active.size()); // order 3 is collected
+            assertEquals(OrderState.Progressing, active.get(2));
+            String order3 = store.readOrder(3);
+            assertTrue(order3.contains("State: Collected"));
+            assertFalse(order3.contains("CollectedDateTime: \n"));
+            assertTrue(store.readOrder(50).startsWith("Order ID: 50"));
+            OrderSummary summary3 = store.getOrderSummary(3);
+            assertTrue(summary3.orderedTime() > 0 && summary3.collectedTime() >= summary3.orderedTime());
+            assertNull(store.getOrderSummary(51));
+        }
+    }
+
+    /**
+     * A record torn by a crash at the end of the journal is cut off, and new records can be appended.
+     */
+    @Test
+    void tornTailIsTruncated(@TempDir Path dir) throws Exception {
+        JournalOrderStore store = new JournalOrderStore(dir, 1 << 20, 1000);
+        store.createOrder(1, detail(1));
+        store.createOrder(2, detail(2));
+        store.close();
+        Files.delete(dir.resolve("checkpoint.dat"));
+        Path segment = dir.resolve("segment-000001.log");
+        long size = Files.size(segment);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(size - 10); // the crash tore the second record
+        }
+
+        try (JournalOrderStore reopened = new JournalOrderStore(dir, 1 << 20, 1000)) {
+            assertEquals(1, reopened.size());
+            reopened.createOrder(2, detail(2));
+            assertTrue(reopened.readOrder(2).startsWith("Order ID: 2"));
+        }
+    }
+
+    /**
+     * Records written after a checkpoint are replayed on top of it.
+     */
+    @Test
+    void checkpointPlusLaterRecords(@TempDir Path dir) throws Exception {
+        JournalOrderStore store = new JournalOrderStore(dir, 1 << 20, 2); // checkpoint every 2 records
+        store.createOrder(1, detail(1));
+        store.createOrder(2, detail(2)); // checkpoint written here
+        store.createOrder(3, detail(3));
+        store.changeOrderState(1, OrderState.Progressing);
+        // no close(): simulates a crash after the last checkpoint
+
+        try (JournalOrderStore reopened = new JournalOrderStore(dir, 1 << 20, 2)) {
+            assertEquals(3, reopened.size());
+            assertEquals(OrderState.Progressing, reopened.loadActiveOrders().get(1));
+            int exported = reopened.exportToFolders(dir.resolve("export"));
+            assertEquals(3, exported);
+            assertTrue(Files.exists(dir.resolve("export/progressing/1.txt")));
+            assertTrue(Files.exists(dir.resolve("export/ordered/3.txt")));
+        }
+    }
+
+    /**
+     * A checkpoint cut short by a crash does not stop the store from opening: the whole journal is replayed.
+     */
+    @Test
+    void truncatedCheckpointReplaysWholeJournal(@TempDir Path dir) throws Exception {
+        JournalOrderStore store = new JournalOrderStore(dir, 1 << 20, 2);
+        store.createOrder(1, detail(1));
+        store.createOrder(2, detail(2)); // checkpoint written here
+        store.changeOrderState(2, OrderState.Progressing);
+        Path checkpoint = dir.resolve("checkpoint.dat");
+        Files.write(checkpoint, Arrays.copyOf(Files.readAllBytes(checkpoint), 6)); // no close(): cut short by a crash
+
+        try (JournalOrderStore reopened = new JournalOrderStore(dir, 1 << 20, 2)) {
+            assertEquals(2, reopened.size());
+            assertEquals(OrderState.Progressing, reopened.loadActiveOrders().get(2));
+        }
+    }
+
+    /**
+     * With group commit enabled, concurrent writers all return once their orders are on disk,
+     * and every order is there after reopening.
+     */
+    @Test
+    void groupCommitCompletesConcurrentWriters(@TempDir Path dir) throws Exception {
+        JournalOrderStore store = new JournalOrderStore(dir, 1 << 20, 100000);
+        store.enableGroupCommit(TimeUnit.MILLISECONDS.toNanos(2), 256);
+        AtomicInteger nextId = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(16);
+        for (int t = 0; t < 16; t++) {
+            pool.submit(() -> {
+                for (int n = 0; n < 100; n++) {
+                    int id = nextId.incrementAndGet();
+                    store.createOrder(id, detail(id));
+                }
+                return null;
+            });
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(60, TimeUnit.SECONDS));
+        store.close();
+
+        try (JournalOrderStore reopened = new JournalOrderStore(dir, 1 << 20, 100000)) {
+            assertEquals(1600, reopened.size());
+        }
+    }
+
+    /**
+     * An order saved with OrderCodec reads back as the text of Order.orderDetails(), with the current state,
+     * next to an order saved as text.
+     */
+    @Test
+    void encodedOrdersRenderAsText(@TempDir Path dir) throws Exception {
+        ArrayList<Product> products = new ArrayList<>();
+        products.add(new Product("0002", "DAB Radio", "0002.jpg", 29.99, 100));
+        Order order = new Order(2, OrderState.Ordered, "2025-05-03 16:52:24", products);
+        try (JournalOrderStore store = new JournalOrderStore(dir, 1 << 20, 1000)) {
+            store.createOrder(1, detail(1));
+            store.createOrder(order);
+            store.changeOrderState(2, OrderState.Progressing);
+        }
+        try (JournalOrderStore store = new JournalOrderStore(dir, 1 << 20, 1000)) {
+            assertTrue(store.readOrder(1).endsWith("DAB Radio          ( 1) £  29.99")); // saved as text
+            String text = store.readOrder(2);
+            order.setState(OrderState.Progressing);
+            String progressing = text.lines().filter(line -> line.startsWith("ProgressingDateTime")).findFirst().orElseThrow();
+            order.setProgressingDateTime(progressing.substring("ProgressingDateTime: ".length()).trim());
+            assertFalse(order.getProgressingDateTime().isEmpty());
+            assertEquals(order.orderDetails(), text);
+        }
+    }
+}
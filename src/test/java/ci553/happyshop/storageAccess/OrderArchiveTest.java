@@ -0,0 +1,72 @@
+package ci553.happyshop.storageAccess;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderArchiveTest {
+
+    private static String orderDetail(int orderId, String collectedDay) {
+        return "OrderId: " + orderId + "\nState: Collected\nOrderedDateTime: 2025-03-11 19:53:45\n"
+                + "ProgressingDateTime: 2025-03-11 19:54:00\nCollectedDateTime: " + collectedDay + " 20:00:00\n"
+                + "Items:\n0001 40 inch TV x1 (£269.00)\nTotal price: £269.00";
+    }
+
+    /**
+     * Collected files are packed into one segment per day and removed from the folder;
+     * every order stays readable, also after the archive is opened again.
+     */
+    @Test
+    void collectedOrdersAreArchivedAndStayReadable(@TempDir Path dir) throws Exception {
+        Path collected = Files.createDirectories(dir.resolve("collected"));
+        Path archiveDir = dir.resolve("archive");
+        int orders = 3000;
+        for (int orderId = 1; orderId <= orders; orderId++) {
+            Files.writeString(collected.resolve(orderId + ".txt"), orderDetail(orderId, orderId % 2 == 0 ? "2025-03-11" : "2025-03-12") + "\n");
+        }
+        Files.writeString(collected.resolve("5_temp.txt"), "not an order");
+
+        OrderArchive archive = new OrderArchive(archiveDir);
+        assertEquals(2000, archive.archiveCollectedOrders(collected, 0, 2000));
+        assertEquals(1000, archive.archiveCollectedOrders(collected, 0, 2000));
+        assertEquals(0, archive.archiveCollectedOrders(collected, 0, 2000));
+        try (Stream<Path> left = Files.list(collected)) {
+            assertEquals(1, left.count()); // only the temp file
+        }
+        try (Stream<Path> files = Files.list(archiveDir)) {
+            assertEquals(4, files.count()); // a .seg and an .idx per day
+        }
+
+        OrderArchive reopened = new OrderArchive(archiveDir);
+        assertEquals(archive.blockCount(), reopened.blockCount());
+        for (int orderId = 1; orderId <= orders; orderId++) {
+            assertEquals(orderDetail(orderId, orderId % 2 == 0 ? "2025-03-11" : "2025-03-12"), reopened.readOrder(orderId));
+        }
+        assertNull(reopened.readOrder(orders + 1));
+        assertNull(reopened.readOrder(0));
+    }
+
+    /**
+     * A file archived by a run that stopped before deleting it is not archived twice, and young files wait.
+     */
+    @Test
+    void leftoverAndYoungFiles(@TempDir Path dir) throws Exception {
+        Path collected = Files.createDirectories(dir.resolve("collected"));
+        Path archiveDir = dir.resolve("archive");
+        OrderArchive archive = new OrderArchive(archiveDir);
+        Files.writeString(collected.resolve("1.txt"), orderDetail(1, "2025-03-11"));
+        assertEquals(0, archive.archiveCollectedOrders(collected, 60_000, 100)); // too young
+        assertEquals(1, archive.archiveCollectedOrders(collected, 0, 100));
+
+        Files.writeString(collected.resolve("1.txt"), orderDetail(1, "2025-03-11")); // the leftover
+        assertEquals(1, archive.archiveCollectedOrders(collected, 0, 100));
+        assertEquals(1, archive.blockCount());
+        assertFalse(Files.exists(collected.resolve("1.txt")));
+        assertEquals(orderDetail(1, "2025-03-11"), OrderFileManager.readOrderFileOrArchive(collected, archiveDir, 1));
+    }
+}
@@ -0,0 +1,85 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Order;
+import ci553.happyshop.catalogue.Product;
+import ci553.happyshop.orderManagement.OrderState;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderFileManagerTest {
+
+    private static Object fileKey(Path file) throws Exception {
+        return Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+    }
+
+    private static String field(String orderDetail, String name) {
+        return orderDetail.lines().filter(line -> line.startsWith(name)).findFirst().orElseThrow()
+                .substring(name.length()).trim();
+    }
+
+    /**
+     * A file written from Order.orderDetails() goes through every state change in place:
+     * same file, same length, only the header fields change, and the product IDs are still read from Items:.
+     */
+    @Test
+    void stateChangesPatchTheHeaderInPlace(@TempDir Path dir) throws Exception {
+        Path ordered = Files.createDirectories(dir.resolve("ordered"));
+        Path progressing = Files.createDirectories(dir.resolve("progressing"));
+        Path collected = Files.createDirectories(dir.resolve("collected"));
+        ArrayList<Product> products = new ArrayList<>();
+        for (int i = 1; i <= 200; i++) {
+            products.add(new Product(String.format("%04d", i), "Product £" + i, i + ".jpg", i, 100));
+        }
+        String created = new Order(12, OrderState.Ordered, "2025-03-11 19:53:45", products).orderDetails();
+        Files.writeString(ordered.resolve("12.txt"), created);
+        Object key = fileKey(ordered.resolve("12.txt"));
+
+        assertTrue(OrderFileManager.updateAndMoveOrderFile(12, OrderState.Progressing, ordered, progressing));
+        String text = Files.readString(progressing.resolve("12.txt"));
+        assertEquals("Progressing", field(text, "State:"));
+        assertEquals(19, field(text, "ProgressingDateTime:").length());
+
+        assertTrue(OrderFileManager.updateAndMoveOrderFile(12, OrderState.Ordered, progressing, ordered));
+        assertEquals("", field(Files.readString(ordered.resolve("12.txt")), "ProgressingDateTime:"));
+        assertTrue(OrderFileManager.updateAndMoveOrderFile(12, OrderState.Progressing, ordered, progressing));
+        assertTrue(OrderFileManager.updateAndMoveOrderFile(12, OrderState.Collected, progressing, collected));
+
+        Path file = collected.resolve("12.txt");
+        text = Files.readString(file);
+        assertEquals(created.length(), text.length());
+        assertEquals(created.substring(created.indexOf("Items:")), text.substring(text.indexOf("Items:")));
+        assertEquals("Collected", field(text, "State:"));
+        assertEquals(19, field(text, "CollectedDateTime:").length());
+        if (key != null) {
+            assertEquals(key, fileKey(file), "the file was rewritten instead of patched");
+        }
+        assertEquals(products.stream().map(Product::getProductId).toList(), OrderFileManager.productIdsOf(text));
+    }
+
+    /**
+     * An older file with narrow fields is rewritten once, with fixed-width fields, and patched in place after that.
+     */
+    @Test
+    void olderFilesAreRewrittenOnce(@TempDir Path dir) throws Exception {
+        Path ordered = Files.createDirectories(dir.resolve("ordered"));
+        Path progressing = Files.createDirectories(dir.resolve("progressing"));
+        Files.writeString(ordered.resolve("7.txt"), "Order ID: 7 \nState: Ordered \nOrderedDateTime: 2025-03-11 19:53:45 \n"
+                + "ProgressingDateTime:  \nCollectedDateTime: \nItems:\n 0002    DAB Radio          ( 1) £  29.99\n");
+
+        assertFalse(OrderFileManager.patchOrderStateAndTime(ordered.resolve("7.txt"), OrderState.Progressing));
+        assertTrue(OrderFileManager.updateAndMoveOrderFile(7, OrderState.Progressing, ordered, progressing));
+        assertEquals("Progressing", field(Files.readString(progressing.resolve("7.txt")), "State:"));
+        assertTrue(OrderFileManager.patchOrderStateAndTime(progressing.resolve("7.txt"), OrderState.Collected));
+        String text = Files.readString(progressing.resolve("7.txt"));
+        assertEquals("Collected", field(text, "State:"));
+        assertEquals(19, field(text, "CollectedDateTime:").length());
+        assertTrue(text.endsWith("DAB Radio          ( 1) £  29.99\n"));
+    }
+}
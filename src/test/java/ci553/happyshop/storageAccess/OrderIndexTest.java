@@ -0,0 +1,61 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.orderManagement.OrderState;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderIndexTest {
+
+    /**
+     * With a million historic orders, reopening the index and loading the active orders
+     * only looks at the slots from the first active order on.
+     */
+    @Test
+    void millionOrdersReopenAndLoadActiveOrders(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("orderIndex.dat");
+        int total = 1_000_000;
+        try (OrderIndex index = new OrderIndex(file)) {
+            for (int id = 1; id <= total; id++) {
+                OrderState state = id > total - 10 ? OrderState.Ordered : OrderState.Collected;
+                index.put(id, new OrderIndex.Slot(state, 0, 0, id, 0, 0));
+            }
+            index.put(500, new OrderIndex.Slot(OrderState.Progressing, 0, 0, 500, 501, 0));
+            assertEquals(11, index.activeOrders().size()); // moves the start of the scan to order 500
+        }
+
+        try (OrderIndex index = new OrderIndex(file)) {
+            Map<Integer, OrderState> active = index.activeOrders();
+            assertEquals(11, active.size());
+            assertEquals(OrderState.Progressing, active.get(500));
+            assertEquals(total, index.size());
+            assertEquals(total, index.getHighestOrderId());
+            assertEquals(OrderState.Collected, index.getState(123456));
+            assertEquals(501, index.get(500).progressingTime());
+            assertNull(index.get(total + 1));
+        }
+    }
+
+    /**
+     * A folder store whose index is missing rebuilds it from the order folders on startup.
+     */
+    @Test
+    void folderStoreRebuildsMissingIndex(@TempDir Path dir) throws Exception {
+        Files.createDirectories(dir.resolve("ordered"));
+        Files.createDirectories(dir.resolve("progressing"));
+        Files.writeString(dir.resolve("ordered/7.txt"), "Order ID: 7 \nState: Ordered \n");
+        Files.writeString(dir.resolve("progressing/3.txt"), "Order ID: 3 \nState: Progressing \n");
+
+        try (FolderOrderStore store = new FolderOrderStore(dir)) {
+            Map<Integer, OrderState> active = store.loadActiveOrders();
+            assertEquals(Map.of(3, OrderState.Progressing, 7, OrderState.Ordered), active);
+            assertTrue(store.readOrder(3).startsWith("Order ID: 3"));
+        }
+        assertTrue(Files.exists(dir.resolve("orderIndex.dat")));
+    }
+}
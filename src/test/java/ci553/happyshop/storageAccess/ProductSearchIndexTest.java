@@ -0,0 +1,77 @@
+package ci553.happyshop.storageAccess;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProductSearchIndexTest {
+
+    private static ProductSearchIndex loadedIndex() {
+        ProductSearchIndex index = new ProductSearchIndex();
+        assertTrue(index.load(Map.of(
+                "0001", "40 inch TV",
+                "0002", "DAB Radio",
+                "0003", "USB drive 64GB",
+                "0004", "USB cable",
+                "0005", "Hard drive"), index.getModificationCount()));
+        return index;
+    }
+
+    /**
+     * Every query word is matched as the prefix of a description word, and all words must match.
+     */
+    @Test
+    void wordsMatchAsPrefixesAndTogether() {
+        ProductSearchIndex index = loadedIndex();
+        assertEquals(List.of("0003"), index.search("usb dri"));
+        assertEquals(List.of("0003", "0005"), index.search("DRIVE"));
+        assertEquals(List.of("0003", "0004"), index.search("usb"));
+        assertEquals(List.of(), index.search("rive")); // inside a word, not a prefix
+        assertEquals(List.of(), index.search("usb radio"));
+        assertEquals(List.of(), index.search(" - "));
+    }
+
+    /**
+     * An update and a delete take effect at once, and leave no token behind that no product uses.
+     */
+    @Test
+    void updateAndDeleteKeepTheIndexClean() {
+        ProductSearchIndex index = loadedIndex();
+        int tokens = index.tokenCount();
+
+        index.put("0002", "DAB+ Radio Alarm");
+        assertEquals(List.of("0002"), index.search("alarm"));
+        assertEquals(tokens + 1, index.tokenCount());
+        index.put("0002", "DAB Radio");
+        assertEquals(List.of(), index.search("alarm"));
+        assertEquals(tokens, index.tokenCount());
+
+        index.remove("0005");
+        assertEquals(List.of("0003"), index.search("drive"));
+        assertEquals(List.of(), index.search("hard"));
+        assertEquals(tokens - 1, index.tokenCount()); // "hard" went, "drive" is still used by 0003
+        assertEquals(4, index.size());
+    }
+
+    /**
+     * A load is refused if the index changed after its modification count was read,
+     * so the caller reads the descriptions again instead of losing that change.
+     */
+    @Test
+    void loadIsRefusedAfterAConcurrentChange() {
+        ProductSearchIndex index = new ProductSearchIndex();
+        long count = index.getModificationCount();
+        index.put("0006", "Smart watch"); // a write between reading the count and loading
+
+        assertFalse(index.load(Map.of("0001", "40 inch TV"), count));
+        assertFalse(index.isLoaded());
+        assertEquals(List.of("0006"), index.search("watch"));
+
+        assertTrue(index.load(Map.of("0001", "40 inch TV", "0006", "Smart watch"), index.getModificationCount()));
+        assertTrue(index.isLoaded());
+        assertEquals(List.of("0001"), index.search("tv"));
+    }
+}
@@ -0,0 +1,103 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Product;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The purchase contract of DatabaseRW.purchaseStocks under load, checked the same way for each implementation:
+ * many threads buy random trolleys of one to three lines from the same few products at once.
+ * No stock may go negative, and the units left plus the units sold must equal the starting stock
+ * (no lost update, no oversold line, no partly bought trolley).
+ */
+class PurchaseStocksStressTest {
+    private static final String[] IDS = {"0001", "0002", "0003", "0004", "0005"};
+    private static final int START_STOCK = 1000;
+
+    private static ArrayList<Product> startingProducts() {
+        ArrayList<Product> products = new ArrayList<>();
+        for (String id : IDS) {
+            products.add(new Product(id, "product " + id, id + ".jpg", 1.00, START_STOCK));
+        }
+        return products;
+    }
+
+    /**
+     * DerbyRW against an embedded Derby database in a temporary folder, with the ProductTable of SetDatabase.
+     */
+    @Test
+    void derbyPurchasesNeverLoseOrOversellStock(@TempDir Path dir) throws Exception {
+        try (TempDerbyDatabase database = new TempDerbyDatabase(dir, 8, startingProducts())) {
+            stressPurchases(database.newDerbyRW(), 8, 300);
+        }
+    }
+
+    /**
+     * InMemoryRW, which checks and reduces the stock in memory under its own locks.
+     */
+    @Test
+    void inMemoryPurchasesNeverLoseOrOversellStock() throws Exception {
+        stressPurchases(new InMemoryRW(startingProducts()), 16, 2000);
+    }
+
+    // Runs the purchases and checks the stock afterwards, the same for every DatabaseRW
+    private static void stressPurchases(DatabaseRW db, int threads, int purchasesPerThread) throws Exception {
+        AtomicLong unitsSold = new AtomicLong();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            results.add(pool.submit(() -> {
+                start.await();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int n = 0; n < purchasesPerThread; n++) {
+                    // 1 to 3 different products, in random order
+                    ArrayList<Product> trolley = new ArrayList<>();
+                    List<String> lineIds = new ArrayList<>();
+                    int lines = 1 + random.nextInt(3);
+                    while (lineIds.size() < lines) {
+                        String id = IDS[random.nextInt(IDS.length)];
+                        if (!lineIds.contains(id)) {
+                            lineIds.add(id);
+                            Product line = new Product(id, "", "", 0, 0);
+                            line.setOrderedQuantity(1 + random.nextInt(3));
+                            trolley.add(line);
+                        }
+                    }
+                    if (db.purchaseStocks(trolley).isEmpty()) {
+                        unitsSold.addAndGet(trolley.stream().mapToLong(Product::getOrderedQuantity).sum());
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(120, TimeUnit.SECONDS), "purchases did not finish, possible deadlock");
+        for (Future<?> result : results) {
+            result.get(); // rethrows a failure inside a task
+        }
+
+        long unitsLeft = 0;
+        for (String id : IDS) {
+            int stock = db.searchByProductId(id).getStockQuantity();
+            assertTrue(stock >= 0, "stock went negative: " + stock);
+            unitsLeft += stock;
+        }
+        assertTrue(unitsSold.get() > 0, "nothing was bought");
+        assertEquals((long) START_STOCK * IDS.length, unitsLeft + unitsSold.get());
+    }
+}
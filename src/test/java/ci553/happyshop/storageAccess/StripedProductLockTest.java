@@ -0,0 +1,64 @@
+package ci553.happyshop.storageAccess;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StripedProductLockTest {
+
+    /**
+     * A warehouse write (insert, update or delete) holding one product's stripe must not block
+     * a write to a product on another stripe.
+     */
+    @Test
+    void disjointProductsDoNotBlockEachOther() throws InterruptedException {
+        StripedProductLock productLocks = new StripedProductLock(64);
+        String first = "0001";
+        String second = "0002";
+        assertNotEquals(productLocks.stripeIndex(first), productLocks.stripeIndex(second));
+
+        List<ReentrantLock> held = productLocks.lock(first);
+        try {
+            CountDownLatch acquired = new CountDownLatch(1);
+            Thread other = new Thread(() -> {
+                List<ReentrantLock> otherHeld = productLocks.lock(second);
+                acquired.countDown();
+                productLocks.unlockAll(otherHeld);
+            });
+            other.start();
+            assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        } finally {
+            productLocks.unlockAll(held);
+        }
+    }
+
+    /**
+     * Threads that lock the same products listed in opposite orders must not deadlock.
+     */
+    @Test
+    void oppositeLockOrderDoesNotDeadlock() {
+        StripedProductLock productLocks = new StripedProductLock(4);
+        assertTimeoutPreemptively(Duration.ofSeconds(20), () -> {
+            Thread forward = new Thread(() -> {
+                for (int i = 0; i < 20000; i++) {
+                    productLocks.unlockAll(productLocks.lockAll(List.of("0001", "0002", "0003")));
+                }
+            });
+            Thread backward = new Thread(() -> {
+                for (int i = 0; i < 20000; i++) {
+                    productLocks.unlockAll(productLocks.lockAll(List.of("0003", "0002", "0001")));
+                }
+            });
+            forward.start();
+            backward.start();
+            forward.join();
+            backward.join();
+        });
+    }
+}
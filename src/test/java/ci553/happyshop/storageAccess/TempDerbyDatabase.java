@@ -0,0 +1,59 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Product;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * An embedded Derby database in a temporary folder, with the ProductTable of SetDatabase filled with the
+ * given products, for the tests that run against the real DerbyRW. close() shuts the database down,
+ * which releases its files for @TempDir.
+ */
+class TempDerbyDatabase implements AutoCloseable {
+    private final Path dbPath;
+    private final ConnectionPool pool;
+
+    TempDerbyDatabase(Path dir, int poolSize, Collection<Product> products) throws SQLException {
+        System.setProperty("derby.stream.error.file", dir.resolve("derby.log").toString());
+        dbPath = dir.resolve("testDB");
+        String dbURL = "jdbc:derby:" + dbPath + ";create=true";
+        try (Connection conn = DriverManager.getConnection(dbURL); Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE ProductTable(productID CHAR(4) PRIMARY KEY, description VARCHAR(100),"
+                    + " unitPrice DOUBLE, image VARCHAR(100), inStock INT, CHECK (inStock >= 0))");
+            try (PreparedStatement insert = conn.prepareStatement("INSERT INTO ProductTable VALUES(?, ?, ?, ?, ?)")) {
+                for (Product product : products) {
+                    insert.setString(1, product.getProductId());
+                    insert.setString(2, product.getProductDescription());
+                    insert.setDouble(3, product.getUnitPrice());
+                    insert.setString(4, product.getProductImageName());
+                    insert.setInt(5, product.getStockQuantity());
+                    insert.executeUpdate();
+                }
+            }
+        }
+        pool = new ConnectionPool(dbURL, poolSize, 10_000, 16);
+    }
+
+    DerbyRW newDerbyRW() {
+        return new DerbyRW(pool, new ProductSearchIndex());
+    }
+
+    @Override
+    public void close() {
+        pool.closeIdleConnections();
+        try {
+            DriverManager.getConnection("jdbc:derby:" + dbPath + ";shutdown=true").close();
+        } catch (SQLException e) {
+            // Derby reports a successful shutdown of one database with SQLState 08006
+            assertEquals("08006", e.getSQLState(), e.getMessage());
+        }
+    }
+}